@@ -0,0 +1,106 @@
+#!/usr/bin/python3
+
+import os
+import struct
+import argparse
+import collections
+
+MAGIC = b'TDSC'
+VERSION = 1
+
+
+def read_choices(filename):
+    """
+    Reads a binary choices log written by utils.ChoicesLogWriter (e.g. test-vs-A3N_p0.choices.bin).
+    Uses the .idx file next to it to locate the matches if it exists, otherwise scans the log.
+    :param filename:
+    :return: the action names and an ordered dict from match number to a list of (action index, run length) pairs
+    """
+    with open(filename, 'rb') as f:
+        data = f.read()
+
+    if data[:4] != MAGIC:
+        raise ValueError('%s is not a choices log' % filename)
+    version, num_actions = struct.unpack_from('>ii', data, 4)
+    if version != VERSION:
+        raise ValueError('Unsupported version %d of choices log %s' % (version, filename))
+
+    offset = 12
+    names = []
+    for _ in range(num_actions):
+        length, = struct.unpack_from('>H', data, offset)
+        names.append(data[offset + 2:offset + 2 + length].decode('utf-8'))
+        offset += 2 + length
+
+    def fits(match_offset):
+        """Whether a whole match record starts at the offset (it may be cut if the writer crashed)"""
+        if match_offset < 0 or match_offset + 12 > len(data):
+            return False
+        num_runs, = struct.unpack_from('>i', data, match_offset + 8)
+        return num_runs >= 0 and match_offset + 12 + 6 * num_runs <= len(data)
+
+    # finds the offset of each match
+    offsets = []
+    index_file = filename + '.idx'
+    if os.path.exists(index_file):
+        with open(index_file, 'rb') as f:
+            index = f.read()
+        for pos in range(0, len(index) - len(index) % 12, 12):
+            match_offset = struct.unpack_from('>iq', index, pos)[1]
+            if fits(match_offset):  # ignores matches that did not (fully) reach the log
+                offsets.append(match_offset)
+    else:
+        while fits(offset):
+            offsets.append(offset)
+            num_runs, = struct.unpack_from('>i', data, offset + 8)
+            offset += 12 + 6 * num_runs
+
+    matches = collections.OrderedDict()
+    for match_offset in offsets:
+        match_number, num_frames, num_runs = struct.unpack_from('>iii', data, match_offset)
+        runs = struct.unpack_from('>' + 'hi' * num_runs, data, match_offset + 12)
+        matches[match_number] = list(zip(runs[0::2], runs[1::2]))
+
+    return names, matches
+
+
+def expand(names, runs):
+    """
+    Returns the name of the choice of each frame of a match
+    :param names: action names, as returned by read_choices
+    :param runs: list of (action index, run length) pairs of a match
+    :return:
+    """
+    return [names[action] if action >= 0 else None for action, length in runs for _ in range(length)]
+
+
+def frequencies(filename):
+    """
+    Counts the number of frames in which each action was chosen in each match
+    :param filename:
+    :return: an ordered dict from match number to a Counter of action names
+    """
+    names, matches = read_choices(filename)
+    result = collections.OrderedDict()
+    for match_number, runs in matches.items():
+        counter = collections.Counter()
+        for action, length in runs:
+            counter[names[action] if action >= 0 else None] += length
+        result[match_number] = counter
+    return result
+
+
+if __name__ == '__main__':
+
+    parser = argparse.ArgumentParser(
+        description='Prints how many frames each action was chosen in each match of a binary choices log'
+    )
+
+    parser.add_argument(
+        'file', help='Choices log (.choices.bin)'
+    )
+
+    args = parser.parse_args()
+
+    for match_number, counter in frequencies(args.file).items():
+        print('Match %d: %s' % (match_number, ', '.join('%s=%d' % kv for kv in counter.most_common())))
@@ -0,0 +1,80 @@
+package benchmarks;
+
+import java.util.Properties;
+
+import ai.abstraction.LightRush;
+import ai.abstraction.WorkerRush;
+import ai.core.AI;
+import config.Parameters;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.units.UnitTypeTable;
+
+/**
+ * Game states and configurations shared by the benchmarks.
+ *
+ * The states are taken from matches between two scripts (WorkerRush vs LightRush)
+ * after some cycles, so that they have the mix of units, actions in progress and
+ * resources that the planner actually sees.
+ *
+ * @author artavares
+ *
+ */
+final class BenchmarkStates {
+
+	/**
+	 * Small, medium, large and very large maps (paths relative to the project root)
+	 */
+	static final String SMALL = "maps/8x8/basesWorkers8x8.xml";
+	static final String MEDIUM = "maps/16x16/basesWorkers16x16.xml";
+	static final String LARGE = "maps/32x32/basesWorkers32x32A.xml";
+	static final String HUGE = "maps/64x64/SimplePathToFight64x64.xml";
+
+	/**
+	 * Cycles played before the state is handed to the benchmark
+	 */
+	static final int WARMUP_CYCLES = 300;
+
+	static final int MAX_CYCLES = 3000;
+
+	private BenchmarkStates() {}
+
+	static UnitTypeTable unitTypes() {
+		return new UnitTypeTable(UnitTypeTable.VERSION_ORIGINAL_FINETUNED, UnitTypeTable.MOVE_CONFLICT_RESOLUTION_CANCEL_BOTH);
+	}
+
+	/**
+	 * Loads the map and plays the given number of cycles (or until gameover) with scripted players
+	 * @param map
+	 * @param types
+	 * @param cycles
+	 * @return
+	 * @throws Exception
+	 */
+	static GameState midGame(String map, UnitTypeTable types, int cycles) throws Exception {
+		GameState state = new GameState(PhysicalGameState.load(map, types), types);
+		AI player0 = new WorkerRush(types), player1 = new LightRush(types);
+
+		while (state.getTime() < cycles && !state.gameover()) {
+			state.issueSafe(player0.getAction(0, state));
+			state.issueSafe(player1.getAction(1, state));
+			state.cycle();
+		}
+		return state;
+	}
+
+	/**
+	 * Returns a configuration with the defaults of the experiments and the given feature extractor
+	 * @param features
+	 * @return
+	 */
+	static Properties config(String features) {
+		Properties config = new Properties();
+		config.setProperty("max_cycles", String.valueOf(MAX_CYCLES));
+		config.setProperty("features", features);
+		config.setProperty("td.epsilon.initial", "0.1");
+		config.setProperty("td.gamma", "0.99");
+		config.setProperty("random_seed", "0");
+		return Parameters.ensureDefaults(config);
+	}
+}
@@ -0,0 +1,58 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import features.FeatureExtractor;
+import features.FeatureExtractorFactory;
+import rts.GameState;
+import rts.units.UnitTypeTable;
+
+/**
+ * Time to extract the features of a state, for every feature extractor and map size.
+ *
+ * @author artavares
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FeatureExtractionBenchmark {
+
+	@Param({"mapaware", "material", "distance", "materialdistancehp", "quadrantmodel", "quadrantmodel4x4"})
+	public String extractor;
+
+	@Param({BenchmarkStates.SMALL, BenchmarkStates.MEDIUM, BenchmarkStates.LARGE, BenchmarkStates.HUGE})
+	public String map;
+
+	private FeatureExtractor features;
+
+	private GameState state;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		UnitTypeTable types = BenchmarkStates.unitTypes();
+		state = BenchmarkStates.midGame(map, types, BenchmarkStates.WARMUP_CYCLES);
+		features = FeatureExtractorFactory.getFeatureExtractor(extractor, types, BenchmarkStates.MAX_CYCLES);
+	}
+
+	@Benchmark
+	public double[] extractFeatures() {
+		return features.extractFeatures(state, 0);
+	}
+}
@@ -0,0 +1,71 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ai.abstraction.LightRush;
+import ai.abstraction.WorkerRush;
+import rts.GameState;
+import rts.PlayerAction;
+import rts.units.UnitTypeTable;
+import utils.ForwardModel;
+
+/**
+ * Time of a simulated step of the planner: cloning the current state
+ * and forwarding the clone to the next decision point after issuing the
+ * actions of both players (as in {@link tdsearch.PlanningWorker}).
+ *
+ * The forward benchmark includes the clone (a state can only be forwarded once),
+ * so the cost of forwarding alone is the difference between both.
+ *
+ * @author artavares
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ForwardModelBenchmark {
+
+	@Param({BenchmarkStates.SMALL, BenchmarkStates.MEDIUM, BenchmarkStates.LARGE, BenchmarkStates.HUGE})
+	public String map;
+
+	private GameState state;
+
+	private PlayerAction player0Action, player1Action;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		UnitTypeTable types = BenchmarkStates.unitTypes();
+		state = BenchmarkStates.midGame(map, types, BenchmarkStates.WARMUP_CYCLES);
+		player0Action = new WorkerRush(types).getAction(0, state);
+		player1Action = new LightRush(types).getAction(1, state);
+	}
+
+	@Benchmark
+	public GameState cloneState() {
+		return state.clone();
+	}
+
+	@Benchmark
+	public int forward() {
+		GameState nextState = state.clone();
+		nextState.issueSafe(player0Action);
+		nextState.issueSafe(player1Action);
+		return ForwardModel.forward(nextState);
+	}
+}
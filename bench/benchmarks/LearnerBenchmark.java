@@ -0,0 +1,95 @@
+package benchmarks;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import learning.LinearSarsaLambda;
+import rts.GameState;
+import rts.units.UnitTypeTable;
+import utils.ForwardModel;
+
+/**
+ * Time of the operations of {@link LinearSarsaLambda} performed at every planning step.
+ *
+ * The benchmarks alternate between two consecutive states of a match, so that
+ * the feature cache of the learner is exercised as in planning (a state is
+ * extracted once, then reused by the Q-values and the update).
+ *
+ * @author artavares
+ *
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LearnerBenchmark {
+
+	@Param({"materialdistancehp", "quadrantmodel"})
+	public String features;
+
+	@Param({LinearSarsaLambda.PRECISION_FLOAT64, LinearSarsaLambda.PRECISION_FLOAT32})
+	public String precision;
+
+	@Param({BenchmarkStates.MEDIUM})
+	public String map;
+
+	private LinearSarsaLambda learner;
+
+	private GameState[] states;
+
+	private int current;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		UnitTypeTable types = BenchmarkStates.unitTypes();
+		GameState state = BenchmarkStates.midGame(map, types, BenchmarkStates.WARMUP_CYCLES);
+		GameState nextState = state.clone();
+		nextState.cycle();
+		ForwardModel.forward(nextState);
+		states = new GameState[] {state, nextState};
+
+		Properties config = BenchmarkStates.config(features);
+		config.setProperty("learner.precision", precision);
+		learner = new LinearSarsaLambda(types, config);
+	}
+
+	/**
+	 * Returns the next state of the alternation
+	 * @return
+	 */
+	private GameState nextState() {
+		current = 1 - current;
+		return states[current];
+	}
+
+	@Benchmark
+	public int act() {
+		return learner.actIndex(nextState(), 0);
+	}
+
+	@Benchmark
+	public void learn() {
+		GameState state = nextState();
+		learner.learn(state, 0, 0, 0.01, states[1 - current], false);
+	}
+
+	@Benchmark
+	public void tdLambdaUpdateRule() {
+		learner.tdLambdaUpdateRule(nextState(), 0, 0, 0.01);
+	}
+}
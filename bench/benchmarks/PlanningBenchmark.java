@@ -0,0 +1,103 @@
+package benchmarks;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import rts.GameState;
+import rts.PlayerAction;
+import rts.units.UnitTypeTable;
+import tdsearch.SarsaSearch;
+import utils.PlanningMetrics;
+import utils.PlanningMetrics.Counter;
+
+/**
+ * Decisions of {@link SarsaSearch} at fixed planning budgets.
+ *
+ * Besides the calls to getAction per second, reports the planning episodes
+ * and decisions simulated per second (from the planner's {@link PlanningMetrics}),
+ * which is what the performance work on planning should increase.
+ *
+ * @author artavares
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PlanningBenchmark {
+
+	/**
+	 * Planning counters of an iteration, reported by JMH as rates
+	 */
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	@State(Scope.Thread)
+	public static class Simulated {
+		public long episodes;
+		public long decisions;
+
+		@Setup(Level.Iteration)
+		public void clear() {
+			episodes = decisions = 0;
+		}
+	}
+
+	/**
+	 * Planning budget (ms)
+	 */
+	@Param({"20", "100"})
+	public int budget;
+
+	@Param({BenchmarkStates.SMALL, BenchmarkStates.LARGE})
+	public String map;
+
+	@Param({"materialdistancehp"})
+	public String features;
+
+	private SarsaSearch agent;
+
+	private PlanningMetrics metrics;
+
+	private GameState state;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		UnitTypeTable types = BenchmarkStates.unitTypes();
+
+		Properties config = BenchmarkStates.config(features);
+		config.setProperty("search.timebudget", String.valueOf(budget));
+		config.setProperty("planning.metrics", "true");
+		agent = new SarsaSearch(types, 0, config);
+		metrics = agent.getPlanningMetrics();
+
+		// the agent learns its player at the initial state
+		agent.getAction(0, BenchmarkStates.midGame(map, types, 0));
+		state = BenchmarkStates.midGame(map, types, BenchmarkStates.WARMUP_CYCLES);
+		metrics.reset();
+	}
+
+	@Benchmark
+	public PlayerAction getAction(Simulated simulated) throws Exception {
+		PlayerAction action = agent.getAction(0, state);
+
+		simulated.episodes += metrics.get(Counter.EPISODES);
+		simulated.decisions += metrics.get(Counter.DECISIONS);
+		metrics.reset();
+		return action;
+	}
+}
@@ -0,0 +1,9 @@
+#!/bin/bash
+
+classpath=.:bin:lib/*
+
+# converts weight files from Java serialization to the binary format
+# usage: convert-weights.sh input.bin output.bin [config.properties]
+
+java -classpath $classpath -Djava.library.path=lib/ utils.ConvertWeights "$@" 
+
@@ -72,7 +72,7 @@ public class Parameters {
         options.addOption(new Option("t", "train_opponent", true, "Full name of the AI to train against (overrides the one specified in file)."));
         options.addOption(new Option("p", "portfolio", true, "The type of portfolio to use: basic4 (4 rush), basic6 (rush+support), basic8 (default: 4 rush + 4 defense) or basic10 (rush+defense+support)"));
         options.addOption(new Option("r", "rewards", true, "The reward model:  winloss-tiebreak, winlossdraw or victory-only"));
-        options.addOption(new Option("e", "features", true, "The feature model:  material, distance, materialdistancehp, mapaware, or quadrantmodel"));
+        options.addOption(new Option("e", "features", true, "The feature model:  material, distance, materialdistancehp, mapaware, quadrantmodel or quadrantmodelWxH (e.g. quadrantmodel4x4, with 2 to 8 quadrants per dimension)"));
         options.addOption(new Option("o", "test_opponent", true, "Full name of the AI to test against (overrides the one specified in file)."));
         options.addOption(new Option("a", "activation", true, "Activation function for the value function approximator (default: identity)"));
         options.addOption(new Option("l", "learner", true, "Learning algorithm"));
@@ -84,13 +84,21 @@ public class Parameters {
         options.addOption(new Option(null, "td_epsilon_initial", true, "Initial exploration rate (held constant throughout experiment by now)"));
         options.addOption(new Option(null, "td_gamma", true, "Discount factor"));
         options.addOption(new Option(null, "td_lambda", true, "Eligibility trace parameter"));
+        options.addOption(new Option(null, "td_trace_threshold", true, "Eligibility traces that decay to this value or below are cut to zero (default: 0, no approximation)"));
+        options.addOption(new Option(null, "learner_precision", true, "Precision of the stored weights: float64 (default) or float32 (half the memory; checkpoints are written in the same precision)"));
         
         options.addOption(new Option(null, "planning_lambda", true, "Eligibility trace for planning"));
         options.addOption(new Option(null, "planning_alpha", true, "Learning rate for planning"));
         options.addOption(new Option(null, "planning_epsilon", true, "Exploration factor for planning"));
+        options.addOption(new Option(null, "planning_threads", true, "Number of threads for root-parallel planning (default: 1, i.e. sequential planning)"));
+        options.addOption(new Option(null, "planning_merge", true, "How parallel planning threads combine their learning: average (default) or sum of their weight changes, or hogwild (concurrent updates of shared weights)"));
+        options.addOption(new Option(null, "planning_ponder", true, "(true or false) Keep planning in a background thread between decisions; the next decision adopts the learned weights (best with a spare core)"));
+        options.addOption(new Option(null, "planning_action_cache", true, "Capacity of the cache of the portfolio scripts' actions per planning thread, cleared at each decision (default: 256; 0 disables it)"));
+        options.addOption(new Option(null, "planning_metrics", true, "(true or false) Measure planning throughput and latencies, written per match to <summary>-metrics.csv and exposed via JMX"));
         
         options.addOption(new Option(null, "decision_interval", true, "Number of frames to decision_interval a selection (this will be the interval between decision points)."));
 		options.addOption(new Option(null, "save_replay", true, "(true or false) Generate replay (trace) files ."));
+		options.addOption(new Option(null, "trace_format", true, "Format of replay files: stream (default), memory (both zipped microRTS traces) or delta (compact, see viewtrace.sh)."));
 		options.addOption(new Option(null, "test_matches", true, "Number of test matches."));
 		//options.addOption(new Option(null, "test_position", true, "0 or 1 (the player index of the agent under test)"));
 		options.addOption(new Option(null, "checkpoint", true, "Saves the weights every 'checkpoint' matches. If used on learning curve generation: which checkpoint to test."));
@@ -101,6 +109,7 @@ public class Parameters {
 		options.addOption(new Option(null, "ensemble_paths", true, "Pattern to load ensemble policies, must either be a glob with a placeholder to the player position, e.g. crowd_%dm*.bin, or a comma-separated-list with all files listed explicitly"));
         
 		options.addOption(new Option(null, "save_choices", true, "(true or false) Save all action selections during all matches."));
+		options.addOption(new Option(null, "match_threads", true, "Number of test matches that run concurrently. Each match starts from the weight files, so results differ from sequential matches if the planner learns across them (search_timebudget > 0 and planning_alpha > 0)."));
         return options;
 	}
 	
@@ -117,7 +126,7 @@ public class Parameters {
 		List<String> overrideList = Arrays.asList(
 				"working_dir", "initial_rep", "final_rep", "train_opponent", "test_opponent", 
 				"test_matches", "rewards", "features", "train_matches", "portfolio",
-				"save_replay", "save_choices", "learner", 
+				"save_replay", "trace_format", "save_choices", "learner", 
 				"planning_alpha", "planning_epsilon", "planning_lambda",
 				//"test_position", 
 				"decision_interval", "restart", "checkpoint", "resume",
@@ -140,7 +149,7 @@ public class Parameters {
 		//parameters whose _ must be replaced by .
 		List<String> underscoreToDot = Arrays.asList(
 				"td_alpha_initial", "td_epsilon_initial", "td_gamma",
-				"td_lambda", "search_timebudget" 
+				"td_lambda", "td_trace_threshold", "learner_precision", "search_timebudget", "planning_threads", "planning_merge", "planning_ponder", "planning_metrics", "planning_action_cache", "match_threads"
 		);
 		for(String paramName : underscoreToDot) {
 			if(cmd.hasOption(paramName)) {
@@ -216,6 +225,7 @@ public class Parameters {
 			put("gui",  "false");
 			put("visualize_test", "false");
 			put("save_replay", "false");
+			put("trace_format", "stream");
 			put("save_choices", "false");
 			
 			put("train_opponent", "selfplay");
@@ -236,10 +246,18 @@ public class Parameters {
 			put("learner", "sarsa");
 			put("td.alpha.initial",  "0.01");
 			put("td.lambda",  "0.1");
+			put("td.trace.threshold",  "0");
+			put("learner.precision",  "float64");
 			
 			put("planning_alpha",  "0");
 			put("planning_epsilon",  "0");
 			put("planning_lambda",  "0");
+			put("planning.threads",  "1");
+			put("planning.merge",  "average");
+			put("planning.ponder",  "false");
+			put("planning.metrics",  "false");
+			put("planning.action.cache",  "256");
+			put("match.threads",  "1");
 			
 			put("decision_interval", "1");
 			put("checkpoint", "100");
@@ -11,8 +11,11 @@ import org.apache.logging.log4j.LogManager;
 
 import ai.core.AI;
 import ai.core.ParameterSpecification;
+import features.FeatureExtractor;
+import features.FeatureExtractorFactory;
 import learning.LearningAgent;
 import learning.LinearSarsaLambda;
+import learning.MappedPolicy;
 import portfolio.PortfolioManager;
 import rts.GameState;
 import rts.PlayerAction;
@@ -43,29 +46,57 @@ public class MajorityVotingEnsemble extends AI{
 	private UnitTypeTable types;
 	private Properties config;
 	
+	/**
+	 * Feature extractors shared by the policies added with {@link #addSarsaPolicy(Properties, String, String)},
+	 * one per feature configuration (see {@link #featureExtractorFor(Properties)})
+	 */
+	private Map<String, FeatureExtractor> featureExtractors;
+	
 	public MajorityVotingEnsemble(UnitTypeTable types, Properties config) {
 		this.types = types;
 		this.config = config;
 		policies = new HashMap<>();
+		featureExtractors = new HashMap<>();
 		portfolio = PortfolioManager.fullPortfolio(types);
 		decisionInterval = Integer.parseInt(config.getProperty("decision_interval")); //FIXME defaulting to 1
 	}
 	
+	/**
+	 * Adds a greedy policy whose weights are memory-mapped from the given file 
+	 * (see {@link MappedPolicy}). If the file cannot be read, a policy with random weights is added.
+	 * @param sarsaConfig the config used to train the policy (to create its feature extractor)
+	 * @param name
+	 * @param path
+	 * @throws IllegalArgumentException if the weights do not match the features of sarsaConfig
+	 */
 	public void addSarsaPolicy(Properties sarsaConfig, String name, String path)  {
-		
-		//creates a dummy config with zero alpha & epsilon
-		Properties dummyConfig = (Properties) sarsaConfig.clone();
-		dummyConfig.put("td.alpha.initial", "0");
-		dummyConfig.put("td.epsilon.initial", "0");
-		
-		// creates the learning agent w/ dummyConfig, loads its policy and adds it
-		LinearSarsaLambda policy = new LinearSarsaLambda(types, dummyConfig, policies.size());
 		try {
-			policy.load(path);
+			addPolicy(name, new MappedPolicy(featureExtractorFor(sarsaConfig), path));
 		} catch (IOException e) {
 			LogManager.getRootLogger().error("Unable to load policy " + path + " using random weights.", e);
+			
+			//creates a dummy config with zero alpha & epsilon
+			Properties dummyConfig = (Properties) sarsaConfig.clone();
+			dummyConfig.put("td.alpha.initial", "0");
+			dummyConfig.put("td.epsilon.initial", "0");
+			addPolicy(name, new LinearSarsaLambda(types, dummyConfig, policies.size()));
 		}
-		addPolicy(name, policy);
+	}
+	
+	/**
+	 * Returns the feature extractor of the given config, shared by the policies with the 
+	 * same features and maximum cycles (policies are read-only, so they can share it)
+	 * @param sarsaConfig
+	 * @return
+	 */
+	private FeatureExtractor featureExtractorFor(Properties sarsaConfig) {
+		String features = sarsaConfig.getProperty("features");
+		String maxCycles = sarsaConfig.getProperty("max_cycles");
+		
+		return featureExtractors.computeIfAbsent(
+			features + "," + maxCycles, 
+			key -> FeatureExtractorFactory.getFeatureExtractor(features, types, Integer.parseInt(maxCycles))
+		);
 	}
 	
 	public void addPolicy(String name, LearningAgent agent) {
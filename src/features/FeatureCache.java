@@ -0,0 +1,132 @@
+package features;
+
+import java.util.Arrays;
+
+import rts.GameState;
+
+/**
+ * A small cache of feature vectors, so that a state is featurized only once
+ * while an agent evaluates it several times in a row (action selection,
+ * td target, eligibility update).
+ *
+ * Entries are identified by the state reference, its time and the player.
+ * Thus, a state object must not be changed without advancing its time while
+ * its features are cached (call {@link #invalidate()} otherwise).
+ *
+ * The returned arrays are owned by the cache: callers must not modify them
+ * and they are only valid until {@link #SLOTS} other states are featurized.
+ *
+ * Not thread-safe: each agent should have its own cache.
+ * @author artavares
+ *
+ */
+public class FeatureCache {
+
+	/**
+	 * Number of cached vectors. Two suffice for an s,a,r,s',a' step;
+	 * the extra ones cover the occasional out-of-order lookup
+	 */
+	public static final int SLOTS = 4;
+
+	private FeatureExtractor extractor;
+
+	private GameState[] states;
+	private int[] times;
+	private int[] players;
+	private double[][] vectors;
+
+	/**
+	 * Position that will be overwritten by the next miss
+	 */
+	private int nextSlot;
+
+	private long hits, misses;
+
+	/**
+	 * Creates a cache for the given extractor, whose vectors have the given length
+	 * @param extractor
+	 * @param vectorLength
+	 */
+	public FeatureCache(FeatureExtractor extractor, int vectorLength) {
+		this.extractor = extractor;
+		states = new GameState[SLOTS];
+		times = new int[SLOTS];
+		players = new int[SLOTS];
+		setVectorLength(vectorLength);
+	}
+
+	/**
+	 * Returns the feature vector of the given state, extracting it only if it is not cached
+	 * @param state
+	 * @param player
+	 * @return
+	 */
+	public double[] get(GameState state, int player) {
+		int time = state.getTime();
+		for (int i = 0; i < SLOTS; i++) {
+			if (states[i] == state && times[i] == time && players[i] == player) {
+				hits++;
+				return vectors[i];
+			}
+		}
+
+		misses++;
+		int slot = nextSlot;
+		nextSlot = (nextSlot + 1) % SLOTS;
+
+		extractor.extractFeatures(state, player, vectors[slot]);
+		states[slot] = state;
+		times[slot] = time;
+		players[slot] = player;
+		return vectors[slot];
+	}
+
+	/**
+	 * Discards all cached vectors (and the references to their states)
+	 */
+	public void invalidate() {
+		Arrays.fill(states, null);
+	}
+
+	/**
+	 * Changes the length of the vectors (e.g. when weights of a different size are loaded).
+	 * Cached vectors are discarded.
+	 * @param vectorLength
+	 */
+	public void setVectorLength(int vectorLength) {
+		vectors = new double[SLOTS][vectorLength];
+		invalidate();
+	}
+
+	/**
+	 * Returns the number of lookups answered from the cache
+	 * @return
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups that required a feature extraction
+	 * @return
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the fraction of lookups answered from the cache
+	 * @return
+	 */
+	public double hitRate() {
+		long total = hits + misses;
+		return total == 0 ? 0 : hits / (double) total;
+	}
+
+	/**
+	 * Zeroes the hit and miss counters
+	 */
+	public void resetCounters() {
+		hits = misses = 0;
+	}
+}
@@ -20,6 +20,19 @@ public interface FeatureExtractor {
 	 */
 	public double[] extractFeatures(GameState s, int player);
 	
+	/**
+	 * Writes the feature vector that describes a state into the given array, 
+	 * which must have at least {@link #getNumFeatures()} positions.
+	 * Implementations should override this to avoid allocating a new array per call.
+	 * @param s
+	 * @param player
+	 * @param out
+	 */
+	public default void extractFeatures(GameState s, int player, double[] out) {
+		double[] features = extractFeatures(s, player);
+		System.arraycopy(features, 0, out, 0, features.length);
+	}
+	
 	/**
 	 * Returns a list of feature names (aligned with the vector
 	 * returned by extractFeatures) 
@@ -19,6 +19,10 @@ public class FeatureExtractorFactory {
         else if (extractorName.equals("quadrantmodel") || extractorName.equalsIgnoreCase("quadrant")) {
         	return new QuadrantModel(types, maxGameCycles);
         }
+        else if (extractorName.matches("quadrantmodel\\d+x\\d+")) { // e.g. quadrantmodel4x4 or quadrantmodel4x2 (width x height)
+        	String[] grid = extractorName.substring("quadrantmodel".length()).split("x");
+        	return new QuadrantModel(types, maxGameCycles, Integer.parseInt(grid[0]), Integer.parseInt(grid[1]));
+        }
         else {
         	throw new IllegalArgumentException("Feature extractor '" + extractorName + "' not found.");
         }
@@ -1,6 +1,7 @@
 package features;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -118,8 +119,15 @@ public class MapAware implements FeatureExtractor {
 	}
 	
 	public double[] extractFeatures(GameState s, int player) {
-		//count: resources, bases, barracks, workers, heavy, light, ranged for both players
 		double[] features = new double[numFeatures];
+		extractFeatures(s, player, features);
+		return features;
+	}
+	
+	@Override
+	public void extractFeatures(GameState s, int player, double[] features) {
+		//count: resources, bases, barracks, workers, heavy, light, ranged for both players
+		Arrays.fill(features, 0, numFeatures, 0);
 		
 		features[0] = 1; //bias, always 1
 		
@@ -162,8 +170,6 @@ public class MapAware implements FeatureExtractor {
 			features[i] /= maxUnits;
 		}
 		// END: normalize features
-		
-		return features;
 	}
 
 	@Override
@@ -1,6 +1,7 @@
 package features;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -113,8 +114,15 @@ public class MaterialAdvantage implements FeatureExtractor {
 	}
 	
 	public double[] extractFeatures(GameState s, int player) {
+		double[] features = new double[getNumFeatures()];
+		extractFeatures(s, player, features);
+		return features;
+	}
+	
+	@Override
+	public void extractFeatures(GameState s, int player, double[] features) {
 		//count: resources, bases, barracks, workers, heavy, light, ranged for both players
-		double[] features = new double[numFeatures];
+		Arrays.fill(features, 0, numFeatures, 0);
 		
 		features[0] = 1; //bias, always 1
 		
@@ -149,8 +157,6 @@ public class MaterialAdvantage implements FeatureExtractor {
 			features[i] /= maxUnits;
 		}
 		// END: normalize features
-		
-		return features;
 	}
 
 	@Override
@@ -14,6 +14,11 @@ import rts.units.UnitTypeTable;
  */
 public class MaterialAdvantageDistancesHP extends MaterialAdvantage {
 	
+	/**
+	 * Positions of the units of the state being featurized (one per thread, as extractors may be shared)
+	 */
+	private ThreadLocal<SpatialIndex> spatialIndex = ThreadLocal.withInitial(SpatialIndex::new);
+	
 	/**
 	 * Initializes a FeatureExtractor with specified maximum values for some entities for normalizing.
 	 * The minimum is always zero.
@@ -66,33 +71,31 @@ public class MaterialAdvantageDistancesHP extends MaterialAdvantage {
 		return super.getNumFeatures() + 8;
 	}
 	
-	public double[] extractFeatures(GameState s, int player) {
-		//copies the features extracted by the superclass
-		//TODO change the returned type to Vector or ArrayList?
-		double[] features = new double[getNumFeatures()];
-		double[] materialAdvFeatures = super.extractFeatures(s, player);
+	@Override
+	public void extractFeatures(GameState s, int player, double[] features) {
+		//the superclass fills the material advantage features in the first positions
+		super.extractFeatures(s, player, features);
 		
 		int finalParentIndex = super.getNumFeatures();
-		
-		for (int i = 0; i < finalParentIndex; i++) {
-			features[i] = materialAdvFeatures[i];
-		}
 
 		// all distances are normalized over mapWidth + mapHeight
 		int mapWidth = s.getPhysicalGameState().getWidth();
 		int mapHeight = s.getPhysicalGameState().getHeight();
 		
+		// the units are indexed once for all distances
+		SpatialIndex index = indexUnits(s);
+		
 		// shortest distance between enemy units
-		features[finalParentIndex] = shortestManhattanDistanceToEnemyUnit(s) / (double)(mapWidth + mapHeight);
+		features[finalParentIndex] = shortestManhattanDistanceToEnemyUnit(index) / (double)(mapWidth + mapHeight);
 		
 		// largest distance between enemy units
-		features[finalParentIndex+1] = largestManhattanDistanceToEnemyUnit(s) / (double)(mapWidth + mapHeight);
+		features[finalParentIndex+1] = largestManhattanDistanceToEnemyUnit(index) / (double)(mapWidth + mapHeight);
 		
 		// shortest distance from my units to enemy base
-		features[finalParentIndex+2] = shortestManhattanDistanceFromUnitToBase(s, player, 1-player) / (double)(mapWidth + mapHeight);
+		features[finalParentIndex+2] = shortestManhattanDistanceFromUnitToBase(index, player) / (double)(mapWidth + mapHeight);
 		
 		// shortest distance from enemy units to my base
-		features[finalParentIndex+3] = shortestManhattanDistanceFromUnitToBase(s, 1-player, player) / (double)(mapWidth + mapHeight);
+		features[finalParentIndex+3] = shortestManhattanDistanceFromUnitToBase(index, 1-player) / (double)(mapWidth + mapHeight);
 		
 		//lowest HP ratio remaining of mine and enemy units
 		features[finalParentIndex+4] = lowestRemainingHPRatio(s, player);
@@ -101,92 +104,61 @@ public class MaterialAdvantageDistancesHP extends MaterialAdvantage {
 		//largest HP ratio remaining of mine and enemy units
 		features[finalParentIndex+6] = highestRemainingHPRatio(s, player);
 		features[finalParentIndex+7] = highestRemainingHPRatio(s, 1-player);
-		
-		return features;
 	}
 	
 	/**
 	 * Retrieves the shortest Manhattan distance between units (not buildings!) belonging to different players
+	 * (width+height of the map if a player has no such units)
 	 * @param state
 	 * @return
 	 */
 	public int shortestManhattanDistanceToEnemyUnit(GameState state) {
-		// initializes the shortest distance to a sensible value (width+height)
-		int width = state.getPhysicalGameState().getWidth();
-		int height = state.getPhysicalGameState().getHeight();
-		int shortestDistance = width + height;
-		
-		// inefficient way to determine the distance...
-		for(Unit u : state.getUnits()) {
-			for(Unit v : state.getUnits()) {
-				// considers only mobile units from different players
-				if(u.getPlayer() == v.getPlayer() 
-						|| !u.getType().canMove || !v.getType().canMove) continue;
-				
-				int distance = Math.abs(u.getX() - v.getX()) + Math.abs(u.getY() - v.getY());
-				if (distance < shortestDistance) {
-					shortestDistance = distance;
-				}
-				
-			}
-		}
-		
-		return shortestDistance;
+		return shortestManhattanDistanceToEnemyUnit(indexUnits(state));
+	}
+	
+	private int shortestManhattanDistanceToEnemyUnit(SpatialIndex index) {
+		return index.shortestDistance(index.get(SpatialIndex.MOBILE, 0), index.get(SpatialIndex.MOBILE, 1));
 	}
 	
 	/**
 	 * Retrieves the largest Manhattan distance between units (not buildings!) belonging to different players
+	 * (zero if a player has no such units)
 	 * @param state
 	 * @return
 	 */
 	public int largestManhattanDistanceToEnemyUnit(GameState state) {
-		int largestDistance = 0;
-		
-		// inefficient way to determine the distance...
-		for(Unit u : state.getUnits()) {
-			for(Unit v : state.getUnits()) {
-				// considers only mobile units from different players
-				if(u.getPlayer() == v.getPlayer() 
-						|| !u.getType().canMove || !v.getType().canMove) continue;
-				
-				int distance = Math.abs(u.getX() - v.getX()) + Math.abs(u.getY() - v.getY());
-				if (distance > largestDistance) {
-					largestDistance = distance;
-				}
-				
-			}
-		}
-		
-		return largestDistance;
+		return largestManhattanDistanceToEnemyUnit(indexUnits(state));
+	}
+	
+	private int largestManhattanDistanceToEnemyUnit(SpatialIndex index) {
+		return index.largestDistance(index.get(SpatialIndex.MOBILE, 0), index.get(SpatialIndex.MOBILE, 1));
 	}
 	
 	/**
 	 * Returns the shortest manhattan distance from any mobile unit of mine to 
-	 * any enemy base
+	 * any enemy base (width+height of the map if there are no such units)
 	 * @param state
 	 * @param player
+	 * @param enemy the opponent of player (1-player)
 	 * @return
 	 */
 	public int shortestManhattanDistanceFromUnitToBase(GameState state, int player, int enemy) {
-		// initializes the shortest distance to a sensible value (width+height)
-		int width = state.getPhysicalGameState().getWidth();
-		int height = state.getPhysicalGameState().getHeight();
-		int shortestDistance = width + height;
-		
-		// inefficient way to determine the distance...
-		for(Unit playerUnit : state.getUnits()) {
-			for(Unit enemyBase : state.getUnits()) {
-				// considers only my mobile units and enemy bases (stockpiles)
-				if(playerUnit.getPlayer() != player || enemyBase.getPlayer() != 1-player 
-						|| !playerUnit.getType().canMove || !enemyBase.getType().isStockpile) continue;
-				
-				int distance = Math.abs(playerUnit.getX() - enemyBase.getX()) + Math.abs(playerUnit.getY() - enemyBase.getY());
-				if (distance < shortestDistance) {
-					shortestDistance = distance;
-				}
-			}
-		}
-		return shortestDistance;
+		return shortestManhattanDistanceFromUnitToBase(indexUnits(state), player);
+	}
+	
+	private int shortestManhattanDistanceFromUnitToBase(SpatialIndex index, int player) {
+		return index.shortestDistance(index.get(SpatialIndex.MOBILE, player), index.get(SpatialIndex.STOCKPILE, 1 - player));
+	}
+	
+	/**
+	 * Indexes the units of the state in this thread's spatial index
+	 * @param state
+	 * @return
+	 */
+	private SpatialIndex indexUnits(GameState state) {
+		SpatialIndex index = spatialIndex.get();
+		index.build(state);
+		return index;
 	}
 	
 	/**
@@ -0,0 +1,85 @@
+package features;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The division of a map of given dimensions into a grid of quadrants: 
+ * the quadrant of each tile is precomputed once per (map dimensions, grid) and cached,
+ * so that feature extraction finds the quadrant of a unit with a single lookup.
+ * 
+ * Quadrants are indexed by xQuad * quadrantsY + yQuad (the order of the quadrant features).
+ * If map dimensions are not multiple of the number of quadrants, the quadrant length 
+ * is rounded up to ensure the whole map is covered.
+ * 
+ * Instances are immutable and shared among threads.
+ * 
+ * @author artavares
+ *
+ */
+public class QuadrantGeometry {
+	
+	private static final Map<Long, QuadrantGeometry> cache = new ConcurrentHashMap<>();
+	
+	private final int width, height;
+	
+	private final int xQuadLength, yQuadLength;
+	
+	/**
+	 * Quadrant of each tile, indexed by x + y * width
+	 */
+	private final int[] tileQuadrants;
+	
+	/**
+	 * Returns the (cached) geometry of a map with the given dimensions divided in a grid of quadrants
+	 * @param width
+	 * @param height
+	 * @param quadrantsX number of quadrants along the width
+	 * @param quadrantsY number of quadrants along the height
+	 * @return
+	 */
+	public static QuadrantGeometry of(int width, int height, int quadrantsX, int quadrantsY) {
+		long key = ((long) width << 48) | ((long) height << 32) | ((long) quadrantsX << 16) | quadrantsY;
+		return cache.computeIfAbsent(key, k -> new QuadrantGeometry(width, height, quadrantsX, quadrantsY));
+	}
+	
+	private QuadrantGeometry(int width, int height, int quadrantsX, int quadrantsY) {
+		this.width = width;
+		this.height = height;
+		xQuadLength = width % quadrantsX == 0 ? width / quadrantsX : 1 + width / quadrantsX;
+		yQuadLength = height % quadrantsY == 0 ? height / quadrantsY : 1 + height / quadrantsY;
+		
+		tileQuadrants = new int[width * height];
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				tileQuadrants[x + y * width] = (x / xQuadLength) * quadrantsY + y / yQuadLength;
+			}
+		}
+	}
+	
+	/**
+	 * Returns the index of the quadrant of the given tile
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public int quadrant(int x, int y) {
+		return tileQuadrants[x + y * width];
+	}
+	
+	/**
+	 * Returns the number of tiles of a quadrant (the product of the rounded-up quadrant lengths)
+	 * @return
+	 */
+	public int tilesPerQuadrant() {
+		return xQuadLength * yQuadLength;
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+}
@@ -1,10 +1,8 @@
 package features;
 
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.LinkedHashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 import rts.GameState;
 import rts.units.Unit;
@@ -13,16 +11,97 @@ import rts.units.UnitTypeTable;
 
 public class QuadrantModel implements FeatureExtractor {
 	
-	public static final int NUM_QUADRANTS = 3; //TODO make it a parameter
+	/**
+	 * Default number of quadrants along each dimension of the map
+	 */
+	public static final int NUM_QUADRANTS = 3;
+	
+	/**
+	 * Limits of the number of quadrants along each dimension
+	 */
+	public static final int MIN_QUADRANTS = 2, MAX_QUADRANTS = 8;
+	
+	/**
+	 * Number of features that do not depend on quadrants (bias, resources and time)
+	 */
+	private static final int NUM_GLOBAL_FEATURES = 4;
 	
 	private UnitTypeTable types;
 	private int maxCycles;
 	private int numFeatures;
 	
+	/**
+	 * Number of quadrants along the width and the height of the map
+	 */
+	private int quadrantsX, quadrantsY;
+	
+	/**
+	 * Position of each unit type (indexed by type ID) among the counted types of a quadrant
+	 * (resources are not counted) 
+	 */
+	private int[] typeSlots;
+	
+	/**
+	 * Number of counted unit types (all except resources)
+	 */
+	private int numCountedTypes;
+	
+	/**
+	 * Number of features in each quadrant: two unit counts per counted type and two average healths
+	 */
+	private int featuresPerQuadrant;
+	
+	/**
+	 * Number of units owned by each player in each quadrant, indexed by 2 * quadrant + player 
+	 * (scratch of the scan, one per thread as extractors may be shared)
+	 */
+	private ThreadLocal<int[]> unitCounts;
+	
+	/**
+	 * Creates the model with the default grid of {@link #NUM_QUADRANTS} x {@link #NUM_QUADRANTS} quadrants
+	 * @param types
+	 * @param maxGameCycles
+	 */
 	public QuadrantModel(UnitTypeTable types, int maxGameCycles) {
+		this(types, maxGameCycles, NUM_QUADRANTS, NUM_QUADRANTS);
+	}
+	
+	/**
+	 * Creates the model with a grid of quadrantsX x quadrantsY quadrants 
+	 * (each between {@link #MIN_QUADRANTS} and {@link #MAX_QUADRANTS})
+	 * @param types
+	 * @param maxGameCycles
+	 * @param quadrantsX number of quadrants along the width of the map
+	 * @param quadrantsY number of quadrants along the height of the map
+	 */
+	public QuadrantModel(UnitTypeTable types, int maxGameCycles, int quadrantsX, int quadrantsY) {
+		if (quadrantsX < MIN_QUADRANTS || quadrantsX > MAX_QUADRANTS || quadrantsY < MIN_QUADRANTS || quadrantsY > MAX_QUADRANTS) {
+			throw new IllegalArgumentException(String.format(
+				"Quadrant grid '%dx%d' not supported (each dimension must be between %d and %d).", 
+				quadrantsX, quadrantsY, MIN_QUADRANTS, MAX_QUADRANTS
+			));
+		}
 		this.types = types;
 		this.maxCycles = maxGameCycles;
+		this.quadrantsX = quadrantsX;
+		this.quadrantsY = quadrantsY;
 		this.numFeatures = featureNames().size(); //caches it just in case...
+		
+		// assigns slots to types in the same order used by featureNames()
+		int maxID = 0;
+		for(UnitType type : types.getUnitTypes()){
+			maxID = Math.max(maxID, type.ID);
+		}
+		typeSlots = new int[maxID + 1];
+		Arrays.fill(typeSlots, -1);
+		numCountedTypes = 0;
+		for(UnitType type : types.getUnitTypes()){
+			if(type.name.equalsIgnoreCase("resource")) continue;
+			typeSlots[type.ID] = numCountedTypes++;
+		}
+		featuresPerQuadrant = 2 * numCountedTypes + 2;
+		
+		unitCounts = ThreadLocal.withInitial(() -> new int[2 * quadrantsX * quadrantsY]);
 	}
 
 	@Override
@@ -32,86 +111,62 @@ public class QuadrantModel implements FeatureExtractor {
 
 	@Override
 	public double[] extractFeatures(GameState s, int player) {
-		// in a linkedhashmap, elements are recovered in the order they were stored
-		// this will be useful to unbox everything in the end
-		Map<String, Double> features = new LinkedHashMap<>();
+		double[] features = new double[numFeatures];
+		extractFeatures(s, player, features);
+		return features;
+	}
+	
+	@Override
+	public void extractFeatures(GameState s, int player, double[] features) {
+		// the layout follows featureNames(): the 'global' features come first, 
+		// then one block per quadrant with the unit counts per type and player 
+		// followed by the average health per player
+		Arrays.fill(features, 0, numFeatures, 0);
 		
 		// adds the 'global' features
-		features.put("bias", 1.0);
-		features.put("resources_p0", s.getPlayer(0).getResources() / 50.0);
-		features.put("resources_p1", s.getPlayer(1).getResources() / 50.0);
-		features.put("game_time", s.getTime() / (double)maxCycles);
+		features[0] = 1.0; //bias
+		features[1] = s.getPlayer(0).getResources() / 50.0;
+		features[2] = s.getPlayer(1).getResources() / 50.0;
+		features[3] = s.getTime() / (double)maxCycles;
 		
 		
 		// --- now for the quadrant-dependent features
 		
-		int width = s.getPhysicalGameState().getWidth();
-		int height = s.getPhysicalGameState().getHeight();
-		// determines the length of the quadrants. 
-		// If dimensions are not multiple of the number of quadrants, rounds the division up to ensure 
-		// the whole map is swept
-		int xQuadLength = width % NUM_QUADRANTS == 0 ? width / NUM_QUADRANTS : 1 + width / NUM_QUADRANTS;
-		int yQuadLength = height % NUM_QUADRANTS == 0 ? height / NUM_QUADRANTS : 1 + height / NUM_QUADRANTS;
-		int numTiles = xQuadLength * yQuadLength; //number of tiles per quadrant (max #units that can be there)
-        
-        // for each quadrant, counts the number of units of each type per player
-		for (int xQuad = 0; xQuad < NUM_QUADRANTS; xQuad++){
-			for (int yQuad = 0; yQuad < NUM_QUADRANTS; yQuad++){
-				
-				// arrays counting the sum of hit points and number of units owned by each player
-				// (we're actually using proportional hit points of units: current / max)
-				double hpSum[] = new double[2];
-				int unitCount[] = new int[2];
-				
-				// initializes the unit count and HP sum of each type and player as zero
-				hpSum[0] = hpSum[1] = 0;
-				unitCount[0] = unitCount[1] = 0;
-				
-				// initializes the count of each unit type as zero, ignoring resources
-				for(UnitType type : types.getUnitTypes()){
-					if(type.name.equalsIgnoreCase("resource")) continue; 
-					
-					features.put(unitCountFeatureName(xQuad, yQuad, 0, type), 0.0); //for player 0
-					features.put(unitCountFeatureName(xQuad, yQuad, 1, type), 0.0); //for player 1
-				}
-
-				// a collection of units in this quadrant 
-				Collection<Unit> unitsInQuad = s.getPhysicalGameState().getUnitsInRectangle(
-					xQuad*xQuadLength, yQuad*yQuadLength, xQuadLength, yQuadLength
-				);
-				
-				// traverses the list of units in quadrant, incrementing their feature count
-				for(Unit u : unitsInQuad){
-					if(u.getType().isResource) continue;	//ignores resources
-					
-					unitCount[u.getPlayer()]++;
-					hpSum[u.getPlayer()] += u.getHitPoints() / (double) u.getType().hp;
-
-					String name = unitCountFeatureName(xQuad, yQuad, u.getPlayer(), u.getType());
-					
-					// counts and increment the number of the given unit in the current quadrant
-					// increment is 1/quadsize due to normalization (assuming a max of 50 units)
-					// defaults to zero if this is the first time the feature is being queried
-					features.put(name, features.get(name) + 1.0 / numTiles); 
-				}
-				
-				// computes the average HP of units owned by each player
-				for(int p = 0; p < 2; p++){ // p for each player
-					double avgHP = unitCount[p] != 0 ? hpSum[p] / unitCount[p] : 0;
-					features.put(avgHealthFeatureName(xQuad, yQuad, p), avgHP);
+		// the quadrant of each tile (cached per map dimensions)
+		QuadrantGeometry geometry = QuadrantGeometry.of(
+			s.getPhysicalGameState().getWidth(), s.getPhysicalGameState().getHeight(), quadrantsX, quadrantsY
+		);
+		double unitIncrement = 1.0 / geometry.tilesPerQuadrant(); //normalizes counts by the number of tiles per quadrant
+		
+		// number of units owned by each player in each quadrant (indexed by 2 * quadrant + player)
+		int numQuadrants = quadrantsX * quadrantsY;
+		int[] unitCounts = this.unitCounts.get();
+		Arrays.fill(unitCounts, 0);
+		
+		// a single pass over the units, binning each one in its quadrant: the unit count 
+		// of its type and player is incremented and its proportional hit points (current / max) 
+		// are summed in the health feature of its player (averaged below) 
+		for (Unit u : s.getPhysicalGameState().getUnits()) {
+			if(u.getType().isResource) continue;	//ignores resources
+			
+			int quadrant = geometry.quadrant(u.getX(), u.getY());
+			int quadOffset = NUM_GLOBAL_FEATURES + quadrant * featuresPerQuadrant;
+			int owner = u.getPlayer();
+			
+			features[quadOffset + 2 * typeSlots[u.getType().ID] + owner] += unitIncrement;
+			features[quadOffset + 2 * numCountedTypes + owner] += u.getHitPoints() / (double) u.getType().hp;
+			unitCounts[2 * quadrant + owner]++;
+		}
+		
+		// turns the sums of hit points into averages
+		for (int quadrant = 0; quadrant < numQuadrants; quadrant++) {
+			int healthOffset = NUM_GLOBAL_FEATURES + quadrant * featuresPerQuadrant + 2 * numCountedTypes;
+			for (int owner = 0; owner < 2; owner++) {
+				if (unitCounts[2 * quadrant + owner] != 0) {
+					features[healthOffset + owner] /= unitCounts[2 * quadrant + owner];
 				}
-				
 			}
 		}
-		// now I must unbox everything =/
-		double[] featureArray = new double[getNumFeatures()];
-		int i = 0;
-		for(Double d : features.values()) {
-			featureArray[i] = d.doubleValue();
-			i++;
-		}
-		// this one-liner did not work for unboxing: Stream.of(features.values()).mapToDouble(Double::doubleValue).toArray();
-		return featureArray;
 	}
 
 	@Override
@@ -126,8 +181,8 @@ public class QuadrantModel implements FeatureExtractor {
 		// adds the 'per-quadrant' features 
 
 		// the first two for traverse the quadrants
-		for (int xQuad = 0; xQuad < NUM_QUADRANTS; xQuad++){
-			for (int yQuad = 0; yQuad < NUM_QUADRANTS; yQuad++){
+		for (int xQuad = 0; xQuad < quadrantsX; xQuad++){
+			for (int yQuad = 0; yQuad < quadrantsY; yQuad++){
 				
 				// the third for traverses the unit types
 				for(UnitType type : types.getUnitTypes()){
@@ -147,6 +202,22 @@ public class QuadrantModel implements FeatureExtractor {
 		return featureNames;
 	}
 
+	/**
+	 * Returns the number of quadrants along the width of the map
+	 * @return
+	 */
+	public int getQuadrantsX() {
+		return quadrantsX;
+	}
+	
+	/**
+	 * Returns the number of quadrants along the height of the map
+	 * @return
+	 */
+	public int getQuadrantsY() {
+		return quadrantsY;
+	}
+
 	private String avgHealthFeatureName(int xQuad, int yQuad, int player) {
 		return "avg_health-" + xQuad + "-" + yQuad + "-" + player;
 	}
@@ -0,0 +1,206 @@
+package features;
+
+import java.util.Arrays;
+
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.units.Unit;
+
+/**
+ * Positions of the units of a state, grouped by player and category 
+ * (mobile units, non-resource units, stockpiles), built with a single pass over the units,
+ * to compute Manhattan distances between groups without comparing every pair of units:
+ * <ul>
+ * <li>the largest distance comes from the extremes of the x+y and x-y projections of each group, in O(1);</li>
+ * <li>the shortest distance is found by brute force when the groups are small and, otherwise,
+ * with a (two-pass) L1 distance transform of the map seeded with one of the groups, in O(map size + units).</li>
+ * </ul>
+ * Both are exact, so features are the same computed by comparing all pairs.
+ * 
+ * Not thread-safe: the index keeps scratch buffers, so each thread should have its own.
+ * 
+ * @author artavares
+ *
+ */
+public class SpatialIndex {
+	
+	/**
+	 * Categories of units
+	 */
+	public static final int MOBILE = 0, NON_RESOURCE = 1, STOCKPILE = 2;
+	
+	private static final int NUM_CATEGORIES = 3;
+	
+	/**
+	 * Positions of the units of a player and category, with the extremes of their projections 
+	 */
+	public static class PointSet {
+		int[] x = new int[16], y = new int[16];
+		int size;
+		int minSum, maxSum, minDiff, maxDiff;
+		
+		void clear() {
+			size = 0;
+			minSum = minDiff = Integer.MAX_VALUE;
+			maxSum = maxDiff = Integer.MIN_VALUE;
+		}
+		
+		void add(int px, int py) {
+			if (size == x.length) {
+				x = Arrays.copyOf(x, 2 * size);
+				y = Arrays.copyOf(y, 2 * size);
+			}
+			x[size] = px;
+			y[size] = py;
+			size++;
+			minSum = Math.min(minSum, px + py);
+			maxSum = Math.max(maxSum, px + py);
+			minDiff = Math.min(minDiff, px - py);
+			maxDiff = Math.max(maxDiff, px - py);
+		}
+		
+		/**
+		 * Returns the number of units in the set
+		 * @return
+		 */
+		public int size() {
+			return size;
+		}
+	}
+	
+	/**
+	 * Point sets indexed by category and player
+	 */
+	private PointSet[][] sets;
+	
+	private int width, height;
+	
+	/**
+	 * Scratch buffer of the distance transform
+	 */
+	private int[] distances;
+	
+	public SpatialIndex() {
+		sets = new PointSet[NUM_CATEGORIES][2];
+		for (PointSet[] categorySets : sets) {
+			for (int p = 0; p < 2; p++) {
+				categorySets[p] = new PointSet();
+				categorySets[p].clear();
+			}
+		}
+		distances = new int[0];
+	}
+	
+	/**
+	 * Indexes the units of the given state (discarding the previous ones)
+	 * @param state
+	 */
+	public void build(GameState state) {
+		PhysicalGameState pgs = state.getPhysicalGameState();
+		width = pgs.getWidth();
+		height = pgs.getHeight();
+		
+		for (PointSet[] categorySets : sets) {
+			categorySets[0].clear();
+			categorySets[1].clear();
+		}
+		
+		for (Unit u : pgs.getUnits()) {
+			int player = u.getPlayer();
+			if (player != 0 && player != 1) continue; // resources (and no one else) are neutral
+			
+			if (u.getType().canMove) sets[MOBILE][player].add(u.getX(), u.getY());
+			if (!u.getType().isResource) sets[NON_RESOURCE][player].add(u.getX(), u.getY());
+			if (u.getType().isStockpile) sets[STOCKPILE][player].add(u.getX(), u.getY());
+		}
+	}
+	
+	/**
+	 * Returns the units of the given category owned by the given player
+	 * @param category
+	 * @param player
+	 * @return
+	 */
+	public PointSet get(int category, int player) {
+		return sets[category][player];
+	}
+	
+	/**
+	 * Returns the largest Manhattan distance between a unit of a set and a unit of another, 
+	 * or zero if any of them is empty
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public int largestDistance(PointSet a, PointSet b) {
+		if (a.size == 0 || b.size == 0) return 0;
+		
+		// |dx| + |dy| = max(|d(x+y)|, |d(x-y)|)
+		return Math.max(
+			Math.max(a.maxSum - b.minSum, b.maxSum - a.minSum),
+			Math.max(a.maxDiff - b.minDiff, b.maxDiff - a.minDiff)
+		);
+	}
+	
+	/**
+	 * Returns the shortest Manhattan distance between a unit of a set and a unit of another, 
+	 * or width + height of the map if any of them is empty
+	 * @param a
+	 * @param b
+	 * @return
+	 */
+	public int shortestDistance(PointSet a, PointSet b) {
+		int shortestDistance = width + height;
+		if (a.size == 0 || b.size == 0) return shortestDistance;
+		
+		// comparing all pairs is cheaper than sweeping the map twice
+		if ((long) a.size * b.size <= 2L * width * height) {
+			for (int i = 0; i < a.size; i++) {
+				for (int j = 0; j < b.size; j++) {
+					int distance = Math.abs(a.x[i] - b.x[j]) + Math.abs(a.y[i] - b.y[j]);
+					if (distance < shortestDistance) {
+						shortestDistance = distance;
+					}
+				}
+			}
+			return shortestDistance;
+		}
+		
+		distanceTransform(b);
+		for (int i = 0; i < a.size; i++) {
+			shortestDistance = Math.min(shortestDistance, distances[a.x[i] + a.y[i] * width]);
+		}
+		return shortestDistance;
+	}
+	
+	/**
+	 * Fills {@link #distances} with the Manhattan distance from each cell to the nearest unit of the set
+	 * (walls are ignored, as in the pairwise distances)
+	 * @param seeds
+	 */
+	private void distanceTransform(PointSet seeds) {
+		int cells = width * height;
+		if (distances.length < cells) {
+			distances = new int[cells];
+		}
+		Arrays.fill(distances, 0, cells, width + height);
+		for (int i = 0; i < seeds.size; i++) {
+			distances[seeds.x[i] + seeds.y[i] * width] = 0;
+		}
+		
+		// forward pass: neighbors above and to the left
+		for (int y = 0; y < height; y++) {
+			for (int x = 0, cell = y * width; x < width; x++, cell++) {
+				if (y > 0) distances[cell] = Math.min(distances[cell], distances[cell - width] + 1);
+				if (x > 0) distances[cell] = Math.min(distances[cell], distances[cell - 1] + 1);
+			}
+		}
+		// backward pass: neighbors below and to the right
+		for (int y = height - 1; y >= 0; y--) {
+			for (int x = width - 1, cell = y * width + x; x >= 0; x--, cell--) {
+				if (y < height - 1) distances[cell] = Math.min(distances[cell], distances[cell + width] + 1);
+				if (x < width - 1) distances[cell] = Math.min(distances[cell], distances[cell + 1] + 1);
+			}
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package features;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -23,6 +24,11 @@ public class UnitDistance implements FeatureExtractor {
 	private int initialUnitIndex;
 	private int numberTypes;
 	
+	/**
+	 * Positions of the units of the state being featurized (one per thread, as extractors may be shared)
+	 */
+	private ThreadLocal<SpatialIndex> spatialIndex = ThreadLocal.withInitial(SpatialIndex::new);
+	
 	List<String> featureNames = new ArrayList<>() {{
 		add("bias");
 		add("shortestDistanceMobileUnits");
@@ -109,8 +115,15 @@ public class UnitDistance implements FeatureExtractor {
 	}
 	
 	public double[] extractFeatures(GameState s, int player) {
-		//count: resources, bases, barracks, workers, heavy, light, ranged for both players
 		double[] features = new double[numFeatures];
+		extractFeatures(s, player, features);
+		return features;
+	}
+	
+	@Override
+	public void extractFeatures(GameState s, int player, double[] features) {
+		//count: resources, bases, barracks, workers, heavy, light, ranged for both players
+		Arrays.fill(features, 0, numFeatures, 0);
 		
 		features[0] = 1; //bias, always 1
 		
@@ -151,32 +164,18 @@ public class UnitDistance implements FeatureExtractor {
 			features[i] /= maxUnits;
 		}
 		// END: normalize features
-		
-		return features;
 	}
 	
+	/**
+	 * Returns the shortest Manhattan distance between units (including buildings) of different players
+	 * (width+height of the map if a player has no units)
+	 * @param state
+	 * @return
+	 */
 	public int shortestDistanceBetweenEnemies(GameState state) {
-		// initializes the shortest distance to a sensible value (width+height)
-		int width = state.getPhysicalGameState().getWidth();
-		int height = state.getPhysicalGameState().getHeight();
-		int shortestDistance = width + height;
-		
-		// inefficient way to determine the distance...
-		for(Unit u : state.getUnits()) {
-			for(Unit v : state.getUnits()) {
-				// skips units from the same player and resources
-				if( u.getPlayer() == v.getPlayer() || 
-						u.getType().isResource || v.getType().isResource ) continue;
-				
-				int distance = Math.abs(u.getX() - v.getX()) + Math.abs(u.getY() - v.getY());
-				if (distance < shortestDistance) {
-					shortestDistance = distance;
-				}
-				
-			}
-		}
-		
-		return shortestDistance;
+		SpatialIndex index = spatialIndex.get();
+		index.build(state);
+		return index.shortestDistance(index.get(SpatialIndex.NON_RESOURCE, 0), index.get(SpatialIndex.NON_RESOURCE, 1));
 	}
 
 	@Override
@@ -1,10 +1,6 @@
 package learning;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -22,8 +18,10 @@ import reward.RewardModel;
 import reward.RewardModelFactory;
 import rts.GameState;
 import rts.units.UnitTypeTable;
+import utils.LinearKernels;
 import utils.MathHelper;
 import utils.StrategyNames;
+import utils.WeightFile;
 
 /**
  * Q-learning with linear function approximation
@@ -251,9 +249,7 @@ public class LinearQLearning implements LearningAgent {
 		// updates the weight vector: w = w + alpha * tdError * f
 		double[] f = featureExtractor.extractFeatures(state, player); // feature vector for the state
 		double[] w = weights.get(action); // weight vector of the taken action
-		for (int i = 0; i < w.length; i++) {
-			w[i] = w[i] + alpha * tdError * f[i]; 
-		}
+		LinearKernels.get().axpy(alpha * tdError, f, w);
 	}
 	
 	/**
@@ -282,26 +278,12 @@ public class LinearQLearning implements LearningAgent {
 
 	@Override
 	public void save(String path) throws IOException {
-		FileOutputStream fos = new FileOutputStream(path);
-		ObjectOutputStream oos = new ObjectOutputStream(fos);
-		oos.writeObject(weights);
-		oos.close();
-		fos.close();
+		WeightFile.fromMap(featureExtractor, weights).write(path);
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public void load(String path) throws IOException {
-		FileInputStream fis = new FileInputStream(path);
-		ObjectInputStream ois = new ObjectInputStream(fis);
-		try {
-			weights = (Map<String, double[]>) ois.readObject();
-		} catch (ClassNotFoundException e) {
-			System.err.println("Error while attempting to load weights.");
-			e.printStackTrace();
-		}
-		ois.close();
-		fis.close();
+		weights = new HashMap<>(WeightFile.read(path).toMap());
 	}
 	
 	/**
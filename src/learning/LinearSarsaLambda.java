@@ -1,22 +1,22 @@
 package learning;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Random;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import features.FeatureCache;
 import features.FeatureExtractor;
 import features.FeatureExtractorFactory;
 import reward.RewardModel;
@@ -24,28 +24,65 @@ import reward.RewardModelFactory;
 import rts.GameState;
 import rts.units.UnitTypeTable;
 import utils.MathHelper;
+import utils.PlanningMetrics;
+import utils.WeightFile;
 
 public class LinearSarsaLambda implements LearningAgent {
 	
 	/**
-	 * The weights are per action
+	 * Flag value for 'no action selected'
 	 */
-	private Map<String, double[]> weights;
+	public static final int NO_ACTION = -1;
 	
 	/**
-	 * The vectors of eligibility traces (one per action)
+	 * The weights are per action: a numActions x numFeatures matrix stored
+	 * row-major (the weights of action a start at a * numFeatures).
+	 * Only one of weights and floatWeights is allocated, depending on the precision
 	 */
-	private Map<String, double[]> eligibility;
+	private double[] weights;
 	
 	/**
-	 * A list of possible actions
+	 * The weight matrix in single precision (see {@link #PRECISION_FLOAT32}), null in double precision
+	 */
+	private float[] floatWeights;
+	
+	/**
+	 * Values of learner.precision: the weights are stored as doubles or as floats. 
+	 * Single precision halves the memory and cache footprint of the weight matrix 
+	 * (e.g. with many agents or portfolios), at the cost of rounding the weights to ~7 digits
+	 */
+	public static final String PRECISION_FLOAT64 = "float64", PRECISION_FLOAT32 = "float32";
+	
+	/**
+	 * Whether the weights are stored in single precision
+	 */
+	private boolean singlePrecision;
+	
+	/**
+	 * The eligibility traces, with the same layout of the weights
+	 * (only the non-negligible ones are visited on updates)
+	 */
+	private SparseEligibilityTraces eligibility;
+	
+	/**
+	 * A list of possible actions (the position of an action is its index)
 	 */
 	List<String> actions;
+	
+	/**
+	 * Maps action names to their indexes
+	 */
+	private Map<String, Integer> actionIndexes;
+	
+	/**
+	 * The length of the weight vector of each action
+	 */
+	private int numFeatures;
 
    /**
-    * Previous and current action
+    * Previous and current action (indexes)
     */
-	private String previousAction, nextAction;
+	private int previousAction, nextAction;
    
    
    /**
@@ -78,6 +115,17 @@ public class LinearSarsaLambda implements LearningAgent {
     * The discount factor of future rewards
     */
     protected double gamma;
+    
+    /**
+     * Default value of {@link #traceThreshold}: only traces that decay to exactly zero are cut,
+     * so the updates are the same as with dense traces
+     */
+    public static final double DEFAULT_TRACE_THRESHOLD = 0;
+    
+    /**
+     * Eligibility traces that decay to this value (in absolute terms) or below are cut to zero
+     */
+    protected double traceThreshold = DEFAULT_TRACE_THRESHOLD;
 
    /**
     * The random number generator
@@ -88,6 +136,13 @@ public class LinearSarsaLambda implements LearningAgent {
     * The state feature extractor
     */
     protected FeatureExtractor featureExtractor;
+    
+    /**
+     * Caches the feature vectors of the latest states, so that each state is featurized 
+     * once per step. Its vectors are reused across calls to avoid allocating one array 
+     * per extraction (each agent is used by a single thread)
+     */
+    private FeatureCache featureCache;
 	
     /**
      * The reward model used by the agent
@@ -97,9 +152,30 @@ public class LinearSarsaLambda implements LearningAgent {
     protected Logger logger;
     
     /**
-     * Private empty constructor, used for cloning
+     * Receives the latencies of feature extraction and TD updates (null if not measured)
      */
-    private LinearSarsaLambda() {};
+    private PlanningMetrics metrics;
+    
+    /**
+     * Private constructor used for cloning: copies the parameters of the other agent 
+     * (with a new random number generator) and initializes everything but the weights, 
+     * eligibility traces and feature cache, which are up to each kind of clone
+     * @param other
+     */
+    private LinearSarsaLambda(LinearSarsaLambda other) {
+    	rewards = other.rewards;
+    	featureExtractor = other.featureExtractor;
+    	actions = other.actions; 
+    	alpha = other.alpha; 
+    	epsilon = other.epsilon;
+    	gamma = other.gamma; 
+    	lambda = other.lambda;
+    	traceThreshold = other.traceThreshold;
+    	singlePrecision = other.singlePrecision;
+    	metrics = other.metrics;
+    	random = new Random();
+    	initializeState();
+    }
     
     /**
      * Returns a LinearSarsaLambda object configured with alpha, epsilon and
@@ -141,6 +217,8 @@ public class LinearSarsaLambda implements LearningAgent {
         epsilon = Double.parseDouble(config.getProperty("td.epsilon.initial"));
         gamma = Double.parseDouble(config.getProperty("td.gamma")); 
  		lambda = Double.parseDouble(config.getProperty("td.lambda"));
+ 		traceThreshold = Double.parseDouble(config.getProperty("td.trace.threshold", String.valueOf(DEFAULT_TRACE_THRESHOLD)));
+ 		singlePrecision = isSinglePrecision(config.getProperty("learner.precision", PRECISION_FLOAT64));
  		
  		random = new Random(Integer.parseInt(config.getProperty("random_seed", "0")));
  		
@@ -197,40 +275,57 @@ public class LinearSarsaLambda implements LearningAgent {
      * random number generator (which is overkill to clone: https://stackoverflow.com/a/54156572/1251716)
      */
     public LinearSarsaLambda cloneExceptEligibility() {
-    	LinearSarsaLambda copy = new LinearSarsaLambda();
-    	
-    	copy.rewards = this.rewards;
-    	copy.featureExtractor = this.featureExtractor;
-    	copy.actions = this.actions; 
-    	copy.alpha = this.alpha; 
-    	copy.epsilon = this.epsilon;
-    	copy.gamma = this.gamma; 
-    	copy.lambda = this.lambda;
-    	copy.random = new Random();
-    	copy.initialize();
-    	
-    	copy.copyWeights(this.getWeights());
+    	LinearSarsaLambda copy = new LinearSarsaLambda(this);
+    	copy.weights = weights == null ? null : weights.clone();
+    	copy.floatWeights = floatWeights == null ? null : floatWeights.clone();
+    	copy.eligibility = new SparseEligibilityTraces(numWeights(), traceThreshold);
+    	copy.featureCache = new FeatureCache(featureExtractor, numFeatures);
  		
  		return copy;
     }
     
+    /**
+     * Returns a clone of this object that shares the weight matrix with it 
+     * (updates done by either one are seen by the other), but with its own eligibility 
+     * traces, feature cache and random number generator.
+     * 
+     * This supports Hogwild-style concurrent learning: agents sharing weights can 
+     * learn in different threads, applying their updates to the shared matrix 
+     * without locks. Occasional lost or stale updates are tolerated, as they 
+     * are for sparse/small updates of stochastic gradient methods.
+     * 
+     * The sharing is kept as long as neither agent is reshaped 
+     * (see {@link #setWeights(Map)}; loading weights of the same shape keeps it).
+     */
+    public LinearSarsaLambda cloneSharingWeights() {
+    	LinearSarsaLambda copy = new LinearSarsaLambda(this);
+    	copy.actionIndexes = this.actionIndexes;
+    	copy.numFeatures = this.numFeatures;
+    	copy.weights = this.weights;
+    	copy.floatWeights = this.floatWeights;
+    	copy.eligibility = new SparseEligibilityTraces(numWeights(), traceThreshold);
+    	copy.featureCache = new FeatureCache(featureExtractor, numFeatures);
+    	return copy;
+    }
+    
+    /**
+     * Returns whether this agent and the other one share their weight matrix 
+     * (see {@link #cloneSharingWeights()})
+     * @param other
+     * @return
+     */
+    public boolean sharesWeightsWith(LinearSarsaLambda other) {
+    	return weights == other.weights && floatWeights == other.floatWeights;
+    }
+    
     /**
      * Returns another LinearSarsaLambda object with the same parameters, but with new
      * weights, eligibility & random number generator
      * (which is overkill to clone: https://stackoverflow.com/a/54156572/1251716)
      */
     public LinearSarsaLambda cloneExceptWeightsAndEligibility() {
-    	LinearSarsaLambda copy = new LinearSarsaLambda();
-    	
-    	copy.rewards = this.rewards;
-    	copy.featureExtractor = this.featureExtractor;
-    	copy.actions = this.actions; 
-    	copy.alpha = this.alpha; 
-    	copy.epsilon = this.epsilon;
-    	copy.gamma = this.gamma; 
-    	copy.lambda = this.lambda;
-    	copy.random = new Random();
-    	copy.initialize();
+    	LinearSarsaLambda copy = new LinearSarsaLambda(this);
+    	copy.initializeWeights();
  		
  		return copy;
     }
@@ -240,41 +335,217 @@ public class LinearSarsaLambda implements LearningAgent {
      * current and previous state and action)
      */
     private void initialize() {
+    	initializeState();
+    	initializeWeights();
+    }
+    
+    /**
+     * Initializes the logger, action indexes, number of features as well as 
+     * current and previous state and action
+     */
+    private void initializeState() {
     	logger = LogManager.getRootLogger();
-    	nextAction = previousAction = null;
+    	nextAction = previousAction = NO_ACTION;
         previousState = null;
-    	
-        weights = new HashMap<>();
-        eligibility = new HashMap<>();
         
         playerID = -1;	//initializes with a 'flag' value so that it is updated in the first call to 'act' 
+        
+        indexActions(actions);
+        numFeatures = featureExtractor.getNumFeatures();
+    }
+    
+    /**
+     * Allocates the weights (randomly initialized), eligibility traces and feature cache
+     */
+    private void initializeWeights() {
+        allocateWeights(actions.size() * numFeatures);
+        eligibility = new SparseEligibilityTraces(numWeights(), traceThreshold);
+        featureCache = new FeatureCache(featureExtractor, numFeatures);
 
-        for (String action : actions) {
-
-            eligibility.put(action, new double[featureExtractor.getNumFeatures()]);
-
-            // initializes weights randomly within [-1, 1]
-            double[] actionWeights = new double[featureExtractor.getNumFeatures()];
-            for (int i = 0; i < actionWeights.length; i++) {
-                    actionWeights[i] = (random.nextDouble() * 2) - 1; // randomly initialized in [-1,1]
-            }
-            weights.put(action, actionWeights);
+        // initializes weights randomly within [-1, 1], action by action
+        for (int i = 0; i < numWeights(); i++) {
+        	setWeight(i, (random.nextDouble() * 2) - 1); // randomly initialized in [-1,1]
         }
     }
     
+    /**
+     * Returns whether the given precision (see {@link #PRECISION_FLOAT64} and {@link #PRECISION_FLOAT32}) 
+     * is the single one
+     * @param precision
+     * @return
+     */
+    private static boolean isSinglePrecision(String precision) {
+    	if (PRECISION_FLOAT32.equals(precision)) {
+    		return true;
+    	}
+    	if (PRECISION_FLOAT64.equals(precision)) {
+    		return false;
+    	}
+    	throw new IllegalArgumentException("Precision '" + precision + "' not found.");
+    }
+    
+    /**
+     * Allocates a zeroed weight matrix with the given number of entries in the current precision
+     * @param length
+     */
+    private void allocateWeights(int length) {
+    	if (singlePrecision) {
+    		weights = null;
+    		floatWeights = new float[length];
+    	}
+    	else {
+    		weights = new double[length];
+    		floatWeights = null;
+    	}
+    }
+    
+    /**
+     * Returns the number of entries of the weight matrix (numActions x numFeatures)
+     * @return
+     */
+    private int numWeights() {
+    	return singlePrecision ? floatWeights.length : weights.length;
+    }
+    
+    /**
+     * Sets an entry of the weight matrix (rounded to float in single precision)
+     * @param index
+     * @param value
+     */
+    private void setWeight(int index, double value) {
+    	if (singlePrecision) {
+    		floatWeights[index] = (float) value;
+    	}
+    	else {
+    		weights[index] = value;
+    	}
+    }
+    
+    /**
+     * Returns the precision of the weights ({@link #PRECISION_FLOAT64} or {@link #PRECISION_FLOAT32})
+     * @return
+     */
+    public String getPrecision() {
+    	return singlePrecision ? PRECISION_FLOAT32 : PRECISION_FLOAT64;
+    }
+    
+    /**
+     * Assigns an index to each action name (duplicates are discarded)
+     * @param actionNames
+     */
+    private void indexActions(Collection<String> actionNames) {
+    	actions = Collections.unmodifiableList(new ArrayList<>(new LinkedHashSet<>(actionNames)));
+    	
+    	Map<String, Integer> indexes = new HashMap<>();
+    	for (int a = 0; a < actions.size(); a++) {
+    		indexes.put(actions.get(a), a);
+    	}
+    	actionIndexes = indexes;
+    }
+    
+    /**
+     * Returns the (cached) features of the given state. 
+     * The returned array must not be modified. 
+     * @param state
+     * @param player
+     * @return
+     */
+    private double[] extractFeatures(GameState state, int player) {
+    	if (metrics == null) {
+    		return featureCache.get(state, player);
+    	}
+    	
+    	// only actual extractions (cache misses) are timed
+    	long misses = featureCache.getMisses();
+    	long start = System.nanoTime();
+    	double[] features = featureCache.get(state, player);
+    	if (featureCache.getMisses() != misses) {
+    		metrics.record(PlanningMetrics.Timer.FEATURES, System.nanoTime() - start);
+    	}
+    	return features;
+    }
+    
+    /**
+     * Sets the metrics that receive the latencies of feature extraction and TD updates 
+     * (copies made afterwards share them; null stops measuring)
+     * @param metrics
+     */
+    public void setMetrics(PlanningMetrics metrics) {
+    	this.metrics = metrics;
+    }
+    
+    /**
+     * Returns the feature cache of this agent (e.g. to inspect its hit/miss counters)
+     * @return
+     */
+    public FeatureCache getFeatureCache() {
+    	return featureCache;
+    }
+    
     /**
      * Resets the eligibility traces
      */
     public void clearEligibility() {
-    	for (String action : actions) {
-            eligibility.put(action, new double[featureExtractor.getNumFeatures()]);	//TODO possible memory leak?
+    	eligibility.clear();
+    	featureCache.invalidate();
+    }
+    
+    /**
+     * Returns the number of actions
+     * @return
+     */
+    public int numActions() {
+    	return actions.size();
+    }
+    
+    /**
+     * Returns the (read-only) list of action names, ordered by index
+     * @return
+     */
+    public List<String> getActions() {
+    	return actions;
+    }
+    
+    /**
+     * Returns the index of the given action ({@link #NO_ACTION} for null)
+     * @param actionName
+     * @return
+     * @throws IllegalArgumentException if the action is unknown 
+     */
+    public int indexOf(String actionName) {
+    	if (actionName == null) {
+    		return NO_ACTION;
     	}
+    	Integer index = actionIndexes.get(actionName);
+    	if (index == null) {
+    		throw new IllegalArgumentException("Action '" + actionName + "' not found.");
+    	}
+    	return index;
+    }
+    
+    /**
+     * Returns the name of the action with the given index, or null for {@link #NO_ACTION}
+     * @param action
+     * @return
+     */
+    public String actionName(int action) {
+    	return action == NO_ACTION ? null : actions.get(action);
     }
     
     
 
 	@Override
 	public String act(GameState state, int player) {
+		return actionName(actIndex(state, player));
+	}
+	
+	/**
+	 * Index-based version of {@link #act(GameState, int)}
+	 * @param state
+	 * @param player
+	 * @return the index of the action to perform
+	 */
+	public int actIndex(GameState state, int player) {
 		
 		// sets my player ID on the first call
 		if(playerID == -1) {
@@ -284,14 +555,15 @@ public class LinearSarsaLambda implements LearningAgent {
 		// updates the previous and current states, as well as previous and current actions
         previousState = nextState;
         previousAction = nextAction;
-        nextAction = epsilonGreedy(state, player);
+        // the action is selected on the clone, so that its features are cached for the updates
         nextState = state.clone();
+        nextAction = epsilonGreedyIndex(nextState, player);
         
         
         // gets the reward for this state
         double reward = rewards.reward(state, player);
         
-        if(previousState != null && previousAction != null) {
+        if(previousState != null && previousAction != NO_ACTION) {
         	// performs a sarsa update on the current experience tuple
             sarsaUpdate(previousState, player, previousAction, reward, nextState, nextAction, state.gameover());
         }
@@ -309,7 +581,8 @@ public class LinearSarsaLambda implements LearningAgent {
 		
 		// resets the variables
 		previousState = nextState = null;
-		previousAction = nextAction = null;
+		previousAction = nextAction = NO_ACTION;
+		featureCache.invalidate();
 		
 		//double tdError = finalReward - qValue(previousState, playerID, previousAction);
 		//tdLambdaUpdateRule(previousState, playerID, previousAction, tdError, weights, eligibility);
@@ -324,10 +597,17 @@ public class LinearSarsaLambda implements LearningAgent {
 	 * If a' was not already chosen for s', it will be chosen here if s' is not terminal
 	 */
 	public void learn(GameState state, int player, String action, double reward, GameState nextState, boolean done) {
+		learn(state, player, indexOf(action), reward, nextState, done);
+	}
+	
+	/**
+	 * Index-based version of {@link #learn(GameState, int, String, double, GameState, boolean)}
+	 */
+	public void learn(GameState state, int player, int action, double reward, GameState nextState, boolean done) {
 		
 		if(nextState != null &&  !nextState.equals(this.nextState) && !done) {
-			nextAction = epsilonGreedy(nextState, player);
-			logger.debug("Next action changed to {}", nextAction);
+			nextAction = epsilonGreedyIndex(nextState, player);
+			logger.debug("Next action changed to {}", actionName(nextAction));
 		}
 		
 		sarsaUpdate(state, player, action, reward, nextState, nextAction, done);
@@ -344,26 +624,35 @@ public class LinearSarsaLambda implements LearningAgent {
 	 * @param done
 	 */
 	public void sarsaUpdate(GameState state, int player, String action, double reward, GameState nextState, String nextAction, boolean done) {
+		sarsaUpdate(state, player, indexOf(action), reward, nextState, indexOf(nextAction), done);
+	}
+	
+	/**
+	 * Index-based version of {@link #sarsaUpdate(GameState, int, String, double, GameState, String, boolean)}
+	 */
+	public void sarsaUpdate(GameState state, int player, int action, double reward, GameState nextState, int nextAction, boolean done) {
 		this.nextAction = nextAction; //on the next step, I must perform this action (on policy)
 		
-		logger.trace(
-			"Player {}: <s,a,r,s'(gameover?),a',q(s',a')> = <{}, {}, {}, {}({}), {}, {}>",
-			player,
-			state.getTime(), action, 
-			reward, 
-			nextState == null ? "null" : nextState.getTime(), 
-			done, nextAction,
-			done ? 0 : qValue(nextState, player, nextAction)
-		);
+		if(logger.isTraceEnabled()) {
+			logger.trace(
+				"Player {}: <s,a,r,s'(gameover?),a',q(s',a')> = <{}, {}, {}, {}({}), {}, {}>",
+				player,
+				state.getTime(), actionName(action), 
+				reward, 
+				nextState == null ? "null" : nextState.getTime(), 
+				done, actionName(nextAction),
+				done ? 0 : qValue(nextState, player, nextAction)
+			);
+		}
 		
-		if(done) {
+		if(done && logger.isDebugEnabled()) {
 		logger.debug(
 				"Player {}: <s,a,r,s'(gameover?),a',q(s',a')> = <{}, {}, {}, {}({}), {}, {}>",
 				player,
-				state.getTime(), action, 
+				state.getTime(), actionName(action), 
 				reward, 
 				nextState == null ? "null" : nextState.getTime(), 
-				done, nextAction,
+				done, actionName(nextAction),
 				done ? 0 : qValue(nextState, player, nextAction)
 			);
 		}
@@ -395,6 +684,13 @@ public class LinearSarsaLambda implements LearningAgent {
 	 * @return
 	 */
 	public double tdTarget(double reward, GameState nextState, int player, String nextActionName, boolean done) {
+		return tdTarget(reward, nextState, player, indexOf(nextActionName), done);
+	}
+	
+	/**
+	 * Index-based version of {@link #tdTarget(double, GameState, int, String, boolean)}
+	 */
+	public double tdTarget(double reward, GameState nextState, int player, int nextAction, boolean done) {
 		double nextQ;
 		
 		// terminal states have value of zero
@@ -403,7 +699,7 @@ public class LinearSarsaLambda implements LearningAgent {
 			logger.trace("Reward for terminal state for player {}: {}. ", player, reward
 			);
 		} else {
-			nextQ = qValue(nextState, player, nextActionName);
+			nextQ = qValue(nextState, player, nextAction);
 			logger.trace(
 				"Reward for time {} for player {}: {}. q(s',a')={}. Done? {}", 
 				nextState.getTime(), player, reward, nextQ, done
@@ -422,31 +718,34 @@ public class LinearSarsaLambda implements LearningAgent {
 	 * @param tdError
 	 */
 	public void tdLambdaUpdateRule(GameState state, int player, String action, double tdError) {
+		tdLambdaUpdateRule(state, player, indexOf(action), tdError);
+	}
+	
+	/**
+	 * Index-based version of {@link #tdLambdaUpdateRule(GameState, int, String, double)}
+	 */
+	public void tdLambdaUpdateRule(GameState state, int player, int action, double tdError) {
+		
+		double[] f = extractFeatures(state, player); // feature vector for the state
+		assert f.length == numFeatures;
 		
-		double[] f = featureExtractor.extractFeatures(state, player); // feature vector for the state
+		long start = PlanningMetrics.start(metrics);
 		
 		// incrementes the eligibility of the selected action by adding the feature vector
-		double[] eSelected = eligibility.get(action);
-		for (int i = 0; i < eSelected.length; i++) {
-			eSelected[i] += f[i];
+		eligibility.add(action * numFeatures, f, numFeatures);
+		
+		// updates the weights of all actions (w = w+alpha*delta*e) and decays their 
+		// eligibilities by gamma * lambda; only the entries with non-negligible traces are visited
+		if (singlePrecision) {
+			eligibility.updateWeights(floatWeights, alpha * tdError, gamma, lambda);
+		}
+		else {
+			eligibility.updateWeights(weights, alpha * tdError, gamma, lambda);
 		}
 		
-		// updates the weights of all actions and decays their eligibilities
-		for (String actionName : weights.keySet()) {
-			
-			double[] w = weights.get(actionName); // weight vector
-			double[] e = eligibility.get(actionName); // eligibility vector 
-			
-			assert w == weights.get(actionName);
-			// certifies that things are ok
-			assert w.length == e.length;
-			assert e.length == f.length;
-			
-			// vector updates 
-			for (int i = 0; i < w.length; i++) {
-				w[i] = w[i] + alpha * tdError * e[i]; // weight vector update (w = w+alpha*delta*e)
-				e[i] = e[i] * gamma * lambda; //the eligibility of all actions decays by gamma * lambda
-			}
+		if (metrics != null) {
+			PlanningMetrics.stop(metrics, PlanningMetrics.Timer.TD_UPDATE, start);
+			metrics.increment(PlanningMetrics.Counter.WEIGHT_UPDATES);
 		}
 		
 		/*
@@ -466,48 +765,135 @@ public class LinearSarsaLambda implements LearningAgent {
 	}
 
 	/**
-	 * Returns the weight vector
+	 * Returns a copy of the weight vectors, per action name, in index order
+	 * (changing the returned arrays does not affect this learner)
 	 * @return
 	 */
 	public Map<String, double[]> getWeights(){
-		return weights;
+		return toMap(singlePrecision ? snapshotWeights(null) : weights);
 	}
 	
 	/**
-	 * Replaces the current weights by the one specified here
+	 * Returns a copy of the eligibility traces, per action name, in index order
+	 * @return
+	 */
+	public Map<String, double[]> getEligibility(){
+		Map<String, double[]> map = new LinkedHashMap<>();
+		for (int a = 0; a < actions.size(); a++) {
+			map.put(actions.get(a), eligibility.copyOfRange(a * numFeatures, (a + 1) * numFeatures));
+		}
+		return map;
+	}
+	
+	/**
+	 * Replaces the current weights by the ones specified here (the values are copied).
+	 * If the actions or the length of the vectors differ from the current ones, 
+	 * the actions are re-indexed and the eligibility traces are reset.
 	 * @param weights
 	 */
 	public void setWeights(Map<String, double[]> weights) {
-		this.weights = weights;
+		int length = weights.values().iterator().next().length;
+		
+		if (!weights.keySet().equals(actionIndexes.keySet())) {
+			indexActions(weights.keySet());
+		}
+		if (length != numFeatures || numWeights() != actions.size() * length) {
+			numFeatures = length;
+			allocateWeights(actions.size() * numFeatures);
+			eligibility = new SparseEligibilityTraces(numWeights(), traceThreshold);
+			featureCache.setVectorLength(numFeatures);
+		}
+		
+		for (Map.Entry<String, double[]> entry : weights.entrySet()) {
+			copyInto(entry.getValue(), indexOf(entry.getKey()) * numFeatures, numFeatures);
+		}
+	}
+	
+	/**
+	 * Copies length values of the source array into the weight matrix, starting at the given offset
+	 * @param source
+	 * @param offset
+	 * @param length
+	 */
+	private void copyInto(double[] source, int offset, int length) {
+		if (singlePrecision) {
+			for (int i = 0; i < length; i++) {
+				floatWeights[offset + i] = (float) source[i];
+			}
+		}
+		else {
+			System.arraycopy(source, 0, weights, offset, length);
+		}
+	}
+	
+	/**
+	 * Replaces the current eligibility traces by the ones specified here (the values are copied).
+	 * The given map must have the same actions and vector lengths as the weights.
+	 * @param eligibility
+	 */
+	public void setEligibility(Map<String, double[]> eligibility) {
+		for (Map.Entry<String, double[]> entry : eligibility.entrySet()) {
+			int offset = indexOf(entry.getKey()) * numFeatures;
+			double[] row = entry.getValue();
+			for (int i = 0; i < numFeatures; i++) {
+				this.eligibility.set(offset + i, row[i]);
+			}
+		}
+	}
+	
+	/**
+	 * Builds a map from action name to a copy of its row in the given matrix
+	 * @param matrix
+	 * @return
+	 */
+	private Map<String, double[]> toMap(double[] matrix) {
+		Map<String, double[]> map = new LinkedHashMap<>();
+		for (int a = 0; a < actions.size(); a++) {
+			map.put(actions.get(a), Arrays.copyOfRange(matrix, a * numFeatures, (a + 1) * numFeatures));
+		}
+		return map;
 	}
 
 	@Override
 	public double qValue(GameState state, int player, String actionName) {
-		return qValue(featureExtractor.extractFeatures(state, player), actionName);
+		return qValue(extractFeatures(state, player), actionName);
+	}
+	
+	/**
+	 * Index-based version of {@link #qValue(GameState, int, String)}
+	 */
+	public double qValue(GameState state, int player, int action) {
+		return qValue(extractFeatures(state, player), action);
 	}
 
+	/**
+	 * Saves the weights in the binary format of {@link WeightFile}, 
+	 * in the precision of the weights
+	 */
 	@Override
 	public void save(String path) throws IOException {
-		FileOutputStream fos = new FileOutputStream(path);
-		ObjectOutputStream oos = new ObjectOutputStream(fos);
-		oos.writeObject(weights);
-		oos.close();
-		fos.close();
+		WeightFile file = new WeightFile(featureExtractor, actions, numFeatures, singlePrecision ? snapshotWeights(null) : weights);
+		file.setDtype(singlePrecision ? WeightFile.FLOAT32 : WeightFile.FLOAT64);
+		file.write(path);
 	}
 
-	@SuppressWarnings("unchecked")
+	/**
+	 * Loads weights in the binary format of {@link WeightFile} or in the former 
+	 * (Java serialization) format
+	 */
 	@Override
 	public void load(String path) throws IOException {
-		FileInputStream fis = new FileInputStream(path);
-		ObjectInputStream ois = new ObjectInputStream(fis);
-		try {
-			weights = (Map<String, double[]>) ois.readObject();
-		} catch (ClassNotFoundException e) {
-			System.err.println("Error while attempting to load weights.");
-			e.printStackTrace();
+		WeightFile file = WeightFile.read(path);
+		if (!file.matches(featureExtractor)) {
+			logger.warn("Weights in '{}' were written for features of {}, loading them anyway.", path, file.getFeatureExtractorName());
+		}
+		
+		if (file.getActions().equals(actions) && file.getNumFeatures() == numFeatures) {
+			copyInto(file.getMatrix(), 0, numWeights());
+		}
+		else {
+			setWeights(file.toMap());
 		}
-		ois.close();
-		fis.close();
 	}
 	
 	/**
@@ -519,23 +905,23 @@ public class LinearSarsaLambda implements LearningAgent {
 	 * @return
 	 */
     public String epsilonGreedy(GameState state, int player) {
-		String chosenAction = null;
-
-		// epsilon-greedy:
-		if (random.nextDouble() < epsilon) { // random choice
-			// trick to randomly select from HashMap adapted from:
-			// https://stackoverflow.com/a/9919827/1251716
-			List<String> keys = new ArrayList<String>(weights.keySet());
-			chosenAction = keys.get(random.nextInt(keys.size()));
-			if (chosenAction == null) {
-				logger.error("Unable to select a random action!");
-			}
-		} else { // greedy choice
-			chosenAction = greedyChoice(state, player, weights);
-		}
-
-		return chosenAction;
+		return actionName(epsilonGreedyIndex(state, player));
 	}
+    
+    /**
+     * Index-based version of {@link #epsilonGreedy(GameState, int)}
+     * @param state
+     * @param player
+     * @return
+     */
+    public int epsilonGreedyIndex(GameState state, int player) {
+    	// epsilon-greedy:
+    	if (random.nextDouble() < epsilon) { // random choice
+    		return random.nextInt(actions.size());
+    	} 
+    	// greedy choice
+    	return greedyIndex(state, player);
+    }
 
     /**
 	 * Returns action with the highest Q-value for the given state
@@ -544,32 +930,43 @@ public class LinearSarsaLambda implements LearningAgent {
 	 * @param player
 	 * @return
 	 */
-	public String greedyChoice(GameState state, int player, Map<String, double[]> weights) {
-
-		// the name of the action that be selected for this state
-		String chosenAction = null;
-
+	public String greedyChoice(GameState state, int player) {
+		return actionName(greedyIndex(state, player));
+	}
+	
+	/**
+	 * Returns the index of the action with the highest Q-value for the given state
+	 * (or {@link #NO_ACTION} if no Q-value is comparable)
+	 * @param state
+	 * @param player
+	 * @return
+	 */
+	public int greedyIndex(GameState state, int player) {
+		
+		// the index of the action that be selected for this state
+		int chosenAction = NO_ACTION;
+		
 		// feature vector
-		double[] features = featureExtractor.extractFeatures(state, player);
-
+		double[] features = extractFeatures(state, player);
+		
 		// argmax Q:
 		double maxQ = Double.NEGATIVE_INFINITY; // because MIN_VALUE is positive =/
-		for (String candidate : weights.keySet()) {
+		for (int candidate = 0; candidate < actions.size(); candidate++) {
 			double q = qValue(features, candidate);
 			if(Double.isInfinite(q) || Double.isNaN(q)) {
-				logger.warn("(+ or -) infinite qValue for action {} in state {}", candidate, features); 
+				logger.warn("(+ or -) infinite qValue for action {} in state {}", actions.get(candidate), features); 
 			}
 			if (q > maxQ) {
 				maxQ = q;
 				chosenAction = candidate;
 			}
 		}
-		if (chosenAction == null) {
+		if (chosenAction == NO_ACTION) {
 			logger.error("Unable to select a greedy action in state {}!", state.getTime());
 			logger.error("Dumping state to errorState{}.xml", state.getTime());
 			state.toxml("errorState" + state.getTime() + ".xml");
 		}
-
+		
 		return chosenAction;
 	}
 
@@ -581,19 +978,29 @@ public class LinearSarsaLambda implements LearningAgent {
 	 * @return
 	 */
 	public double qValue(double[] features, String actionName) {
-		return MathHelper.dotProduct(features, weights.get(actionName));
+		return qValue(features, indexOf(actionName));
+	}
+	
+	/**
+	 * Index-based version of {@link #qValue(double[], String)}
+	 */
+	public double qValue(double[] features, int action) {
+		if (singlePrecision) {
+			return MathHelper.dotProduct(features, floatWeights, action * numFeatures);
+		}
+		return MathHelper.dotProduct(features, weights, action * numFeatures);
 	}
 
 	@Override
 	public double stateValue(GameState state, int player) {
-		double[] features = featureExtractor.extractFeatures(state, player);
+		double[] features = extractFeatures(state, player);
 		
 		// max Q:
 		double maxQ = Double.NEGATIVE_INFINITY; // because MIN_VALUE is positive =/
-		for (String candidate : weights.keySet()) {
+		for (int candidate = 0; candidate < actions.size(); candidate++) {
 			double q = qValue(features, candidate);
 			if(Double.isInfinite(q) || Double.isNaN(q)) {
-				logger.warn("(+ or -) infinite qValue for action {} in state {}", candidate, features); 
+				logger.warn("(+ or -) infinite qValue for action {} in state {}", actions.get(candidate), features); 
 			}
 			if (q > maxQ) {
 				maxQ = q;
@@ -604,17 +1011,116 @@ public class LinearSarsaLambda implements LearningAgent {
 	}
 
 	/**
-	 * Copies the values of the weights (differently from {@link #setWeights(Map)}) 
-	 * that only references the given map.
+	 * Copies the values of the weights of the given actions, keeping the weights 
+	 * of the remaining ones 
 	 * @param from
 	 */
 	public void copyWeights(Map<String, double[]> from) {
+		Map<String, double[]> merged = getWeights();
+		merged.putAll(from);
+		setWeights(merged);
+	}
+	
+	/**
+	 * Copies the weight matrix into the given array, which is allocated 
+	 * if null or of the wrong size
+	 * @param dest
+	 * @return the array with the copy
+	 */
+	public double[] snapshotWeights(double[] dest) {
+		if (dest == null || dest.length != numWeights()) {
+			dest = new double[numWeights()];
+		}
+		if (singlePrecision) {
+			for (int i = 0; i < dest.length; i++) {
+				dest[i] = floatWeights[i];
+			}
+		}
+		else {
+			System.arraycopy(weights, 0, dest, 0, weights.length);
+		}
+		return dest;
+	}
+	
+	/**
+	 * Copies a snapshot (see {@link #snapshotWeights(double[])}) back into the weight matrix,
+	 * which is updated in place (agents sharing it see the new values)
+	 * @param snapshot must have the length of the weight matrix
+	 */
+	public void restoreWeights(double[] snapshot) {
+		assert snapshot.length == numWeights();
+		copyInto(snapshot, 0, numWeights());
+	}
+	
+	/**
+	 * Adds scale * (other's weights - reference) to the weights of this learner.
+	 * That is, merges the changes another learner has made since its weights were 
+	 * equal to the reference. Both learners must have the same actions, features and precision.
+	 * @param other
+	 * @param reference a snapshot (see {@link #snapshotWeights(double[])}) 
+	 * @param scale
+	 */
+	public void mergeWeights(LinearSarsaLambda other, double[] reference, double scale) {
+		assert other.singlePrecision == singlePrecision && other.numWeights() == numWeights() && reference.length == numWeights();
 		
-    	for(Entry<String, double[]> entry: from.entrySet()) {
-    		// not the most memory-efficient...
-    		weights.put(entry.getKey(), Arrays.copyOf(entry.getValue(), entry.getValue().length));
-    	}
+		if (singlePrecision) {
+			float[] w = floatWeights, o = other.floatWeights;
+			for (int i = 0; i < w.length; i++) {
+				w[i] += scale * (o[i] - reference[i]);
+			}
+			return;
+		}
 		
+		double[] w = weights, o = other.weights;
+		for (int i = 0; i < w.length; i++) {
+			w[i] += scale * (o[i] - reference[i]);
+		}
+	}
+	
+	/**
+	 * Replaces the reward model (e.g. for a copy that will run in another thread, 
+	 * as reward models may keep state)
+	 * @param rewards
+	 */
+	public void setRewardModel(RewardModel rewards) {
+		this.rewards = rewards;
+	}
+	
+	/**
+	 * Copies the weights of another learner into this one. 
+	 * If both have the same actions (in the same order), this is a plain array copy.
+	 * @param from
+	 */
+	public void copyWeights(LinearSarsaLambda from) {
+		if (from.actions.equals(actions) && from.singlePrecision == singlePrecision && from.numWeights() == numWeights()) {
+			if (singlePrecision) {
+				System.arraycopy(from.floatWeights, 0, floatWeights, 0, floatWeights.length);
+			}
+			else {
+				System.arraycopy(from.weights, 0, weights, 0, weights.length);
+			}
+		}
+		else {
+			setWeights(from.getWeights());
+		}
+	}
+	
+	/**
+	 * Sets the value below which eligibility traces are cut to zero
+	 * (zero keeps every trace that did not vanish)
+	 * @param traceThreshold
+	 */
+	public void setTraceThreshold(double traceThreshold) {
+		this.traceThreshold = traceThreshold;
+		eligibility.setThreshold(traceThreshold);
+	}
+	
+	/**
+	 * Returns the number of eligibility traces currently above the threshold
+	 * @return
+	 */
+	public int numActiveTraces() {
+		return eligibility.numActive();
 	}
 	
 
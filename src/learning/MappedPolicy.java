@@ -0,0 +1,212 @@
+package learning;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import features.FeatureExtractor;
+import rts.GameState;
+import utils.WeightFile;
+
+/**
+ * A read-only greedy policy whose weights are memory-mapped from a file
+ * in the format of {@link WeightFile}.
+ *
+ * The weights are not copied to the heap: loading is almost instantaneous and
+ * policies mapping the same file share the operating system's page cache
+ * (even across JVMs). This suits ensembles with many members.
+ * Files in the former (Java serialization) format cannot be mapped
+ * and are read into the heap instead.
+ *
+ * The policy does not learn nor explore: it is equivalent to a {@link LinearSarsaLambda}
+ * with alpha = epsilon = 0. It can be shared among threads.
+ *
+ * @author artavares
+ *
+ */
+public class MappedPolicy implements LearningAgent {
+
+	private FeatureExtractor featureExtractor;
+
+	private List<String> actions;
+
+	private int numFeatures;
+
+	/**
+	 * The weights (numActions x numFeatures, row-major),
+	 * either as doubles or as floats, according to the file's dtype
+	 */
+	private DoubleBuffer doubleWeights;
+	private FloatBuffer floatWeights;
+
+	private Logger logger;
+
+	/**
+	 * Creates a policy with the weights in the given file
+	 * @param featureExtractor
+	 * @param path
+	 * @throws IOException if the file cannot be read
+	 * @throws IllegalArgumentException if the weights do not have the extractor's number of features
+	 */
+	public MappedPolicy(FeatureExtractor featureExtractor, String path) throws IOException {
+		this.featureExtractor = featureExtractor;
+		logger = LogManager.getRootLogger();
+		load(path);
+	}
+
+	/**
+	 * Maps the weights in the given file (which must not be changed while mapped)
+	 * @throws IllegalArgumentException if the weights do not have the extractor's number of features
+	 */
+	@Override
+	public void load(String path) throws IOException {
+		MappedByteBuffer mapped;
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+			// the mapping remains valid after the channel is closed
+			mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		WeightFile header;
+		if (WeightFile.isLegacy(mapped)) {
+			header = WeightFile.read(path);
+			doubleWeights = DoubleBuffer.wrap(header.getMatrix());
+			floatWeights = null;
+		}
+		else {
+			header = WeightFile.readHeader(mapped, path);
+			if (header.getDtype() == WeightFile.FLOAT32) {
+				floatWeights = mapped.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+				doubleWeights = null;
+			}
+			else {
+				doubleWeights = mapped.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+				floatWeights = null;
+			}
+		}
+
+		if (!header.matches(featureExtractor)) {
+			logger.warn("Weights in '{}' were written for features of {}, loading them anyway.", path, header.getFeatureExtractorName());
+		}
+		if (header.getNumFeatures() != featureExtractor.getNumFeatures()) {
+			throw new IllegalArgumentException(String.format(
+				"Weights in '%s' have %d features, but the feature extractor has %d.",
+				path, header.getNumFeatures(), featureExtractor.getNumFeatures()
+			));
+		}
+
+		actions = header.getActions();
+		numFeatures = header.getNumFeatures();
+	}
+
+	/**
+	 * Returns the greedy action for the given state
+	 */
+	@Override
+	public String act(GameState state, int player) {
+		return actions.get(greedyIndex(featureExtractor.extractFeatures(state, player)));
+	}
+
+	/**
+	 * Returns the index of the action with the highest Q-value for the given features
+	 * (the first one in case of ties)
+	 * @param features
+	 * @return
+	 */
+	public int greedyIndex(double[] features) {
+		int chosenAction = LinearSarsaLambda.NO_ACTION;
+		double maxQ = Double.NEGATIVE_INFINITY;
+		for (int candidate = 0; candidate < actions.size(); candidate++) {
+			double q = qValue(features, candidate);
+			if (q > maxQ) {
+				maxQ = q;
+				chosenAction = candidate;
+			}
+		}
+		if (chosenAction == LinearSarsaLambda.NO_ACTION) {
+			logger.error("Unable to select a greedy action, choosing {}", actions.get(0));
+			chosenAction = 0;
+		}
+		return chosenAction;
+	}
+
+	/**
+	 * Returns the Q-value of the given action (index) for the given features
+	 * @param features
+	 * @param action
+	 * @return
+	 */
+	public double qValue(double[] features, int action) {
+		int offset = action * numFeatures;
+		double q = 0;
+		if (doubleWeights != null) {
+			for (int i = 0; i < numFeatures; i++) {
+				q += features[i] * doubleWeights.get(offset + i);
+			}
+		}
+		else {
+			for (int i = 0; i < numFeatures; i++) {
+				q += features[i] * floatWeights.get(offset + i);
+			}
+		}
+		return q;
+	}
+
+	@Override
+	public double qValue(GameState state, int player, String action) {
+		int index = actions.indexOf(action);
+		if (index < 0) {
+			throw new IllegalArgumentException("Action '" + action + "' not found.");
+		}
+		return qValue(featureExtractor.extractFeatures(state, player), index);
+	}
+
+	@Override
+	public double stateValue(GameState state, int player) {
+		double[] features = featureExtractor.extractFeatures(state, player);
+		return qValue(features, greedyIndex(features));
+	}
+
+	/**
+	 * Does nothing: this policy is read-only
+	 */
+	@Override
+	public void learn(GameState state, int player, String action, double reward, GameState nextState, boolean done) {
+	}
+
+	/**
+	 * Does nothing: this policy is read-only
+	 */
+	@Override
+	public void finish(int winner) {
+	}
+
+	/**
+	 * Writes a copy of the mapped weights to the given path
+	 */
+	@Override
+	public void save(String path) throws IOException {
+		double[] matrix = new double[actions.size() * numFeatures];
+		for (int i = 0; i < matrix.length; i++) {
+			matrix[i] = doubleWeights != null ? doubleWeights.get(i) : floatWeights.get(i);
+		}
+		new WeightFile(featureExtractor, actions, numFeatures, matrix).write(path);
+	}
+
+	/**
+	 * Returns the actions, in index order
+	 * @return
+	 */
+	public List<String> getActions() {
+		return actions;
+	}
+
+}
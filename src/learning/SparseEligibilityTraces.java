@@ -0,0 +1,198 @@
+package learning;
+
+import java.util.Arrays;
+
+/**
+ * Eligibility traces that keep track of their non-negligible entries,
+ * so that updates and resets take time proportional to the number of
+ * active entries rather than to the size of the weight matrix.
+ *
+ * Values are stored densely (with the same layout of the weights), plus a
+ * list of the indexes whose trace is active. Traces that decay to
+ * the threshold or below are cut to zero and leave the active list.
+ *
+ * @author artavares
+ *
+ */
+public class SparseEligibilityTraces {
+
+	/**
+	 * The trace values (zero for inactive entries)
+	 */
+	private double[] values;
+
+	/**
+	 * Indexes of the active entries (the first numActive positions are valid)
+	 */
+	private int[] active;
+
+	private int numActive;
+
+	/**
+	 * Whether each entry is in the active list
+	 */
+	private boolean[] isActive;
+
+	/**
+	 * Traces whose absolute value decays to this or below are cut to zero
+	 */
+	private double threshold;
+
+	/**
+	 * Creates traces for a weight matrix with the given (flattened) length
+	 * @param length
+	 * @param threshold
+	 */
+	public SparseEligibilityTraces(int length, double threshold) {
+		values = new double[length];
+		active = new int[length];
+		isActive = new boolean[length];
+		numActive = 0;
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Adds the given vector to the traces starting at offset
+	 * (e.g. the features of the state to the row of the selected action)
+	 * @param offset
+	 * @param vector
+	 * @param length number of positions of vector to add
+	 */
+	public void add(int offset, double[] vector, int length) {
+		for (int i = 0; i < length; i++) {
+			if (vector[i] != 0) {
+				values[offset + i] += vector[i];
+				activate(offset + i);
+			}
+		}
+	}
+
+	/**
+	 * Updates the weights with the traces (w = w + step * e) and then
+	 * decays the traces (e = e * gamma * lambda), cutting those that became negligible.
+	 * Only active entries are visited.
+	 * @param weights
+	 * @param step the learning rate times the td error
+	 * @param gamma
+	 * @param lambda
+	 */
+	public void updateWeights(double[] weights, double step, double gamma, double lambda) {
+		int i = 0;
+		while (i < numActive) {
+			int index = active[i];
+
+			weights[index] = weights[index] + step * values[index];
+			values[index] = values[index] * gamma * lambda;
+
+			if (Math.abs(values[index]) <= threshold) {
+				// cuts the trace: the last active entry takes its place in the list
+				values[index] = 0;
+				isActive[index] = false;
+				active[i] = active[--numActive];
+			}
+			else {
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * Single-precision version of {@link #updateWeights(double[], double, double, double)}:
+	 * the update is computed in double and rounded when stored (the traces are kept in double)
+	 * @param weights
+	 * @param step the learning rate times the td error
+	 * @param gamma
+	 * @param lambda
+	 */
+	public void updateWeights(float[] weights, double step, double gamma, double lambda) {
+		int i = 0;
+		while (i < numActive) {
+			int index = active[i];
+
+			weights[index] = (float) (weights[index] + step * values[index]);
+			values[index] = values[index] * gamma * lambda;
+
+			if (Math.abs(values[index]) <= threshold) {
+				values[index] = 0;
+				isActive[index] = false;
+				active[i] = active[--numActive];
+			}
+			else {
+				i++;
+			}
+		}
+	}
+
+	/**
+	 * Resets all traces to zero
+	 */
+	public void clear() {
+		for (int i = 0; i < numActive; i++) {
+			values[active[i]] = 0;
+			isActive[active[i]] = false;
+		}
+		numActive = 0;
+	}
+
+	/**
+	 * Returns the trace at the given index
+	 * @param index
+	 * @return
+	 */
+	public double get(int index) {
+		return values[index];
+	}
+
+	/**
+	 * Sets the trace at the given index (regardless of the threshold)
+	 * @param index
+	 * @param value
+	 */
+	public void set(int index, double value) {
+		values[index] = value;
+		if (value != 0) {
+			activate(index);
+		}
+	}
+
+	/**
+	 * Returns a copy of the traces in the given range
+	 * @param from
+	 * @param to exclusive
+	 * @return
+	 */
+	public double[] copyOfRange(int from, int to) {
+		return Arrays.copyOfRange(values, from, to);
+	}
+
+	/**
+	 * Returns the number of active entries
+	 * @return
+	 */
+	public int numActive() {
+		return numActive;
+	}
+
+	/**
+	 * Returns the length of the traces (i.e. of the weight matrix)
+	 * @return
+	 */
+	public int length() {
+		return values.length;
+	}
+
+	public double getThreshold() {
+		return threshold;
+	}
+
+	public void setThreshold(double threshold) {
+		this.threshold = threshold;
+	}
+
+	private void activate(int index) {
+		if (!isActive[index]) {
+			isActive[index] = true;
+			active[numActive++] = index;
+		}
+	}
+}
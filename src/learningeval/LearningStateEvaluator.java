@@ -1,10 +1,6 @@
 package learningeval;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 
 import activation.ActivationFunction;
 import activation.LogisticLogLoss;
@@ -15,6 +11,9 @@ import features.FeatureExtractor;
 import features.MapAware;
 import rts.GameState;
 import rts.units.UnitTypeTable;
+import utils.LinearKernels;
+import utils.MathHelper;
+import utils.WeightFile;
 
 /**
  * Learns to evaluate game states.
@@ -93,24 +92,11 @@ public class LearningStateEvaluator extends EvaluationFunction {
 	 * @throws IOException 
 	 */
 	public void save(String path) throws IOException {
-		FileOutputStream fos = new FileOutputStream(path);
-        ObjectOutputStream oos = new ObjectOutputStream(fos);
-        oos.writeObject(weights);
-        oos.close();
-        fos.close();
+		WeightFile.stateValue(featureExtractor, weights).write(path);
 	}
 	
 	public void load(String path) throws IOException {
-		FileInputStream fis = new FileInputStream(path);
-        ObjectInputStream ois = new ObjectInputStream(fis);
-        try {
-        	weights = (double[]) ois.readObject();
-		} catch (ClassNotFoundException e) {
-			System.err.println("Error while attempting to load weights.");
-			e.printStackTrace();
-		}
-        ois.close();
-        fis.close();
+		weights = WeightFile.read(path).row(0);
 	}
 	
 	/**
@@ -246,9 +232,7 @@ public class LearningStateEvaluator extends EvaluationFunction {
 		double errorDerivative = activation.errorDerivative(rawPrediction);
 		
 		// finally, the update for each weight
-		for(int i = 0; i < weights.length; i++) {
-			weights[i] += alpha * error * errorDerivative *  features[i];	
-		}
+		LinearKernels.get().axpy(alpha * error * errorDerivative, features, weights);
 		
 	}
 	
@@ -305,13 +289,7 @@ public class LearningStateEvaluator extends EvaluationFunction {
 	 * @return
 	 */
 	private double linearCombination(double[] features, double[] weights) {
-		assert features.length == weights.length;
-		
-		double value = 0;
-		for(int i = 0; i < features.length; i++) {
-			value += features[i] * weights[i];
-		}
-		return value;
+		return MathHelper.dotProduct(features, weights);
 	}
 	
 
@@ -0,0 +1,21 @@
+package main;
+
+import ai.core.AI;
+import rts.units.UnitTypeTable;
+
+/**
+ * Creates the AIs of a match, so that matches can run concurrently 
+ * without sharing AI instances (see {@link Runner#parallelMatches})
+ */
+public interface AIPairFactory {
+	
+	/**
+	 * Returns new instances of player 0 and player 1 (in this order) 
+	 * for a match with the given unit types
+	 * @param types
+	 * @return
+	 * @throws Exception
+	 */
+	public AI[] createPair(UnitTypeTable types) throws Exception;
+
+}
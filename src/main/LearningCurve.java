@@ -13,7 +13,6 @@ import org.apache.logging.log4j.Logger;
 import ai.core.AI;
 import config.ConfigManager;
 import config.Parameters;
-import learning.LinearSarsaLambda;
 import rts.GameSettings;
 import rts.units.UnitTypeTable;
 import tdsearch.SarsaSearch;
@@ -38,6 +37,7 @@ public class LearningCurve extends Test {
 		Logger logger = LogManager.getRootLogger();
 		
 		Properties config = Parameters.parseParameters(args); //ConfigManager.loadConfig(configFile);
+		Runner.setTraceSink(config.getProperty("trace_format"));
         
 		String baseDir = config.getProperty("working_dir");
 		
@@ -66,6 +66,7 @@ public class LearningCurve extends Test {
 			repConfig.setProperty("save_replay", saveReplay);
 			repConfig.setProperty("checkpoint", config.getProperty("checkpoint"));
 			repConfig.setProperty("search.timebudget", config.getProperty("search.timebudget"));
+			repConfig.setProperty("match.threads", config.getProperty("match.threads"));
 			
 			// runs one repetition
 			runTestMatches(repConfig, testOppName, repDir, initialRep, initialRep+5000, writeReplay);
@@ -111,13 +112,10 @@ public class LearningCurve extends Test {
         
 		logger.info("{} write replay.", writeReplay ? "Will" : "Will not");
 		
-		// creates the planners and the player that uses them
-		LinearSarsaLambda planner = LinearSarsaLambda.newPlanningAgent(types, config);
-		LinearSarsaLambda planningOpponent = LinearSarsaLambda.newPlanningAgent(types, config);
-		SarsaSearch player = new SarsaSearch(types, randomSeedP0, config, planner, planningOpponent);
-		
 		AI testOpponent = AILoader.loadAI(testPartnerName, types);
 		
+		int matchThreads = matchThreads(config, visualizeTest);
+		
         // tests the learner both as player 0 and 1
         for (int testPosition = 0; testPosition < 2; testPosition++) {
         	// creates the player instance and loads weights according to its position
@@ -125,23 +123,14 @@ public class LearningCurve extends Test {
         	// loads weight files of player & planning opponent, except if testing w/o training (checkpoint is zero)
         	String weightsFile = String.format("%s/weights_%d-m%d.bin", workingDir, testPosition, checkpoint);
         	String oppWeightsFile = String.format("%s/weights_%d-m%d.bin", workingDir, 1 - testPosition, checkpoint);
-        	if(checkpoint != 0) { 
-        		logger.info("Loading weights from {}", weightsFile);
-                try {
-                	player.loadWeights(weightsFile);
-                	planner.load(weightsFile);
-                }
-                catch (IOException ioe) {
-                	logger.error("Unable to load weights, ignoring {}.", weightsFile, ioe);
-                	continue;
-                }
-                logger.info("Loading planningOpponent weights from {}", oppWeightsFile);
-                try {
-                	planningOpponent.load(oppWeightsFile);
-                }
-                catch (IOException ioe) {
-                	logger.error("Unable to load of opp. planner {}, using random", oppWeightsFile, ioe);
-                }
+        	
+        	SarsaSearch player;
+        	try {
+        		player = newTestPlayer(types, config, randomSeedP0, checkpoint != 0 ? weightsFile : null, oppWeightsFile);
+        	}
+        	catch (IOException ioe) {
+        		logger.error("Unable to load weights, ignoring {}.", weightsFile, ioe);
+        		continue;
         	}
     		
     		// if write replay (trace) is activated, sets the prefix to write files
@@ -171,6 +160,26 @@ public class LearningCurve extends Test {
 				String.format("%s/lcurve-vs-%s_b%s", workingDir, testOpponent.getClass().getSimpleName(), config.getProperty("search.timebudget")) : //runner infers the test position, no need to pass in the prefix
 				null;
     		
+    		if (matchThreads > 1) {
+    			// each match has its own player (with the checkpoint weights) and test opponent
+    			int position = testPosition;
+    			Runner.parallelMatches(
+    				workingDir, 
+    				remainingMatches(testMatches / 2, lcurveOutput), // runs up to half the matches in each position
+    				lcurveOutput, choicesPrefix,
+    				matchTypes -> {
+    					AI matchPlayer = newTestPlayer(
+    						matchTypes, config, randomSeedP0, checkpoint != 0 ? weightsFile : null, oppWeightsFile
+    					);
+    					AI matchOpponent = AILoader.loadAI(testPartnerName, matchTypes);
+    					return position == 0 ? new AI[] {matchPlayer, matchOpponent} : new AI[] {matchOpponent, matchPlayer};
+    				},
+    				settings, tracePrefix, matchThreads, 
+    				0 // latestMatch is zero to don't interfere with remainingMatches
+    			);
+    			continue;
+    		}
+    		
     		Runner.repeatedMatches(
     			types, workingDir,
     			remainingMatches(testMatches / 2, lcurveOutput), // runs up to half the matches in each position  
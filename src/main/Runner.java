@@ -1,10 +1,15 @@
 package main;
 
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -17,18 +22,41 @@ import rts.GameState;
 import rts.PartiallyObservableGameState;
 import rts.PhysicalGameState;
 import rts.PlayerAction;
-import rts.Trace;
-import rts.TraceEntry;
+import rts.units.Unit;
 import rts.units.UnitTypeTable;
 import tdsearch.SarsaSearch;
+import tracing.NullTraceSink;
+import tracing.TraceSink;
+import tracing.TraceSinkFactory;
+import utils.ChoiceLog;
+import utils.ChoicesLogWriter;
 import utils.FileNameUtil;
 import utils.MatchData;
+import utils.PlanningMetrics;
+import utils.ResultsWriter;
 
 /**
  * A class to run microRTS games to train and test RL agents
  * @author anderson
  */
 public class Runner {
+	
+	public static final String SUMMARY_HEADER = "#result,duration(ms),duration(frames),initial_time,final_time";
+	
+	public static final String METRICS_HEADER = "#match,player," + PlanningMetrics.csvHeader();
+	
+	/**
+	 * Type of the trace sink of recorded matches (see {@link TraceSinkFactory})
+	 */
+	private static String traceSink = TraceSinkFactory.DEFAULT_SINK;
+	
+	/**
+	 * Sets the type of the trace sink of recorded matches (see {@link TraceSinkFactory})
+	 * @param sinkName
+	 */
+	public static void setTraceSink(String sinkName) {
+		traceSink = sinkName;
+	}
 
 	/**
 	 * Runs a match between two AIs with the specified settings, without the GUI.
@@ -43,6 +71,23 @@ public class Runner {
 	 * @throws Exception
 	 */
 	public static MatchData match(UnitTypeTable types, AI ai1, AI ai2, boolean visualize, GameSettings config, String traceOutput) throws Exception{
+		return match(types, ai1, ai2, visualize, config, TraceSinkFactory.getTraceSink(traceSink, types, traceOutput));
+	}
+	
+	/**
+	 * Runs a match between two AIs with the specified settings, without the GUI.
+	 * The frames of the match are sent to the given trace sink 
+	 * (use {@link NullTraceSink#INSTANCE} to not record the trace)
+	 * @param types
+	 * @param ai1
+	 * @param ai2
+	 * @param visualize
+	 * @param config
+	 * @param trace
+	 * @return
+	 * @throws Exception
+	 */
+	public static MatchData match(UnitTypeTable types, AI ai1, AI ai2, boolean visualize, GameSettings config, TraceSink trace) throws Exception{
 		Logger logger = LogManager.getRootLogger();
 		
 		//UnitTypeTable types = new UnitTypeTable(config.getUTTVersion(), config.getConflictPolicy());
@@ -69,86 +114,100 @@ public class Runner {
 		PhysicalGameStateJFrame w = null;
 		if (visualize) w = PhysicalGameStatePanel.newVisualizer(state, 600, 600, config.isPartiallyObservable());
 		
-		// creates the trace logger
-		Trace replay = new Trace(types);
+		// only prepares the frames if they are recorded
+		boolean tracing = trace.isEnabled();
+		
+		// the IDs of new units are checked, as they might collide if units are created concurrently
+		int numUnits = state.getUnits().size();
+		boolean duplicateReported = false;
         
         boolean gameover = false;
     	
-        while (!gameover && state.getTime() < config.getMaxCycles()) {
+		try {
+	        while (!gameover && state.getTime() < config.getMaxCycles()) {
         	
-        	// initializes state equally for the players 
-        	GameState player1State = state; 
-        	GameState player2State = state; 
+	        	// initializes state equally for the players 
+	        	GameState player1State = state; 
+	        	GameState player2State = state; 
         	
-        	// places the fog of war if the state is partially observable
-        	if (config.isPartiallyObservable()) {
-        		player1State = new PartiallyObservableGameState(state, 0);
-        		player2State = new PartiallyObservableGameState(state, 1);
-        	}
+	        	// places the fog of war if the state is partially observable
+	        	if (config.isPartiallyObservable()) {
+	        		player1State = new PartiallyObservableGameState(state, 0);
+	        		player2State = new PartiallyObservableGameState(state, 1);
+	        	}
         	
-        	// retrieves the players' actions
-        	PlayerAction player1Action = ai1.getAction(0, player1State);
-        	PlayerAction player2Action = ai2.getAction(1, player2State);
+	        	// retrieves the players' actions
+	        	PlayerAction player1Action = ai1.getAction(0, player1State);
+	        	PlayerAction player2Action = ai2.getAction(1, player2State);
         	
-        	// creates a new trace entry, fills the actions and stores it
-        	TraceEntry thisFrame = new TraceEntry(state.getPhysicalGameState().clone(), state.getTime());
-        	if (!player1Action.isEmpty()){
-        		thisFrame.addPlayerAction(player1Action.clone());
-        	}
-        	if (!player2Action.isEmpty()) {
-                thisFrame.addPlayerAction(player2Action.clone());
-            }
-        	replay.addEntry(thisFrame);
+	        	// records the frame (the sink copies what it needs)
+	        	if (tracing) {
+	        		trace.frame(state, player1Action, player2Action);
+	        	}
 
 			
-        	// issues the players' actions
-			state.issueSafe(player1Action);
-			state.issueSafe(player2Action);
+	        	// issues the players' actions
+				state.issueSafe(player1Action);
+				state.issueSafe(player2Action);
 
-			// runs one cycle of the game
-			gameover = state.cycle();
+				// runs one cycle of the game
+				gameover = state.cycle();
+			
+				if (state.getUnits().size() > numUnits && !duplicateReported) {
+					long duplicate = duplicateUnitID(state);
+					if (duplicate >= 0) {
+						logger.error("Unit ID {} is duplicated at frame {}: units were probably created concurrently "
+							+ "(microRTS does not synchronize the ID counter). Actions may be issued to the wrong units.", 
+							duplicate, state.getTime()
+						);
+						duplicateReported = true;
+					}
+				}
+				numUnits = state.getUnits().size();
 			
-			// updates GUI if needed
-			if (visualize) {
-                w.setStateCloning(state);
-                w.repaint();
-                try {
-                    Thread.sleep(1);    // give time to the window to repaint
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
-		} //end of the match
+				// updates GUI if needed
+				if (visualize) {
+	                w.setStateCloning(state);
+	                w.repaint();
+	                try {
+	                    Thread.sleep(1);    // give time to the window to repaint
+	                } catch (Exception e) {
+	                    e.printStackTrace();
+	                }
+	            }
+			} //end of the match
         
-        if (visualize) w.dispose(); //clears visualizer if necessary
+	        if (visualize) w.dispose(); //clears visualizer if necessary
         
-		ai1.gameOver(state.winner());
-		ai2.gameOver(state.winner());
-		
-		//traces the final state
-		replay.addEntry(new TraceEntry(state.getPhysicalGameState().clone(), state.getTime()));
+			ai1.gameOver(state.winner());
+			ai2.gameOver(state.winner());
 		
-		// writes the trace
-		if (traceOutput != null){
-			// creates missing parent directories if needed
-			File f = new File(traceOutput);
-    		if (f.getParentFile() != null) {
-    			  f.getParentFile().mkdirs();
-			}
-    		
-    		// ensures that traceOutput ends with a .zip
-    		if (! traceOutput.endsWith(".zip")) {
-    			traceOutput += ".zip";
-    		}
-    		
-    		// writes the zipped trace file (much smaller)
-    		replay.toZip(traceOutput);
-    		
+			//traces the final state and writes the trace
+			trace.end(state);
+		}
+		finally {
+			// releases the trace sink if the match failed (does nothing if the trace was ended)
+			trace.abort();
 		}
 		
 		return new MatchData(state.winner(), state.getTime());
     }
 
+	/**
+	 * Returns an ID shared by two units of the state, or -1 if all IDs are unique
+	 * @param state
+	 * @return
+	 */
+	public static long duplicateUnitID(GameState state) {
+		Set<Long> ids = new HashSet<>();
+		for (Unit unit : state.getUnits()) {
+			if (!ids.add(unit.getID())) {
+				return unit.getID();
+			}
+		}
+		return -1;
+	}
+	
 	/**
 	 * Runs the specified number of matches, without the GUI, saving the summary to the specified file.
 	 * Saves the trace of each match sequentially according to the tracePrefix is not null
@@ -177,6 +236,37 @@ public class Runner {
 		
 		Logger logger = LogManager.getRootLogger();
 		
+		// results files stay open during the matches, rows are flushed at checkpoints and at the end
+		ResultsWriter summaryWriter = null, metricsWriter = null;
+		ChoicesLogWriter[] choicesWriters = new ChoicesLogWriter[2];
+		AI[] players = {ai1, ai2};
+		PlanningMetrics[] metrics = new PlanningMetrics[2];
+		for (int p = 0; p < 2; p++) {
+			if (players[p] instanceof SarsaSearch && ((SarsaSearch) players[p]).getPlanningMetrics() != null) {
+				metrics[p] = ((SarsaSearch) players[p]).getPlanningMetrics();
+				metrics[p].register("player" + p);
+			}
+		}
+		try {
+			if (summaryOutput != null) {
+				summaryWriter = ResultsWriter.open(summaryOutput, SUMMARY_HEADER);
+				if (metrics[0] != null || metrics[1] != null) {
+					metricsWriter = ResultsWriter.open(metricsOutput(summaryOutput), METRICS_HEADER);
+				}
+			}
+			if (choicesPrefix != null) {
+				for (int p = 0; p < 2; p++) {
+					//tries to output choices regardless of player position
+					if (players[p] instanceof SarsaSearch) {
+						choicesWriters[p] = openChoices(choicesPrefix, p, ((SarsaSearch) players[p]).getChoiceNames());
+					}
+				}
+			}
+		}
+		catch (IOException ioe) {
+			logger.error("Error while trying to open the summary/choices files", ioe);
+		}
+		
 		for(int matchNumber = latestMatch; matchNumber < numMatches; matchNumber++){
         	
         	//determines the trace output file. It is either null or the one calculated from the specified prefix
@@ -185,7 +275,7 @@ public class Runner {
     		if(tracePrefix != null){
     			// finds the file name
         		traceOutput = FileNameUtil.nextAvailableFileName(
-    				tracePrefix, "trace.zip"	//trace files are saved as .trace.zip
+    				tracePrefix, TraceSinkFactory.extension(traceSink)	//e.g. trace files are saved as .trace.zip
     			);
     		}
         	
@@ -196,16 +286,11 @@ public class Runner {
         	
         	System.out.print(String.format("\rMatch %8d finished with result %3d, taking %8d frames.", matchNumber+1, data.winner, data.frames));
         	
-        	// saves weights every 'checkpoint' matches (adds 1 to matchNumber because it is starts at 0
-        	if (checkpoint > 0 && (matchNumber+1) % checkpoint == 0) {
-        		checkpoint(new AI[] {ai1, ai2}, workingDir, matchNumber+1);
-        	}
-        	
         	// writes summary
         	long duration = end.getTime() - begin.getTime();
-        	if (summaryOutput != null){
+        	if (summaryWriter != null){
         		try{
-        			outputSummary(summaryOutput, data.winner, duration, data.frames, begin, end);
+        			outputSummary(summaryWriter, data.winner, duration, data.frames, begin, end);
         		}
         		catch(IOException ioe){
         			logger.error("Error while trying to write summary to '" + summaryOutput + "'", ioe);
@@ -213,30 +298,217 @@ public class Runner {
         	}
         	
         	// appends choices
-        	if (choicesPrefix != null) {
-        		try{
-        			//tries to output choices regardless of player position
-        			if(ai1 instanceof SarsaSearch) {
-	        			outputChoices(choicesPrefix + "_p0.choices", matchNumber, ((SarsaSearch)ai1).getChoices());
-        			}
-        			
-        			if(ai2 instanceof SarsaSearch) {
-	        			outputChoices(choicesPrefix + "_p1.choices", matchNumber, ((SarsaSearch)ai2).getChoices());
+        	try{
+        		for (int p = 0; p < 2; p++) {
+        			if (choicesWriters[p] != null) {
+        				outputChoices(choicesWriters[p], matchNumber, ((SarsaSearch)players[p]).getChoiceLog());
         			}
         		}
-        		catch(IOException ioe){
-        			logger.error("Error while trying to write choices to '" + summaryOutput + "'", ioe);
+        	}
+        	catch(IOException ioe){
+        		logger.error("Error while trying to write choices to '" + choicesPrefix + "'", ioe);
+        	}
+        	
+        	// appends the planning metrics of the match and starts counting again
+        	for (int p = 0; p < 2; p++) {
+        		if (metrics[p] == null) continue;
+        		if (metricsWriter != null) {
+        			try {
+        				outputMetrics(metricsWriter, matchNumber, p, metrics[p].toCsv());
+        			}
+        			catch(IOException ioe){
+        				logger.error("Error while trying to write metrics to '" + metricsWriter.getPath() + "'", ioe);
+        			}
         		}
+        		metrics[p].reset();
         	}
         	
+        	// saves weights every 'checkpoint' matches (adds 1 to matchNumber because it is starts at 0
+        	// results are flushed first, so that they are on disk whenever the weights are
+        	if (checkpoint > 0 && (matchNumber+1) % checkpoint == 0) {
+        		flushResults(false, choicesWriters, summaryWriter, metricsWriter);
+        		checkpoint(players, workingDir, matchNumber+1);
+        	}
         	
         	ai1.reset();
         	ai2.reset();
         }
+        flushResults(true, choicesWriters, summaryWriter, metricsWriter);
+        for (PlanningMetrics playerMetrics : metrics) {
+        	if (playerMetrics != null) playerMetrics.unregister();
+        }
         System.out.println(); //adds a trailing \n to the match count written in the loop.
         logger.info("Executed " + numMatches + " matches.");
 	}
 	
+	/**
+	 * Runs the specified number of matches with up to 'threads' matches at a time,
+	 * without the GUI. Each match has its own unit type table and AIs, created by the factory,
+	 * so the AIs must not share mutable state among matches (e.g. they should not learn).
+	 * 
+	 * The summary, choices and trace files are the same that {@link #repeatedMatches} would write
+	 * with fresh AIs at every match: results are written in match order and trace 
+	 * names are assigned by match number, regardless of the order in which matches finish. 
+	 * 
+	 * Note: microRTS assigns unit IDs from a static counter that is not synchronized, so units
+	 * created concurrently (by matches or planning threads) may receive the same ID. Actions
+	 * are issued and cached by unit ID, so {@link #match} logs an error if a game ends up 
+	 * with duplicate IDs (see {@link #duplicateUnitID(GameState)}).
+	 * @param workingDir
+	 * @param numMatches
+	 * @param summaryOutput
+	 * @param choicesPrefix
+	 * @param factory creates the AIs of each match
+	 * @param gameSettings
+	 * @param tracePrefix
+	 * @param threads number of matches that run concurrently
+	 * @param latestMatch if there were matches played before, start from there
+	 * @throws Exception the failure of the first match (in match order) that fails, after
+	 * the results of the matches before it are written
+	 */
+	public static void parallelMatches(
+			String workingDir, 
+			int numMatches, String summaryOutput, String choicesPrefix, 
+			AIPairFactory factory, GameSettings gameSettings, String tracePrefix, 
+			int threads, int latestMatch
+	) throws Exception {
+		
+		Logger logger = LogManager.getRootLogger();
+		
+		int matchCount = Math.max(0, numMatches - latestMatch);
+		
+		// trace names are assigned beforehand, as files are only created when matches finish
+		List<String> traceOutputs = tracePrefix == null ? null :
+			FileNameUtil.nextAvailableFileNames(tracePrefix, TraceSinkFactory.extension(traceSink), matchCount);
+		
+		ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "match-runner");
+			thread.setDaemon(true);
+			return thread;
+		});
+		
+		ResultsWriter summaryWriter = null, metricsWriter = null;
+		ChoicesLogWriter[] choicesWriters = new ChoicesLogWriter[2];
+		try {
+			if (summaryOutput != null) {
+				summaryWriter = ResultsWriter.open(summaryOutput, SUMMARY_HEADER);
+			}
+			
+			List<Future<MatchResult>> results = new ArrayList<>(matchCount);
+			for (int i = 0; i < matchCount; i++) {
+				String traceOutput = traceOutputs == null ? null : traceOutputs.get(i);
+				
+				results.add(executor.submit(() -> {
+					// each match has its own unit type table and AIs
+					UnitTypeTable types = new UnitTypeTable(gameSettings.getUTTVersion(), gameSettings.getConflictPolicy());
+					AI[] players = factory.createPair(types);
+					
+					MatchResult result = new MatchResult();
+					result.begin = new Date(System.currentTimeMillis());
+					result.data = match(types, players[0], players[1], false, gameSettings, traceOutput);
+					result.end = new Date(System.currentTimeMillis());
+					
+					for (int p = 0; p < 2; p++) {
+						if (players[p] instanceof SarsaSearch) {
+							result.choices[p] = ((SarsaSearch) players[p]).getChoiceLog();
+							result.choiceNames[p] = ((SarsaSearch) players[p]).getChoiceNames();
+							PlanningMetrics metrics = ((SarsaSearch) players[p]).getPlanningMetrics();
+							if (metrics != null) {
+								result.metrics[p] = metrics.toCsv();
+							}
+						}
+					}
+					return result;
+				}));
+			}
+			
+			// collects the results in match order
+			for (int i = 0; i < matchCount; i++) {
+				int matchNumber = latestMatch + i;
+				MatchResult result;
+				try {
+					result = results.get(i).get();
+				} catch (ExecutionException e) {
+					// as in repeatedMatches, a failed match ends the run: the results of the previous
+					// matches are flushed below, so the files keep lining up with match numbers
+					logger.error("Match " + (matchNumber + 1) + " failed.", e.getCause());
+					throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+				}
+				MatchData data = result.data;
+				
+				System.out.print(String.format("\rMatch %8d finished with result %3d, taking %8d frames.", matchNumber+1, data.winner, data.frames));
+				
+				if (summaryWriter != null){
+					try{
+						long duration = result.end.getTime() - result.begin.getTime();
+						outputSummary(summaryWriter, data.winner, duration, data.frames, result.begin, result.end);
+					}
+					catch(IOException ioe){
+						logger.error("Error while trying to write summary to '" + summaryOutput + "'", ioe);
+					}
+				}
+				
+				if (choicesPrefix != null) {
+					try{
+						for (int p = 0; p < 2; p++) {
+							if (result.choices[p] != null) {
+								if (choicesWriters[p] == null) {
+									choicesWriters[p] = openChoices(choicesPrefix, p, result.choiceNames[p]);
+								}
+								outputChoices(choicesWriters[p], matchNumber, result.choices[p]);
+							}
+						}
+					}
+					catch(IOException ioe){
+						logger.error("Error while trying to write choices to '" + choicesPrefix + "'", ioe);
+					}
+				}
+				
+				if (summaryOutput != null) {
+					try{
+						for (int p = 0; p < 2; p++) {
+							if (result.metrics[p] != null) {
+								if (metricsWriter == null) {
+									metricsWriter = ResultsWriter.open(metricsOutput(summaryOutput), METRICS_HEADER);
+								}
+								outputMetrics(metricsWriter, matchNumber, p, result.metrics[p]);
+							}
+						}
+					}
+					catch(IOException ioe){
+						logger.error("Error while trying to write metrics of '" + summaryOutput + "'", ioe);
+					}
+				}
+			}
+		}
+		finally {
+			executor.shutdownNow();
+			flushResults(true, choicesWriters, summaryWriter, metricsWriter);
+		}
+		System.out.println(); //adds a trailing \n to the match count written in the loop.
+		logger.info("Executed {} matches in up to {} threads.", matchCount, threads);
+	}
+	
+	/**
+	 * What {@link #parallelMatches} needs to write about each match
+	 */
+	private static class MatchResult {
+		MatchData data;
+		Date begin, end;
+		
+		/**
+		 * Choices of each player and their names (null if the player does not record them)
+		 */
+		ChoiceLog[] choices = new ChoiceLog[2];
+		@SuppressWarnings("unchecked")
+		List<String>[] choiceNames = new List[2];
+		
+		/**
+		 * Planning metrics of each player as CSV (null if the player does not measure them)
+		 */
+		String[] metrics = new String[2];
+	}
+	
 	/**
 	 * Writes the weights of the AIs if they're able to save weights
 	 * @param players an array with the two players
@@ -266,62 +538,97 @@ public class Runner {
 		}
 	}
 
-	public static void outputChoices(String path, int matchNumber, List<String> choices) throws IOException{
-
-		// creates the choices file and required dirs if necessary
-		File f = new File(path);
-		FileWriter writer; 
+	/**
+	 * Flushes (and optionally closes) the given results writers, logging the errors
+	 * @param close
+	 * @param choicesWriters the nulls are skipped
+	 * @param resultsWriters summary and metrics (the nulls are skipped)
+	 */
+	private static void flushResults(boolean close, ChoicesLogWriter[] choicesWriters, ResultsWriter... resultsWriters) {
 		Logger logger = LogManager.getRootLogger();
-		logger.debug("Attempting to write choices to " + path);
-		
-    	if(!f.exists()){ // creates a new file and writes the header
-    		// creates missing parent directories as well
-    		if (f.getParentFile() != null) {
-    			  f.getParentFile().mkdirs();
+		for (ResultsWriter writer : resultsWriters) {
+			if (writer == null) continue;
+			try {
+				if (close) writer.close(); else writer.flush();
+			} catch (IOException e) {
+				logger.error("Error while flushing results to '" + writer.getPath() + "'", e);
 			}
-    		logger.debug("File didn't exist, creating and writing header");
-    		writer = new FileWriter(f, false); //must be after the test, because it creates the file upon instantiation
-    		writer.write("#frame: choice\n");
-    		writer.close();
-    	}
-    	
-    	// appends one line with each choice separated by a \t\n
-    	writer = new FileWriter(f, true); 
-    	writer.write("Match " + matchNumber + ": \n");
-    	int frame = 0; //counts the frames
-    	for(String choice : choices) {
-    		writer.write(String.format("\t%d: %s\n", frame++, choice)); 
-    	}
-    	logger.debug("Successfully wrote to " + path); 
-    	
-    	writer.close();
+		}
+		for (ChoicesLogWriter writer : choicesWriters) {
+			if (writer == null) continue;
+			try {
+				if (close) writer.close(); else writer.flush();
+			} catch (IOException e) {
+				logger.error("Error while flushing choices to '" + writer.getPath() + "'", e);
+			}
+		}
+	}
+
+	/**
+	 * Opens the choices log of the player in the given position (prefix_p{position}.choices.bin)
+	 * @param choicesPrefix
+	 * @param position
+	 * @param choiceNames
+	 * @return
+	 * @throws IOException
+	 */
+	private static ChoicesLogWriter openChoices(String choicesPrefix, int position, List<String> choiceNames) throws IOException {
+		String path = String.format("%s_p%d.%s", choicesPrefix, position, ChoicesLogWriter.EXTENSION);
+		return new ChoicesLogWriter(path, choiceNames);
+	}
+
+	/**
+	 * Appends the choices of a match to the choices log.
+	 * The match is buffered: it reaches the file when the writer is flushed.
+	 * @param writer
+	 * @param matchNumber
+	 * @param choices
+	 * @throws IOException
+	 */
+	public static void outputChoices(ChoicesLogWriter writer, int matchNumber, ChoiceLog choices) throws IOException{
+		LogManager.getRootLogger().debug("Attempting to write choices to " + writer.getPath());
+		writer.write(matchNumber, choices);
 	}
     
-    public static void outputSummary(String path, int result, long milliseconds, int frames, Date start, Date finish) throws IOException{
-    	File f = new File(path);
-		FileWriter writer; 
-		Logger logger = LogManager.getRootLogger();
-		logger.debug("Attempting to write the output summary to " + path);
-		
-    	if(!f.exists()){ // creates a new file and writes the header
-    		// creates missing parent directories as well
-    		if (f.getParentFile() != null) {
-    			  f.getParentFile().mkdirs();
-			}
-    		logger.debug("File didn't exist, creating and writing header");
-    		writer = new FileWriter(f, false); //must be after the test, because it creates the file upon instantiation
-    		writer.write("#result,duration(ms),duration(frames),initial_time,final_time\n");
-    		writer.close();
-    	}
-    	
-    	// appends one line with each weight value separated by a comma
-    	writer = new FileWriter(f, true); 
-    	writer.write(String.format("%d,%d,%d,%s,%s\n", result, milliseconds, frames, start, finish));
-    	logger.debug("Successfully wrote to " + path); 
-    	
-    	writer.close();
+	/**
+	 * Returns the path of the planning metrics that go alongside the given summary
+	 * (e.g. train.csv -> train-metrics.csv)
+	 * @param summaryOutput
+	 * @return
+	 */
+	public static String metricsOutput(String summaryOutput) {
+		String base = summaryOutput.endsWith(".csv") ? summaryOutput.substring(0, summaryOutput.length() - 4) : summaryOutput;
+		return base + "-metrics.csv";
+	}
+
+	/**
+	 * Appends the planning metrics of a player in a match (see {@link PlanningMetrics#toCsv()}).
+	 * The row is buffered: it reaches the file when the writer is flushed.
+	 * @param writer
+	 * @param matchNumber
+	 * @param position
+	 * @param metrics
+	 * @throws IOException
+	 */
+	public static void outputMetrics(ResultsWriter writer, int matchNumber, int position, String metrics) throws IOException{
+		writer.writeRow(String.format("%d,%d,%s", matchNumber, position, metrics));
+	}
+	
+	/**
+	 * Appends the summary of a match to the summary file.
+	 * The row is buffered: it reaches the file when the writer is flushed.
+	 * @param writer
+	 * @param result
+	 * @param milliseconds
+	 * @param frames
+	 * @param start
+	 * @param finish
+	 * @throws IOException
+	 */
+    public static void outputSummary(ResultsWriter writer, int result, long milliseconds, int frames, Date start, Date finish) throws IOException{
+    	LogManager.getRootLogger().debug("Attempting to write the output summary to " + writer.getPath());
+    	writer.writeRow(String.format("%d,%d,%d,%s,%s", result, milliseconds, frames, start, finish));
 	}
     
 	
 }
-
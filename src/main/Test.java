@@ -20,6 +20,7 @@ public class Test {
 		Logger logger = LogManager.getRootLogger();
 		
 		Properties config = Parameters.parseParameters(args); //ConfigManager.loadConfig(configFile);
+		Runner.setTraceSink(config.getProperty("trace_format"));
         
 		String baseDir = config.getProperty("working_dir");
 		
@@ -49,6 +50,7 @@ public class Test {
 			repConfig.setProperty("save_replay", saveReplay);
 			repConfig.setProperty("search.timebudget", config.getProperty("search.timebudget"));
 			repConfig.setProperty("gui", config.getProperty("gui"));
+			repConfig.setProperty("match.threads", config.getProperty("match.threads"));
 			
 			// runs one repetition
 			runTestMatches(repConfig, testOppName, repDir, initialRep, initialRep+5000, writeReplay);
@@ -89,13 +91,10 @@ public class Test {
 		boolean visualizeTest = Boolean.parseBoolean(config.getProperty("visualize_test", "false"));
 		logger.info("{} write replay.", writeReplay ? "Will" : "Will not");
 		
-		// creates the planners and the player that uses them
-		LinearSarsaLambda planner = LinearSarsaLambda.newPlanningAgent(types, config);
-		LinearSarsaLambda planningOpponent = LinearSarsaLambda.newPlanningAgent(types, config);
-		SarsaSearch player = new SarsaSearch(types, randomSeedP0, config, planner, planningOpponent);
-		
 		AI testOpponent = AILoader.loadAI(testPartnerName, types);
 		
+		int matchThreads = matchThreads(config, visualizeTest);
+		
         // tests the learner both as player 0 and 1
         for (int testPosition = 0; testPosition < 2; testPosition++) {
         	// creates the player instance and loads weights according to its position
@@ -103,24 +102,14 @@ public class Test {
             String weightsFile = String.format("%s/weights_%d.bin", workingDir, testPosition);
             String oppWeightsFile = String.format("%s/weights_%d.bin", workingDir, 1 - testPosition);
             
-            
-            logger.info("Loading weights from {}", weightsFile);
+            SarsaSearch player;
             try {
-	            player.loadWeights(weightsFile);
-	            planner.load(weightsFile);
+            	player = newTestPlayer(types, config, randomSeedP0, weightsFile, oppWeightsFile);
             }
             catch (IOException ioe) {
             	logger.error("Unable to load weights, ignoring {}.", weightsFile, ioe);
             	continue;
             }
-            
-            logger.info("Loading planningOpponent weights from {}", oppWeightsFile);
-            try {
-            	planningOpponent.load(oppWeightsFile);
-            }
-            catch (IOException ioe) {
-            	logger.error("Unable to load of opp. planner {}, using random", oppWeightsFile, ioe);
-            }
     		
     		// if write replay (trace) is activated, sets the prefix to write files
     		String tracePrefix = null;
@@ -144,10 +133,30 @@ public class Test {
     				String.format("%s/test-vs-%s_b%s", workingDir, testOpponent.getClass().getSimpleName(), config.getProperty("search.timebudget")) : //runner infers the test position, no need to pass in the prefix
     				null;
     		
+    		String summaryOutput = String.format("%s/test-vs-%s_p%d_b%s.csv", workingDir, testOpponent.getClass().getSimpleName(), testPosition, config.getProperty("search.timebudget"));
+    		
+    		if (matchThreads > 1) {
+    			// each match has its own player (with the same weights) and test opponent
+    			int position = testPosition;
+    			Runner.parallelMatches(
+    				workingDir, 
+    				testMatches / 2, //half the matches in each position
+    				summaryOutput, choicesPrefix,
+    				matchTypes -> {
+    					AI matchPlayer = newTestPlayer(matchTypes, config, randomSeedP0, weightsFile, oppWeightsFile);
+    					AI matchOpponent = AILoader.loadAI(testPartnerName, matchTypes);
+    					return position == 0 ? new AI[] {matchPlayer, matchOpponent} : new AI[] {matchOpponent, matchPlayer};
+    				},
+    				settings, tracePrefix, matchThreads, 
+    				0 //assumes no prior matches were played
+    			);
+    			continue;
+    		}
+    		
     		Runner.repeatedMatches(
     			types, workingDir,
     			testMatches / 2, //half the matches in each position
-    			String.format("%s/test-vs-%s_p%d_b%s.csv", workingDir, testOpponent.getClass().getSimpleName(), testPosition, config.getProperty("search.timebudget")),
+    			summaryOutput,
     			choicesPrefix,
     			p0, p1, visualizeTest, settings, tracePrefix, 
     			0, // no checkpoints
@@ -158,4 +167,65 @@ public class Test {
         
 		logger.info("Test finished.");
 	}
+	
+	/**
+	 * Returns how many test matches run concurrently (match.threads, or 1 if the matches are visualized).
+	 * 
+	 * Concurrent matches are independent: each one has a new player that loads the weights from the files.
+	 * Sequential matches are played by the same player, whose planner keeps learning across matches 
+	 * if it plans (search.timebudget > 0) with a nonzero planning_alpha, and the learner adopts its weights.
+	 * In that case, the results of concurrent matches differ from the sequential ones, which is warned here.
+	 * @param config
+	 * @param visualize
+	 * @return
+	 */
+	protected static int matchThreads(Properties config, boolean visualize) {
+		int matchThreads = Integer.parseInt(config.getProperty("match.threads"));
+		if (visualize) {
+			return 1;
+		}
+		
+		if (matchThreads > 1 && Integer.parseInt(config.getProperty("search.timebudget")) > 0 
+				&& Double.parseDouble(config.getProperty("planning_alpha")) != 0) {
+			LogManager.getRootLogger().warn(
+				"Running {} matches concurrently with planning_alpha={}: each match starts from the weight files, "
+				+ "whereas sequential matches carry what the planner learned over to the next ones.",
+				matchThreads, config.getProperty("planning_alpha")
+			);
+		}
+		return matchThreads;
+	}
+	
+	/**
+	 * Creates a SarsaSearch player (and its planners) with frozen weights, as in {@link #runTestMatches}.
+	 * The config must have zero learning and exploration rates.
+	 * @param types
+	 * @param config
+	 * @param randomSeed
+	 * @param weightsFile weights of the player and its planner (null to keep random weights)
+	 * @param oppWeightsFile weights of the planning opponent (random weights are kept if it cannot be loaded)
+	 * @return
+	 * @throws IOException if the player's weights cannot be loaded
+	 */
+	protected static SarsaSearch newTestPlayer(UnitTypeTable types, Properties config, int randomSeed, 
+			String weightsFile, String oppWeightsFile) throws IOException {
+		
+		LinearSarsaLambda planner = LinearSarsaLambda.newPlanningAgent(types, config);
+		LinearSarsaLambda planningOpponent = LinearSarsaLambda.newPlanningAgent(types, config);
+		SarsaSearch player = new SarsaSearch(types, randomSeed, config, planner, planningOpponent);
+		
+		if (weightsFile != null) {
+			LogManager.getRootLogger().info("Loading weights from {}", weightsFile);
+			player.loadWeights(weightsFile);
+			planner.load(weightsFile);
+			
+			try {
+				planningOpponent.load(oppWeightsFile);
+			}
+			catch (IOException ioe) {
+				LogManager.getRootLogger().error("Unable to load of opp. planner {}, using random", oppWeightsFile, ioe);
+			}
+		}
+		return player;
+	}
 }
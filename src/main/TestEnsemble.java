@@ -30,6 +30,7 @@ public class TestEnsemble {
 		Logger logger = LogManager.getRootLogger();
 		
 		Properties config = Parameters.parseParameters(args); //ConfigManager.loadConfig(configFile);
+		Runner.setTraceSink(config.getProperty("trace_format"));
         
 		String baseDir = config.getProperty("working_dir");
 		
@@ -59,6 +60,7 @@ public class TestEnsemble {
 			repConfig.setProperty("save_replay", saveReplay);
 			repConfig.setProperty("search.timebudget", config.getProperty("search.timebudget"));
 			repConfig.setProperty("gui", config.getProperty("gui"));
+			repConfig.setProperty("match.threads", config.getProperty("match.threads"));
 			
 			// runs one repetition
 			runTestMatches(repConfig, config, testOppName, repDir, writeReplay);
@@ -145,10 +147,33 @@ public class TestEnsemble {
     				String.format("%s/test-vs-%s_b%s", workingDir, testOpponent.getClass().getSimpleName(), config.getProperty("search.timebudget")) : //runner infers the test position, no need to pass in the prefix
     				null;*/
     		
+    		String summaryOutput = String.format("%s/test-%s-vs-%s_p%d_b%s.csv", workingDir, ensembleConfig.getProperty("ensemble_name"), testOpponent.getClass().getSimpleName(), testPosition, config.getProperty("search.timebudget"));
+    		
+    		int matchThreads = Integer.parseInt(config.getProperty("match.threads"));
+    		if (matchThreads > 1 && !visualizeTest) {
+    			// each match has its own ensemble (policies are memory-mapped, so this is cheap) and test opponent
+    			int position = testPosition;
+    			Runner.parallelMatches(
+    				workingDir, 
+    				testMatches / 2, //half the matches in each position
+    				summaryOutput, choicesPrefix,
+    				matchTypes -> {
+    					MajorityVotingEnsemble matchPlayer = new MajorityVotingEnsemble(matchTypes, config);
+    					loadPolicies(config, ensembleConfig, workingDir, matchPlayer, position);
+    					AI matchOpponent = AILoader.loadAI(testPartnerName, matchTypes);
+    					return position == 0 ? new AI[] {matchPlayer, matchOpponent} : new AI[] {matchOpponent, matchPlayer};
+    				},
+    				settings, tracePrefix, matchThreads, 
+    				0 //assumes no prior matches were played
+    			);
+    			player = new MajorityVotingEnsemble(types, ensembleConfig); //resets the player (i.e. discards the previously loaded ensemble policies)
+    			continue;
+    		}
+    		
     		Runner.repeatedMatches(
     			types, workingDir,
     			testMatches / 2, //half the matches in each position
-    			String.format("%s/test-%s-vs-%s_p%d_b%s.csv", workingDir, ensembleConfig.getProperty("ensemble_name"), testOpponent.getClass().getSimpleName(), testPosition, config.getProperty("search.timebudget")),
+    			summaryOutput,
     			choicesPrefix,
     			p0, p1, visualizeTest, settings, tracePrefix, 
     			0, // no checkpoints
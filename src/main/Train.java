@@ -25,6 +25,7 @@ public class Train {
 		Logger logger = LogManager.getRootLogger();
 		
         Properties config = Parameters.parseParameters(args); //ConfigManager.loadConfig(configFile);
+        Runner.setTraceSink(config.getProperty("trace_format"));
         
         String experimentDir = FileNameUtil.getExperimentDir(config);
        
@@ -0,0 +1,203 @@
+package tdsearch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import rts.GameState;
+import rts.Player;
+import rts.PlayerAction;
+import rts.UnitAction;
+import rts.UnitActionAssignment;
+import rts.units.Unit;
+
+/**
+ * Bounded cache of the actions returned by the portfolio scripts, keyed by
+ * script name, player and a fingerprint of the state (time and a hash of the units,
+ * their actions in progress and the players' resources).
+ *
+ * The scripts are cloned before each call, so their action only depends on the state:
+ * planning episodes restarted from the same root ask the same script to act on the same
+ * states again, which is answered here instead of re-running the script (and its pathfinding).
+ * Two different states might share a fingerprint, but that would take a hash collision
+ * at the same game time; an action that does not fit the state is still filtered by issueSafe.
+ *
+ * The least recently used entries are evicted beyond the capacity. A cache is not
+ * thread-safe: each planning worker must have its own.
+ *
+ * @author artavares
+ *
+ */
+public class ActionCache {
+
+	/**
+	 * Default number of cached actions
+	 */
+	public static final int DEFAULT_CAPACITY = 256;
+
+	/**
+	 * Identifies the action of a script for a player in a state
+	 */
+	static final class Key {
+		final String script;
+		final int player;
+		final int time;
+		final long fingerprint;
+
+		Key(String script, int player, int time, long fingerprint) {
+			this.script = script;
+			this.player = player;
+			this.time = time;
+			this.fingerprint = fingerprint;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) return false;
+			Key key = (Key) other;
+			return fingerprint == key.fingerprint && time == key.time && player == key.player && script.equals(key.script);
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(fingerprint) * 31 + script.hashCode() + player;
+		}
+	}
+
+	private final int capacity;
+
+	private final LinkedHashMap<Key, PlayerAction> entries;
+
+	private long hits, misses;
+
+	/**
+	 * Creates a cache with the given capacity
+	 * @param capacity maximum number of cached actions (must be positive)
+	 */
+	@SuppressWarnings("serial")
+	public ActionCache(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Action cache capacity '" + capacity + "' must be positive.");
+		}
+		this.capacity = capacity;
+		entries = new LinkedHashMap<Key, PlayerAction>(16, 0.75f, true) { // access order, for LRU eviction
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, PlayerAction> eldest) {
+				return size() > ActionCache.this.capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns the key of the action of a script for a player in the given state
+	 * @param script
+	 * @param player
+	 * @param state
+	 * @return
+	 */
+	public Key key(String script, int player, GameState state) {
+		return new Key(script, player, state.getTime(), fingerprint(state));
+	}
+
+	/**
+	 * Returns a copy of the cached action (so that issuing it does not change the cache),
+	 * or null if absent
+	 * @param key
+	 * @return
+	 */
+	public PlayerAction get(Key key) {
+		PlayerAction action = entries.get(key);
+		if (action == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return action.clone();
+	}
+
+	/**
+	 * Caches a copy of the action (evicting the least recently used one if full)
+	 * @param key
+	 * @param action
+	 */
+	public void put(Key key, PlayerAction action) {
+		entries.put(key, action.clone());
+	}
+
+	/**
+	 * Discards all cached actions (e.g. when planning moves to another root state)
+	 */
+	public void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Returns the number of cached actions
+	 * @return
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Returns the number of calls to {@link #get(Key)} that found an action
+	 * @return
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of calls to {@link #get(Key)} that found nothing
+	 * @return
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns a hash of the units (type, owner, position, hit points, resources and
+	 * action in progress) and of the players' resources. The time is not included,
+	 * it is part of the {@link Key}.
+	 * @param state
+	 * @return
+	 */
+	public static long fingerprint(GameState state) {
+		long hash = 0xcbf29ce484222325L; // FNV-1a offset basis, mixing whole ints instead of bytes
+
+		for (Player player : state.getPhysicalGameState().getPlayers()) {
+			hash = mix(hash, player.getResources());
+		}
+
+		for (Unit unit : state.getUnits()) {
+			hash = mix(hash, unit.getID());
+			hash = mix(hash, unit.getType().ID);
+			hash = mix(hash, unit.getPlayer());
+			hash = mix(hash, unit.getX());
+			hash = mix(hash, unit.getY());
+			hash = mix(hash, unit.getHitPoints());
+			hash = mix(hash, unit.getResources());
+
+			UnitActionAssignment assignment = state.getActionAssignment(unit);
+			if (assignment == null) {
+				hash = mix(hash, -1);
+				continue;
+			}
+			UnitAction action = assignment.action;
+			hash = mix(hash, action.getType());
+			hash = mix(hash, action.getDirection());
+			hash = mix(hash, action.getLocationX());
+			hash = mix(hash, action.getLocationY());
+			hash = mix(hash, action.getUnitType() == null ? -1 : action.getUnitType().ID);
+			hash = mix(hash, assignment.time);
+		}
+		return hash;
+	}
+
+	private static long mix(long hash, long value) {
+		return (hash ^ value) * 0x100000001b3L;
+	}
+}
@@ -1,12 +1,7 @@
 package tdsearch;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -21,6 +16,8 @@ import rts.GameState;
 import rts.PlayerAction;
 import rts.units.UnitTypeTable;
 import utils.ForwardModel;
+import utils.LinearKernels;
+import utils.WeightFile;
 
 /**
  * 2018 microRTS Tournament version of SarsaSearch
@@ -208,17 +205,15 @@ public class CompetitionSarsaSearch extends TDSearch {
 
 
 	private void sarsaPlanning(GameState gs, int player) {
-		Date begin = new Date(System.currentTimeMillis());
-		Date end = begin;
-		int planningBudget = (int) (.8 * timeBudget); // 80% of budget to planning
-		long duration = 0;
+		long begin = System.nanoTime();
+		deadlineController.setDeadline(deadlineController.deadlineFor(timeBudget * 1000000L, SarsaSearch.PLANNING_RESERVE));
 		
 		// copies 'long-term' memory to 'short-term' memory
 		Map<String, double[]> planningWeights = new HashMap<>(weights);
 		
 		GameState state = gs.clone(); //this state will advance during the linear look-ahead search below
 		
-		while (duration < planningBudget) { // while time available
+		while (deadlineController.fitsStep()) { // while time available
 			// starts with a new eligibility trace vector for planning
 			Map<String, double[]> planningEligibility = new HashMap<String, double[]>(); 
 			resetMap(planningEligibility);
@@ -226,7 +221,7 @@ public class CompetitionSarsaSearch extends TDSearch {
 			state = gs.clone();
 			String aName = epsilonGreedy(state, player, planningWeights, planningEpsilon); // aName is a short for abstraction name
 
-			while (!state.gameover() && duration < planningBudget) { // go until game over or time is out TODO add maxcycles condition
+			while (!state.gameover() && deadlineController.startStep()) { // go until game over or time is out TODO add maxcycles condition
 
 				// issue the action to obtain the next state, issues a self-play move for the
 				// opponent
@@ -251,15 +246,13 @@ public class CompetitionSarsaSearch extends TDSearch {
 				state = nextState;
 				aName = nextAName;
 
-				// updates duration
-				end = new Date(System.currentTimeMillis());
-				duration = end.getTime() - begin.getTime();
+				deadlineController.endStep();
 			}
 			
 		} // end while (timeAvailable)
 		
 		logger.debug("Planning for player {} at frame #{} looked up to frame {} and took {}ms",
-			player, gs.getTime(), state.getTime(), end.getTime() - begin.getTime()
+			player, gs.getTime(), state.getTime(), (System.nanoTime() - begin) / 1000000
 		);
 	}
 	
@@ -324,18 +317,12 @@ public class CompetitionSarsaSearch extends TDSearch {
 			assert w.length == e.length;
 			assert e.length == f.length;
 			
-			// vector updates
-			for (int i = 0; i < w.length; i++) {
-				w[i] = w[i] + alpha * tdError * e[i]; // weight vector update
-				e[i] = e[i] * gamma * lambda; //the eligibility of all actions decays by gamma * lambda
-			}
+			// vector updates: w = w + alpha * tdError * e, then the eligibility of all actions decays by gamma * lambda
+			LinearKernels.get().updateAndDecay(w, e, alpha * tdError, gamma, lambda);
 		}
 		
 		// incrementes the eligibility of the selected action by adding the feature vector
-		double[] eSelected = eligibility.get(actionName);
-		for (int i = 0; i < eSelected.length; i++) {
-			eSelected[i] += f[i];
-		}
+		LinearKernels.get().axpy(1, f, eligibility.get(actionName));
 	}
 	
 	/* * (OLD VERSION)
@@ -574,37 +561,23 @@ public class CompetitionSarsaSearch extends TDSearch {
 	}
 
 	/**
-	 * Saves weights to a binary file
+	 * Saves weights to a binary file (see {@link WeightFile})
 	 * 
 	 * @param path
 	 * @throws IOException
 	 */
 	public void saveWeights(String path) throws IOException {
-		FileOutputStream fos = new FileOutputStream(path);
-		ObjectOutputStream oos = new ObjectOutputStream(fos);
-		oos.writeObject(weights);
-		oos.close();
-		fos.close();
+		WeightFile.fromMap(featureExtractor, weights).write(path);
 	}
 
 	/**
-	 * Load weights from a binary file
+	 * Load weights from a binary file (see {@link WeightFile})
 	 * 
 	 * @param path
 	 * @throws IOException
 	 */
-	@SuppressWarnings("unchecked")
 	public void loadWeights(String path) throws IOException {
-		FileInputStream fis = new FileInputStream(path);
-		ObjectInputStream ois = new ObjectInputStream(fis);
-		try {
-			weights = (Map<String, double[]>) ois.readObject();
-		} catch (ClassNotFoundException e) {
-			System.err.println("Error while attempting to load weights.");
-			e.printStackTrace();
-		}
-		ois.close();
-		fis.close();
+		weights = new HashMap<>(WeightFile.read(path).toMap());
 	}
 	
 	@Override
@@ -0,0 +1,197 @@
+package tdsearch;
+
+/**
+ * Decides whether a planning step still fits before a deadline (in {@link System#nanoTime()}).
+ *
+ * The cost of a step (e.g. retrieving the abstractions' actions and forwarding the state)
+ * is learned online, with exponentially weighted moving averages of its mean and variance.
+ * A step is only started if the mean plus a safety margin of some standard deviations
+ * ends before the deadline. The number of standard deviations grows when a step overruns
+ * the deadline and relaxes back as steps fit, so the margin adapts to the variability
+ * of the steps on the current map.
+ *
+ * The statistics are kept across deadlines, so a controller should be reused by the same
+ * planner (it is not thread-safe: each thread must have its own).
+ *
+ * @author artavares
+ *
+ */
+public class DeadlineController {
+
+	/**
+	 * Weight of the latest step in the moving averages
+	 */
+	public static final double DEFAULT_SMOOTHING = 0.1;
+
+	/**
+	 * Initial (and minimum) number of standard deviations of the safety margin
+	 */
+	public static final double DEFAULT_SIGMAS = 3;
+
+	/**
+	 * Maximum number of standard deviations of the safety margin
+	 */
+	public static final double MAX_SIGMAS = 24;
+
+	/**
+	 * Factor applied to the number of standard deviations after each step that fits
+	 */
+	private static final double RELAXATION = 0.99;
+
+	private double smoothing;
+
+	private double baseSigmas;
+
+	private double sigmas;
+
+	/**
+	 * Moving averages of the duration of a step and of its variance (ns)
+	 */
+	private double meanStep, varianceStep;
+
+	private long steps;
+
+	private long overruns;
+
+	private long deadline;
+
+	private long stepStart;
+
+	/**
+	 * Creates a controller with the default smoothing and safety margin
+	 */
+	public DeadlineController() {
+		this(DEFAULT_SMOOTHING, DEFAULT_SIGMAS);
+	}
+
+	/**
+	 * Creates a controller
+	 * @param smoothing weight of the latest step in the moving averages (in (0, 1])
+	 * @param sigmas initial (and minimum) number of standard deviations of the safety margin
+	 */
+	public DeadlineController(double smoothing, double sigmas) {
+		if (smoothing <= 0 || smoothing > 1) {
+			throw new IllegalArgumentException("Smoothing '" + smoothing + "' not in (0, 1].");
+		}
+		this.smoothing = smoothing;
+		this.baseSigmas = this.sigmas = sigmas;
+	}
+
+	/**
+	 * Sets the deadline of the next steps
+	 * @param deadline as in {@link System#nanoTime()}
+	 */
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Returns the deadline of a budget that starts now, keeping a reserve after it
+	 * (for the work that follows planning): the larger of the given fraction of the budget
+	 * and the predicted cost of a step
+	 * @param budget in nanoseconds
+	 * @param reserveFraction
+	 * @return the deadline, as in {@link System#nanoTime()}
+	 */
+	public long deadlineFor(long budget, double reserveFraction) {
+		long reserve = Math.max((long) (reserveFraction * budget), predictedStep());
+		return System.nanoTime() + budget - reserve;
+	}
+
+	/**
+	 * Returns whether a step is predicted to end before the deadline
+	 * @return
+	 */
+	public boolean fitsStep() {
+		return System.nanoTime() + predictedStep() - deadline < 0;
+	}
+
+	/**
+	 * Returns whether a step is predicted to end before the deadline and, if so,
+	 * starts measuring it (call {@link #endStep()} when it is done)
+	 * @return
+	 */
+	public boolean startStep() {
+		long now = System.nanoTime();
+		if (now + predictedStep() - deadline >= 0) {
+			return false;
+		}
+		stepStart = now;
+		return true;
+	}
+
+	/**
+	 * Ends the step started in the last successful {@link #startStep()},
+	 * updating the statistics with its duration
+	 */
+	public void endStep() {
+		long now = System.nanoTime();
+		double duration = now - stepStart;
+
+		if (steps == 0) {
+			meanStep = duration;
+		}
+		else {
+			double diff = duration - meanStep;
+			meanStep += smoothing * diff;
+			varianceStep = (1 - smoothing) * (varianceStep + smoothing * diff * diff);
+		}
+		steps++;
+
+		if (now - deadline > 0) {
+			overruns++;
+			sigmas = Math.min(MAX_SIGMAS, sigmas * 2);
+		}
+		else {
+			sigmas = Math.max(baseSigmas, sigmas * RELAXATION);
+		}
+	}
+
+	/**
+	 * Returns the predicted duration of a step, including the safety margin (ns)
+	 * @return
+	 */
+	public long predictedStep() {
+		return (long) (meanStep + sigmas * Math.sqrt(varianceStep));
+	}
+
+	/**
+	 * Returns the moving average of the duration of a step (ns)
+	 * @return
+	 */
+	public double getMeanStep() {
+		return meanStep;
+	}
+
+	/**
+	 * Returns the moving standard deviation of the duration of a step (ns)
+	 * @return
+	 */
+	public double getStepDeviation() {
+		return Math.sqrt(varianceStep);
+	}
+
+	/**
+	 * Returns the current number of standard deviations of the safety margin
+	 * @return
+	 */
+	public double getSigmas() {
+		return sigmas;
+	}
+
+	/**
+	 * Returns the number of measured steps
+	 * @return
+	 */
+	public long getSteps() {
+		return steps;
+	}
+
+	/**
+	 * Returns the number of steps that ended after the deadline
+	 * @return
+	 */
+	public long getOverruns() {
+		return overruns;
+	}
+}
@@ -0,0 +1,372 @@
+package tdsearch;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import ai.core.AI;
+import learning.LinearSarsaLambda;
+import rts.GameState;
+import rts.PlayerAction;
+import utils.ForwardModel;
+import utils.PlanningMetrics;
+import utils.PlanningMetrics.Counter;
+import utils.PlanningMetrics.Timer;
+
+/**
+ * Simulates planning episodes with a planner and its opponent,
+ * each one choosing abstractions from the worker's portfolio.
+ *
+ * A worker keeps its planning state between calls, so that an episode
+ * can be resumed on the next frame. Workers do not share mutable state
+ * (agents, portfolio, game state), so several of them can plan concurrently.
+ *
+ * @author artavares
+ *
+ */
+public class PlanningWorker {
+
+	/**
+	 * The planning agent
+	 */
+	LinearSarsaLambda planner;
+
+	/**
+	 * Planning counterpart, to generate the actions of the opponent
+	 */
+	LinearSarsaLambda planningOpponent;
+
+	/**
+	 * Receives the planner's weights at the end of each episode (can be null)
+	 */
+	LinearSarsaLambda learner;
+
+	/**
+	 * Maps the AI name to its instance
+	 */
+	Map<String, AI> abstractions;
+
+	/**
+	 * The abstractions aligned with the action indexes of each agent
+	 * (keyed by the agent's list of actions)
+	 */
+	private Map<List<String>, AI[]> alignedAbstractions;
+
+	/**
+	 * Stores the current game state of planning
+	 * (in case planning is split between frames)
+	 */
+	GameState planningState;
+
+	private int decisionInterval;
+
+	private int maxCycles;
+
+	/**
+	 * Number of episodes that reached their end
+	 */
+	private int finishedEpisodes;
+
+	/**
+	 * Makes {@link #plan(GameState, int, long)} return before the deadline
+	 * (checked before each simulated step)
+	 */
+	private volatile boolean stopRequested;
+
+	/**
+	 * Decides whether each simulated step fits before the deadline
+	 */
+	private DeadlineController deadlineController;
+
+	/**
+	 * Receives the counters and latencies of planning (null if not measured)
+	 */
+	private PlanningMetrics metrics;
+
+	/**
+	 * Memoizes the actions of the abstractions (null if disabled)
+	 */
+	private ActionCache actionCache;
+
+	private Logger logger;
+
+	/**
+	 * Creates a worker
+	 * @param planner
+	 * @param planningOpponent
+	 * @param abstractions the portfolio (must not be shared with concurrent workers)
+	 * @param learner receives the planner's weights at the end of each episode (can be null)
+	 * @param decisionInterval
+	 * @param maxCycles
+	 */
+	public PlanningWorker(LinearSarsaLambda planner, LinearSarsaLambda planningOpponent,
+			Map<String, AI> abstractions, LinearSarsaLambda learner, int decisionInterval, int maxCycles) {
+		this.planner = planner;
+		this.planningOpponent = planningOpponent;
+		this.abstractions = abstractions;
+		this.learner = learner;
+		this.decisionInterval = decisionInterval;
+		this.maxCycles = maxCycles;
+
+		alignedAbstractions = new IdentityHashMap<>();
+		deadlineController = new DeadlineController();
+		logger = LogManager.getRootLogger();
+	}
+
+	/**
+	 * Plans from the given state (or resumes the previous episode) until the deadline
+	 * or until {@link #requestStop()} is called
+	 * @param gs
+	 * @param player
+	 * @param deadline as in {@link System#nanoTime()} (a step is only simulated if it is predicted to end before it)
+	 */
+	public void plan(GameState gs, int player, long deadline) {
+		deadlineController.setDeadline(deadline);
+
+		while (!stopRequested && deadlineController.fitsStep()) { // while time available
+
+			// if planning state is null, I'll start planning from the received state
+			// otherwise I'll resume from the previously saved planningState
+			if (planningState == null) {
+				logger.debug("(Re)starting planning from state {}", gs.getTime());
+				long start = PlanningMetrics.start(metrics);
+				planningState = gs.clone();
+				PlanningMetrics.stop(metrics, Timer.CLONE, start);
+			}
+			else {
+				logger.debug("Resuming previous planning from state {}", planningState.getTime() );
+			}
+
+
+			int skippedFrames = 0; //counts the number of skipped frames
+
+			// go until the match ends, the time is over or the planning budget is over
+			while (!planningState.gameover() && planningState.getTime() < maxCycles && !stopRequested && deadlineController.fitsStep()) {
+
+				// requests the action from the planners (learning happens inside the act method)
+				int action = planner.actIndex(planningState, player);
+				int oppAction = planningOpponent.actIndex(planningState, 1 - player);
+				logger.trace("Planning step, selected {} vs {}", planner.actionName(action), planningOpponent.actionName(oppAction));
+				if (metrics != null) {
+					metrics.increment(Counter.DECISIONS);
+				}
+
+				// issues the actions & forwards the state
+
+				while(skippedFrames < decisionInterval && !stopRequested && deadlineController.startStep()) {
+
+					// retrieves the actions given by the abstractions
+					PlayerAction playerAction = abstractionToAction(planner, action, planningState, player);
+					PlayerAction oppPlayerAction = abstractionToAction(planningOpponent, oppAction, planningState, 1 - player);
+
+					long start = PlanningMetrics.start(metrics);
+					GameState nextState = planningState.clone();
+					PlanningMetrics.stop(metrics, Timer.CLONE, start);
+					
+					nextState.issueSafe(playerAction);
+					nextState.issueSafe(oppPlayerAction);
+					
+					start = PlanningMetrics.start(metrics);
+					int frames = ForwardModel.forward(nextState); //advances the state up to the next decision point or gameover
+					PlanningMetrics.stop(metrics, Timer.FORWARD, start);
+					skippedFrames += frames;
+					if (metrics != null) {
+						metrics.add(Counter.FRAMES, frames);
+					}
+					// (don't need to call planner.learn() here because it happens inside 'act'
+					planningState = nextState;
+					deadlineController.endStep();
+				}
+				logger.debug("Skipped {} frames. Decision interval={}", skippedFrames, decisionInterval);
+				skippedFrames = 0;
+			}
+
+			// if reached a gameover or timeout, let learners finish & prepare planners for the new initial state
+			if(planningState.gameover() || planningState.getTime() >= maxCycles) {
+				logger.debug("Planning reached gameover({}), winner: {}", planningState.getTime(), planningState.winner());
+				planner.finish(planningState.winner());
+				planningOpponent.finish(planningState.winner());
+
+				//transfers the weights from the planner to the learner
+				if (learner != null) {
+					learner.copyWeights(planner);
+				}
+
+				// resets eligibility of the planners for the next iteration
+				planner.clearEligibility();
+				planningOpponent.clearEligibility();
+				planningState = null;	//resets the planning state to restart planning from the received game state
+				finishedEpisodes++;
+				if (metrics != null) {
+					metrics.increment(Counter.EPISODES);
+				}
+			}
+
+		} // end while (timeAvailable)
+	}
+
+	/**
+	 * Makes the current (and any further) call to {@link #plan(GameState, int, long)} 
+	 * return after the simulated step in progress, until {@link #clearStop()} is called.
+	 * Can be called from any thread.
+	 */
+	public void requestStop() {
+		stopRequested = true;
+	}
+
+	/**
+	 * Returns whether {@link #requestStop()} was called (and not cleared since)
+	 * @return
+	 */
+	public boolean isStopRequested() {
+		return stopRequested;
+	}
+
+	/**
+	 * Allows planning again after {@link #requestStop()}
+	 */
+	public void clearStop() {
+		stopRequested = false;
+	}
+
+	/**
+	 * Discards the episode in progress, so that the next call to 
+	 * {@link #plan(GameState, int, long)} starts from the given state
+	 */
+	public void restart() {
+		planningState = null;
+		planner.clearEligibility();
+		planningOpponent.clearEligibility();
+	}
+
+	/**
+	 * Returns the controller that learns the cost of the simulated steps of this worker
+	 * @return
+	 */
+	public DeadlineController getDeadlineController() {
+		return deadlineController;
+	}
+
+	/**
+	 * Sets the metrics that receive the counters and latencies of this worker 
+	 * and of its planners (null stops measuring)
+	 * @param metrics
+	 */
+	public void setMetrics(PlanningMetrics metrics) {
+		this.metrics = metrics;
+		planner.setMetrics(metrics);
+		planningOpponent.setMetrics(metrics);
+	}
+
+	/**
+	 * Memoizes the actions of the abstractions in a cache of the given capacity
+	 * (0 disables it), see {@link ActionCache}
+	 * @param capacity
+	 */
+	public void setActionCacheCapacity(int capacity) {
+		actionCache = capacity > 0 ? new ActionCache(capacity) : null;
+	}
+
+	/**
+	 * Returns the cache of the abstractions' actions (null if disabled)
+	 * @return
+	 */
+	public ActionCache getActionCache() {
+		return actionCache;
+	}
+
+	/**
+	 * Discards the memoized actions of the abstractions; called when planning
+	 * moves to a new root state, so that the cache only holds states of the current decision
+	 */
+	public void clearActionCache() {
+		if (actionCache != null) {
+			actionCache.clear();
+		}
+	}
+
+	/**
+	 * Returns the number of planning episodes that reached their end
+	 * @return
+	 */
+	public int getFinishedEpisodes() {
+		return finishedEpisodes;
+	}
+
+	/**
+	 * Returns the abstractions ordered by the action indexes of the given agent
+	 * @param agent
+	 * @return
+	 */
+	private AI[] abstractionsOf(LinearSarsaLambda agent) {
+		return alignedAbstractions.computeIfAbsent(agent.getActions(), actionNames -> {
+			AI[] aligned = new AI[actionNames.size()];
+			for (int a = 0; a < aligned.length; a++) {
+				aligned[a] = abstractions.get(actionNames.get(a));
+			}
+			return aligned;
+		});
+	}
+
+	/**
+	 * Returns an action that the AI chosen by the given agent would perform for the given
+	 * state (from the action cache, if the AI was already asked for that state)
+	 *
+	 * @param agent
+	 * @param choice the index of the chosen action among the agent's actions
+	 * @param state
+	 * @param player
+	 * @return
+	 */
+	public PlayerAction abstractionToAction(LinearSarsaLambda agent, int choice, GameState state, int player) {
+		String name = agent.actionName(choice);
+		if (logger.isTraceEnabled()) {
+			logger.trace(
+				String.format("Translating action of %s for player %d at time %d",
+					name, player, state.getTime()
+				));
+		}
+
+		AI abstraction = abstractionsOf(agent)[choice];
+
+		ActionCache.Key key = null;
+		if (actionCache != null) {
+			key = actionCache.key(name, player, state);
+			PlayerAction cached = actionCache.get(key);
+			if (cached != null) {
+				if (metrics != null) {
+					metrics.increment(Counter.ACTION_CACHE_HITS);
+				}
+				return cached;
+			}
+		}
+
+		PlayerAction action = null;
+		long start = PlanningMetrics.start(metrics);
+		try {
+			action = abstraction.clone().getAction(player, state);
+			PlanningMetrics.stop(metrics, Timer.ABSTRACTION, start);
+			if (key != null) {
+				actionCache.put(key, action);
+			}
+		} catch (Exception e) {
+			logger.error("Abstraction '" + abstraction + "' failed to return an action. Filling w/ nones.", e);
+			action.fillWithNones(state, player, 1);
+		}
+
+		if (logger.isTraceEnabled()) {
+			logger.trace("Issuing action " + action);
+		}
+
+		if (!action.integrityCheck()) {
+			logger.error(String.format("Illegal action attempted by %s at time %d for player %d", name, state.getTime(),
+					player));
+		}
+
+		return action;
+	}
+
+}
@@ -0,0 +1,216 @@
+package tdsearch;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import learning.LinearSarsaLambda;
+import rts.GameState;
+
+/**
+ * Keeps planning in a background thread between decisions (pondering).
+ *
+ * After a decision, {@link #ponder(GameState, int, LinearSarsaLambda, LinearSarsaLambda)}
+ * hands the latest observed state and the planners' weights to the background worker,
+ * which simulates episodes from that state with its own copies of the planners and
+ * portfolio. Every {@link #SLICE} milliseconds (and when stopped) it publishes a snapshot of
+ * its weights. At the next decision, {@link #stop(LinearSarsaLambda, LinearSarsaLambda)} asks 
+ * the worker to stop (without waiting for it) and copies the latest snapshot into the foreground planners.
+ *
+ * Pondering from a root stops after {@link #IDLE_AFTER} milliseconds without a new one,
+ * so that an idle agent does not keep a core busy; {@link #close()} ends the thread.
+ *
+ * The foreground never blocks on the background thread: a stop request is honored
+ * after the simulated step in progress, and a snapshot is only adopted if it was computed
+ * from the weights handed over by the last call to ponder, which the foreground
+ * planners still have (they only learn inside getAction, while pondering is stopped).
+ *
+ * @author artavares
+ *
+ */
+public class Ponderer {
+
+	/**
+	 * Interval (ms) between snapshots of the background weights
+	 */
+	public static final int SLICE = 5;
+
+	/**
+	 * Time (ms) after which pondering from the same root stops and the background thread
+	 * parks until the next root (e.g. the match ended, or no decision is being asked)
+	 */
+	public static final int IDLE_AFTER = 2000;
+
+	/**
+	 * A state to ponder from and the weights the planners had at that state
+	 */
+	static class Root {
+		final GameState state;
+		final int player;
+		final double[] plannerWeights, opponentWeights;
+
+		Root(GameState state, int player, double[] plannerWeights, double[] opponentWeights) {
+			this.state = state;
+			this.player = player;
+			this.plannerWeights = plannerWeights;
+			this.opponentWeights = opponentWeights;
+		}
+	}
+
+	/**
+	 * The weights learned by pondering from a root
+	 */
+	static class Result {
+		final Root root;
+		final double[] plannerWeights, opponentWeights;
+		final int finishedEpisodes;
+
+		Result(Root root, double[] plannerWeights, double[] opponentWeights, int finishedEpisodes) {
+			this.root = root;
+			this.plannerWeights = plannerWeights;
+			this.opponentWeights = opponentWeights;
+			this.finishedEpisodes = finishedEpisodes;
+		}
+	}
+
+	private PlanningWorker worker;
+
+	/**
+	 * The root handed over by the foreground and not yet picked by the background thread
+	 */
+	private final AtomicReference<Root> pending = new AtomicReference<>();
+
+	/**
+	 * The latest snapshot of the background weights
+	 */
+	private final AtomicReference<Result> latest = new AtomicReference<>();
+
+	/**
+	 * The root of the last call to ponder (only accessed by the foreground)
+	 */
+	private Root lastRoot;
+
+	private Thread thread;
+
+	/**
+	 * Ends the background thread
+	 */
+	private volatile boolean closed;
+
+	private Logger logger;
+
+	/**
+	 * Creates a ponderer that plans with the given worker, which must not be shared
+	 * (its planners and portfolio are used by the background thread)
+	 * @param worker
+	 */
+	public Ponderer(PlanningWorker worker) {
+		this.worker = worker;
+		logger = LogManager.getRootLogger();
+	}
+
+	/**
+	 * Starts (or redirects) pondering from the given state, with the current weights of the planners
+	 * @param gs
+	 * @param player
+	 * @param planner
+	 * @param planningOpponent
+	 */
+	public void ponder(GameState gs, int player, LinearSarsaLambda planner, LinearSarsaLambda planningOpponent) {
+		lastRoot = new Root(gs.clone(), player, planner.snapshotWeights(null), planningOpponent.snapshotWeights(null));
+		latest.set(null);
+		worker.clearStop();
+		pending.set(lastRoot);
+
+		if (thread == null) {
+			thread = new Thread(this::run, "planning-ponderer");
+			thread.setDaemon(true); // does not prevent the JVM from exiting
+			thread.start();
+		}
+		else {
+			LockSupport.unpark(thread);
+		}
+	}
+
+	/**
+	 * Asks the background thread to stop (without waiting) and copies the weights it learned
+	 * since the last call to {@link #ponder(GameState, int, LinearSarsaLambda, LinearSarsaLambda)}
+	 * into the given planners, if any
+	 * @param planner
+	 * @param planningOpponent
+	 * @return the number of episodes finished by pondering whose weights were adopted
+	 * (-1 if nothing was adopted)
+	 */
+	public int stop(LinearSarsaLambda planner, LinearSarsaLambda planningOpponent) {
+		worker.requestStop();
+		pending.set(null);
+
+		Result result = latest.getAndSet(null);
+		if (result == null || result.root != lastRoot) {
+			return -1;
+		}
+		planner.restoreWeights(result.plannerWeights);
+		planningOpponent.restoreWeights(result.opponentWeights);
+		lastRoot = null; // the next results are from another root
+		return result.finishedEpisodes;
+	}
+
+	/**
+	 * Asks the background thread to stop and discards what it learned
+	 */
+	public void cancel() {
+		worker.requestStop();
+		pending.set(null);
+		latest.set(null);
+		lastRoot = null;
+	}
+
+	/**
+	 * Stops pondering for good and lets the background thread end
+	 */
+	public void close() {
+		closed = true;
+		cancel();
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+	}
+
+	/**
+	 * The loop of the background thread: waits for a root and plans from it
+	 * until stopped, redirected to another root or idle for {@link #IDLE_AFTER} ms
+	 */
+	private void run() {
+		while (!closed) {
+			Root root = pending.getAndSet(null);
+			if (root == null) {
+				LockSupport.park(this);
+				continue;
+			}
+
+			try {
+				worker.planner.restoreWeights(root.plannerWeights);
+				worker.planningOpponent.restoreWeights(root.opponentWeights);
+				worker.restart();
+				worker.clearActionCache();
+				int episodesBefore = worker.getFinishedEpisodes();
+				long idleDeadline = System.nanoTime() + IDLE_AFTER * 1000000L;
+
+				while (pending.get() == null && !closed) {
+					worker.plan(root.state, root.player, System.nanoTime() + SLICE * 1000000L);
+					latest.set(new Result(
+						root, worker.planner.snapshotWeights(null), worker.planningOpponent.snapshotWeights(null),
+						worker.getFinishedEpisodes() - episodesBefore
+					));
+					if (pending.get() == null && (worker.isStopRequested() || System.nanoTime() - idleDeadline > 0)) {
+						break; // parks until the next root
+					}
+				}
+			} catch (RuntimeException e) {
+				logger.error("Pondering failed, waiting for the next state", e);
+			}
+		}
+	}
+}
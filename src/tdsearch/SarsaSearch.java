@@ -3,11 +3,17 @@ package tdsearch;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -18,10 +24,12 @@ import learning.LearningAgent;
 import learning.LearningAgentFactory;
 import learning.LinearSarsaLambda;
 import portfolio.PortfolioManager;
+import reward.RewardModelFactory;
 import rts.GameState;
 import rts.PlayerAction;
 import rts.units.UnitTypeTable;
-import utils.ForwardModel;
+import utils.ChoiceLog;
+import utils.PlanningMetrics;
 
 public class SarsaSearch extends AI {
 
@@ -31,9 +39,9 @@ public class SarsaSearch extends AI {
 	private int decisionInterval;
 
 	/**
-	 * All choices (one per frame)
+	 * All choices (one per frame, run-length encoded)
 	 */
-	public List<String> choices;
+	protected ChoiceLog choices;
 
 	/**
 	 * The actual ID of this player
@@ -63,6 +71,11 @@ public class SarsaSearch extends AI {
     protected Map<String,AI> abstractions;
 
 	String currentChoiceName;
+	
+	/**
+	 * Index of the current choice among the learner's actions
+	 */
+	int currentChoice;
 
 	protected Logger logger;
 
@@ -83,10 +96,70 @@ public class SarsaSearch extends AI {
 	LinearSarsaLambda planningOpponent; 
 	
 	/**
-	 * Stores the current game state of planning
-	 * (in case planning is split between frames)
+	 * Simulates the planning episodes with planner and planningOpponent
+	 * (it also translates the learner's choices into game actions)
+	 */
+	private PlanningWorker worker;
+	
+	/**
+	 * Number of threads for root-parallel planning (1 means sequential planning)
+	 */
+	private int planningThreads;
+	
+	/**
+	 * How parallel workers combine what they learn: 
+	 * their weight changes are averaged or summed at the end of the planning budget, 
+	 * or they update shared weights concurrently (hogwild)
+	 */
+	enum MergeMode { AVERAGE, SUM, HOGWILD }
+	
+	private MergeMode mergeMode;
+	
+	/**
+	 * Workers with private copies of the planners, used when planningThreads > 1
+	 */
+	private PlanningWorker[] parallelWorkers;
+	
+	/**
+	 * Runs the parallel workers
+	 */
+	private ExecutorService planningExecutor;
+	
+	/**
+	 * Snapshots of the planners' weights at the beginning of parallel planning
+	 */
+	private double[] plannerReference, opponentReference;
+	
+	/**
+	 * Minimum fraction of the time budget kept for the decision after planning 
+	 * (the reserve is larger if a simulated step is predicted to take longer)
+	 */
+	public static final double PLANNING_RESERVE = 0.05;
+	
+	/**
+	 * Whether to keep planning in background between calls to getAction
+	 */
+	private boolean ponder;
+	
+	/**
+	 * Plans in background between calls to getAction (created on first use, if ponder is set)
 	 */
-	GameState planningState;
+	private Ponderer ponderer;
+	
+	/**
+	 * Counters and latencies of the planning done in getAction (null if not measured).
+	 * Pondering is not included, so that they reflect what the time budget allows.
+	 */
+	private PlanningMetrics metrics;
+	
+	/**
+	 * Capacity of the workers' caches of the abstractions' actions (0 disables them)
+	 */
+	private int actionCacheCapacity;
+	
+	protected UnitTypeTable types;
+	
+	protected Properties config;
 	
 	/**
 	 * * Creates a SarsaSearch object by specifying all parameters
@@ -102,6 +175,7 @@ public class SarsaSearch extends AI {
 	private SarsaSearch(UnitTypeTable types, LearningAgent learner, Map<String, AI> portfolio, 
 			int maxCycles, int timeBudget, int decisionInterval, LinearSarsaLambda planner, 
 			LinearSarsaLambda planningOpponent ) {
+		this.types = types;
 		this.learner = (LinearSarsaLambda)learner;
 		this.maxCycles = maxCycles;
 		this.abstractions = portfolio;
@@ -113,7 +187,10 @@ public class SarsaSearch extends AI {
 		this.planner = planner;
 		this.planningOpponent = planningOpponent;
 		
-		choices = new ArrayList<>();
+		choices = new ChoiceLog();
+		planningThreads = 1;
+		mergeMode = MergeMode.AVERAGE;
+		actionCacheCapacity = ActionCache.DEFAULT_CAPACITY;
 		logger = LogManager.getRootLogger();
 	}
 			
@@ -136,6 +213,26 @@ public class SarsaSearch extends AI {
 			new LinearSarsaLambda(types, config),
 			new LinearSarsaLambda(types, config)
 		);
+		this.config = config;
+		
+		planningThreads = Integer.parseInt(config.getProperty("planning.threads", "1"));
+		
+		String merge = config.getProperty("planning.merge", "average");
+		try {
+			mergeMode = MergeMode.valueOf(merge.toUpperCase());
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Planning merge mode '" + merge + "' not found.");
+		}
+		
+		ponder = "true".equalsIgnoreCase(config.getProperty("planning.ponder", "false"));
+		
+		if ("true".equalsIgnoreCase(config.getProperty("planning.metrics", "false"))) {
+			metrics = new PlanningMetrics();
+		}
+		
+		actionCacheCapacity = Integer.parseInt(
+			config.getProperty("planning.action.cache", String.valueOf(ActionCache.DEFAULT_CAPACITY))
+		);
 	}
 
 	/**
@@ -169,6 +266,15 @@ public class SarsaSearch extends AI {
 			logger.error("Will proceed, but behavior might be unpredictable");
 		}
 		
+		// adopts what was learned by pondering since the previous call
+		if (ponderer != null) {
+			int ponderedEpisodes = ponderer.stop(planner, planningOpponent);
+			if (ponderedEpisodes >= 0) {
+				learner.copyWeights(planner);
+				logger.debug("Frame {}. Adopted weights from pondering ({} finished episodes)", gs.getTime(), ponderedEpisodes);
+			}
+		}
+		
 		// launches planning
 		//logger.debug("v({}) for player{} before planning: {}", gs.getTime(), player, stateValue(featureExtractor.extractFeatures(gs, player)));
 		
@@ -182,25 +288,57 @@ public class SarsaSearch extends AI {
 		if (decisionInterval <= 1 || gs.getTime() % decisionInterval == 0) { 
 			// determines the current choice
 			//FIXME possible issue: act has the side effect of learning. this isn't happening throughout all states!
-			currentChoiceName = learner.act(gs, player);
+			currentChoice = learner.actIndex(gs, player);
+			currentChoiceName = learner.actionName(currentChoice);
 		}
 
 		// logs and stores the current choice (even if unchanged)
 		logger.debug("Frame {}. Player {} chose: {}.", gs.getTime(), player, currentChoiceName);
-		choices.add(currentChoiceName);
+		choices.record(currentChoice);
 		
-		return abstractionToAction(currentChoiceName, gs, player);
+		PlayerAction action = getWorker().abstractionToAction(learner, currentChoice, gs, player);
+		
+		// keeps planning from this state until the next call
+		if (ponder) {
+			getPonderer().ponder(gs, player, planner, planningOpponent);
+		}
+		
+		return action;
 		
 	}
 	
 	/**
-	 * Returns the choices performed by this agent
+	 * Returns the counters and latencies of planning (null unless planning.metrics is set)
+	 * @return
+	 */
+	public PlanningMetrics getPlanningMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Returns the choices performed by this agent (the name of the choice of each frame)
 	 * 
 	 * @return
 	 */
 	public List<String> getChoices() {
+		return choices.toNames(learner.getActions());
+	}
+	
+	/**
+	 * Returns the choices performed by this agent as indexes of {@link #getChoiceNames()}
+	 * @return
+	 */
+	public ChoiceLog getChoiceLog() {
 		return choices;
 	}
+	
+	/**
+	 * Returns the names of the possible choices, indexed as in {@link #getChoiceLog()}
+	 * @return
+	 */
+	public List<String> getChoiceNames() {
+		return learner.getActions();
+	}
 
 	@Override
 	public void gameOver(int winner) {
@@ -212,6 +350,11 @@ public class SarsaSearch extends AI {
 		logger.debug("gameOver. winner={}, playerID={}", winner, playerID);
 		learner.finish(winner);
 		
+		// there are no more decisions to ponder for (a new ponderer is created if the agent plays again)
+		if (ponderer != null) {
+			ponderer.close();
+			ponderer = null;
+		}
 	}
 
 
@@ -222,116 +365,177 @@ public class SarsaSearch extends AI {
 	 * @param player
 	 */
 	private void sarsaPlanning(GameState gs, int player) {
-		Date begin = new Date(System.currentTimeMillis());
-		Date end = begin;
-		int planningBudget = (int) (.8 * timeBudget); // 80% of budget to planning
-		long elapsed = 0;
+		long begin = System.nanoTime();
+		long deadline = getWorker().getDeadlineController().deadlineFor(timeBudget * 1000000L, PLANNING_RESERVE);
 		
-		while (elapsed < planningBudget) { // while time available
-			
-			// if planning state is null, I'll start planning from the received state
-			// otherwise I'll resume from the previously saved planningState
-			if (planningState == null) {
-				logger.debug("(Re)starting planning from state {}", gs.getTime());
-				planningState = gs.clone(); 
-			}
-			else {
-				logger.debug("Resuming previous planning from state {}", planningState.getTime() );
-			}
-
-			
-			int skippedFrames = 0; //counts the number of skipped frames
-			//PlayerAction playerAction = null, oppAction = null; //stores the game action of the player & its opponent
-			
-			// go until the match ends, the time is over or the planning budget is over
-			while (!planningState.gameover() && planningState.getTime() < maxCycles && elapsed < planningBudget) { 
-
-				// requests the action from the planners (learning happens inside the act method) 
-				String actionName = planner.act(planningState, player); // aName is a short for abstraction name
-				String oppActionName = planningOpponent.act(planningState, 1 - player);
-				logger.trace("Planning step, selected {} vs {}", actionName, oppActionName);
-				
-				// issues the actions & forwards the state
-				
-				while(skippedFrames < decisionInterval && elapsed < planningBudget) {
-					
-					// retrieves the actions given by the abstractions
-					PlayerAction playerAction = abstractionToAction(actionName, planningState, player);
-					PlayerAction oppAction = abstractionToAction(oppActionName, planningState, 1 - player);
-					
-					GameState nextState = planningState.clone();
-					nextState.issueSafe(playerAction);
-					nextState.issueSafe(oppAction);
-					skippedFrames += ForwardModel.forward(nextState); //advances the state up to the next decision point or gameover
-					// (don't need to call planner.learn() here because it happens inside 'act'
-					planningState = nextState;
-	
-					// updates duration
-					end = new Date(System.currentTimeMillis());
-					elapsed = end.getTime() - begin.getTime();
-				}
-				logger.debug("Skipped {} frames. Decision interval={}", skippedFrames, decisionInterval);
-				skippedFrames = 0;
-			}
-
-			// if reached a gameover or timeout, let learners finish & prepare planners for the new initial state
-			if(planningState.gameover() || planningState.getTime() >= maxCycles) {
-				logger.debug("Planning reached gameover({}), winner: {}", planningState.getTime(), planningState.winner());
-				planner.finish(planningState.winner());
-				planningOpponent.finish(planningState.winner());
-				
-				//transfers the weights from the planner to the learner
-				learner.copyWeights(planner.getWeights()); 
-				
-				// resets eligibility of the planners for the next iteration
-				planner.clearEligibility();	
-				planningOpponent.clearEligibility();
-				planningState = null;	//resets the planning state to restart planning from the received game state
-			}
-			
-		} // end while (timeAvailable)
+		// the actions memoized for the previous root are unlikely to be asked again
+		getWorker().clearActionCache();
+		
+		if (planningThreads > 1) {
+			parallelPlanning(gs, player, deadline);
+		}
+		else {
+			getWorker().plan(gs, player, deadline);
+		}
+		
+		if (metrics != null) {
+			metrics.increment(PlanningMetrics.Counter.PLANNING_CALLS);
+			metrics.record(PlanningMetrics.Timer.PLANNING, System.nanoTime() - begin);
+		}
 		
 		logger.debug("Planning for player {} at frame #{} looked up to frame {} and took {}ms",
 			player, gs.getTime(), 
-			planningState == null ? "gameover" : planningState.getTime(), 
-			end.getTime() - begin.getTime()
+			worker == null || worker.planningState == null ? "gameover" : worker.planningState.getTime(), 
+			(System.nanoTime() - begin) / 1000000
 		);
 	}
 	
-
 	/**
-	 * Returns an action that the AI with the given name would perform for the given
-	 * state
-	 * 
-	 * @param state
+	 * Root-parallel planning: each worker simulates episodes from its own copy of the state
+	 * with private copies of the planners, which start from the current weights. 
+	 * At the deadline, the weight changes of all workers are merged (averaged or summed)
+	 * into the planners and transferred to the learner.
+	 * In hogwild mode, the workers' planners share the weights of the planners instead, 
+	 * so that every update is immediately seen by all workers and no merge is needed.
+	 * @param gs
 	 * @param player
-	 * @return
+	 * @param deadline as in {@link System#nanoTime()}
 	 */
-	private PlayerAction abstractionToAction(String name, GameState state, int player) {
-		logger.trace(
-			String.format("Translating action of %s for player %d at time %d", 
-				name, player, state.getTime()
-			));
-
-		AI abstraction = abstractions.get(name);
-
-		PlayerAction action = null;
+	private void parallelPlanning(GameState gs, int player, long deadline) {
+		boolean hogwild = mergeMode == MergeMode.HOGWILD;
+		
+		// (re)creates the workers if needed, e.g. if the planners' weights were reshaped 
+		if (parallelWorkers == null || (hogwild && !parallelWorkers[0].planner.sharesWeightsWith(planner))) {
+			createParallelWorkers();
+		}
+		
+		if (!hogwild) {
+			plannerReference = planner.snapshotWeights(plannerReference);
+			opponentReference = planningOpponent.snapshotWeights(opponentReference);
+		}
+		
+		List<Callable<Void>> tasks = new ArrayList<>(parallelWorkers.length);
+		for (PlanningWorker parallelWorker : parallelWorkers) {
+			parallelWorker.clearActionCache();
+			if (!hogwild) {
+				parallelWorker.planner.copyWeights(planner);
+				parallelWorker.planningOpponent.copyWeights(planningOpponent);
+			}
+			
+			GameState root = gs.clone(); // clones here, so workers don't read the same object
+			tasks.add(() -> {
+				parallelWorker.plan(root, player, deadline);
+				return null;
+			});
+		}
+		
 		try {
-			action = abstraction.clone().getAction(player, state);
-		} catch (Exception e) {
-			logger.error("Abstraction '" + abstraction + "' failed to return an action. Filling w/ nones.", e);
-			action.fillWithNones(state, player, 1);
+			for (Future<Void> result : planningExecutor.invokeAll(tasks)) {
+				result.get(); // surfaces exceptions thrown by the workers
+			}
+		} catch (InterruptedException e) {
+			logger.error("Interrupted while waiting for planning workers", e);
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			logger.error("A planning worker failed", e.getCause());
 		}
-
-		logger.trace("Issuing action " + action);
-
-		if (!action.integrityCheck()) {
-			logger.error(String.format("Illegal action attempted by %s at time %d for player %d", name, state.getTime(),
-					player));
+		
+		if (!hogwild) {
+			double scale = mergeMode == MergeMode.AVERAGE ? 1.0 / parallelWorkers.length : 1.0;
+			for (PlanningWorker parallelWorker : parallelWorkers) {
+				planner.mergeWeights(parallelWorker.planner, plannerReference, scale);
+				planningOpponent.mergeWeights(parallelWorker.planningOpponent, opponentReference, scale);
+			}
 		}
-
-		return action;
+		
+		//transfers the weights from the planner to the learner
+		learner.copyWeights(planner);
+	}
+	
+	/**
+	 * Returns the worker that plans with planner and planningOpponent 
+	 * (created on first use, as the planners might be replaced after construction)
+	 * @return
+	 */
+	private PlanningWorker getWorker() {
+		if (worker == null) {
+			worker = new PlanningWorker(planner, planningOpponent, abstractions, learner, decisionInterval, maxCycles);
+			worker.setMetrics(metrics);
+			worker.setActionCacheCapacity(actionCacheCapacity);
+		}
+		return worker;
+	}
+	
+	/**
+	 * Returns the ponderer, which plans with its own worker (created on first use)
+	 * @return
+	 */
+	private Ponderer getPonderer() {
+		if (ponderer == null) {
+			PlanningWorker ponderWorker = createPrivateWorker(false);
+			ponderWorker.setMetrics(null); // pondering is not measured
+			ponderer = new Ponderer(ponderWorker);
+		}
+		return ponderer;
 	}
+	
+	/**
+	 * Creates a worker with its own planners, reward models and portfolio 
+	 * (abstractions keep internal state, e.g. for pathfinding), so that it can plan
+	 * concurrently with the other workers
+	 * @param shareWeights whether the worker's planners share the weights of planner and planningOpponent 
+	 * (otherwise they receive copies)
+	 * @return
+	 */
+	private PlanningWorker createPrivateWorker(boolean shareWeights) {
+		Set<String> actionNames = new LinkedHashSet<>(planner.getActions());
+		actionNames.addAll(planningOpponent.getActions());
+		actionNames.addAll(learner.getActions());
+		
+		LinearSarsaLambda workerPlanner, workerOpponent;
+		if (shareWeights) {
+			workerPlanner = planner.cloneSharingWeights();
+			workerOpponent = planningOpponent.cloneSharingWeights();
+		}
+		else {
+			workerPlanner = planner.cloneExceptEligibility();
+			workerOpponent = planningOpponent.cloneExceptEligibility();
+		}
+		
+		// reward models may keep state, so each copy receives its own
+		if (config != null) {
+			workerPlanner.setRewardModel(RewardModelFactory.getRewardModel(config.getProperty("rewards"), maxCycles));
+			workerOpponent.setRewardModel(RewardModelFactory.getRewardModel(config.getProperty("rewards"), maxCycles));
+		}
+		
+		PlanningWorker privateWorker = new PlanningWorker(
+			workerPlanner, workerOpponent, 
+			PortfolioManager.getPortfolio(types, new ArrayList<>(actionNames)), 
+			null, decisionInterval, maxCycles
+		);
+		privateWorker.setMetrics(metrics);
+		privateWorker.setActionCacheCapacity(actionCacheCapacity);
+		return privateWorker;
+	}
+	
+	/**
+	 * Creates the workers for root-parallel planning (see {@link #createPrivateWorker(boolean)})
+	 */
+	private void createParallelWorkers() {
+		parallelWorkers = new PlanningWorker[planningThreads];
+		for (int i = 0; i < planningThreads; i++) {
+			parallelWorkers[i] = createPrivateWorker(mergeMode == MergeMode.HOGWILD);
+		}
+		
+		if (planningExecutor == null) {
+			planningExecutor = Executors.newFixedThreadPool(planningThreads, runnable -> {
+				Thread thread = new Thread(runnable, "planning-worker");
+				thread.setDaemon(true); // does not prevent the JVM from exiting
+				return thread;
+			});
+		}
+	}
+	
 
 	/*
 	 * Returns the value of the state described by the given feature vector.
@@ -489,6 +693,8 @@ public class SarsaSearch extends AI {
     	for(AI ai : abstractions.values()){
     		ai.reset(utt);
     	}
+    	types = utt;
+    	parallelWorkers = null; //they'll be recreated with the new types
     	
     	reset();
     	
@@ -502,7 +708,19 @@ public class SarsaSearch extends AI {
     	for(AI ai : abstractions.values()){
     		ai.reset();
     	}
-    	choices = new ArrayList<>(); //resets the list of choices 
+    	if (parallelWorkers != null) {
+    		for (PlanningWorker parallelWorker : parallelWorkers) {
+    			for(AI ai : parallelWorker.abstractions.values()){
+    				ai.reset();
+    			}
+    		}
+    	}
+    	if (ponderer != null) {
+    		// a new ponderer is created with the current planners (e.g. if they were reshaped)
+    		ponderer.close();
+    		ponderer = null;
+    	}
+    	choices = new ChoiceLog(); //resets the list of choices 
     }
 
 	@Override
@@ -1,12 +1,7 @@
 package tdsearch;
 
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -24,6 +19,9 @@ import reward.VictoryOnly;
 import rts.GameState;
 import rts.PlayerAction;
 import rts.units.UnitTypeTable;
+import utils.LinearKernels;
+import utils.MathHelper;
+import utils.WeightFile;
 
 public class TDSearch extends AI {
 	
@@ -57,6 +55,12 @@ public class TDSearch extends AI {
 	 */
 	protected int timeBudget;
 	
+	/**
+	 * Decides whether each simulated step fits in the time budget 
+	 * (learns the cost of the steps across calls)
+	 */
+	protected DeadlineController deadlineController = new DeadlineController();
+	
 	/**
 	 * Weight vector for state-value predictor
 	 */
@@ -220,34 +224,21 @@ public class TDSearch extends AI {
 	}
 	
 	/**
-	 * Saves weights to a binary file
+	 * Saves weights to a binary file (see {@link WeightFile})
 	 * @param path
 	 * @throws IOException 
 	 */
 	public void saveWeights(String path) throws IOException {
-		FileOutputStream fos = new FileOutputStream(path);
-        ObjectOutputStream oos = new ObjectOutputStream(fos);
-        oos.writeObject(weights);
-        oos.close();
-        fos.close();
+		WeightFile.stateValue(featureExtractor, weights).write(path);
 	}
 	
 	/**
-	 * Load weights from a binary file
+	 * Load weights from a binary file (see {@link WeightFile})
 	 * @param path
 	 * @throws IOException
 	 */
 	public void loadWeights(String path) throws IOException {
-		FileInputStream fis = new FileInputStream(path);
-        ObjectInputStream ois = new ObjectInputStream(fis);
-        try {
-        	weights = (double[]) ois.readObject();
-		} catch (ClassNotFoundException e) {
-			System.err.println("Error while attempting to load weights.");
-			e.printStackTrace();
-		}
-        ois.close();
-        fis.close();
+		weights = WeightFile.read(path).row(0);
 	}
 
 	@Override
@@ -262,19 +253,16 @@ public class TDSearch extends AI {
 		}
 		
 		
-		Date begin = new Date(System.currentTimeMillis());
-		Date end;
-    	int planningBudget =  (int) (.8 * timeBudget); //80% of budget to planning
-    	long duration = 0;
+		deadlineController.setDeadline(deadlineController.deadlineFor(timeBudget * 1000000L, SarsaSearch.PLANNING_RESERVE));
     	
-		while (duration < planningBudget) { // while time available
+		while (deadlineController.fitsStep()) { // while time available
 			// the vector of eligibility traces is initialized to zero (thanks, java)
 			double[] eligibility = new double[weights.length];
 			
 			GameState state = gs.clone();
 			PlayerAction action = epsilonGreedy(state, player);
 			
-			while (!state.gameover() && duration < planningBudget) { // go until game over or time is out
+			while (!state.gameover() && deadlineController.startStep()) { // go until game over or time is out
 				
 				// the features of this state
 				double[] features = featureExtractor.extractFeatures(state, player);
@@ -289,21 +277,16 @@ public class TDSearch extends AI {
 				double tdError = tdTarget(nextState, player) - linearCombination(features,  weights);
 				
 				// weight vector update
-				for(int i = 0; i < weights.length; i++) {
-					weights[i] += alpha * tdError * eligibility[i];	
-				}
+				LinearKernels.get().axpy(alpha * tdError, eligibility, weights);
 				
-				// eligibility vector update
-				for(int i = 0; i < eligibility.length; i++) {
-					eligibility[i] = eligibility[i] * lambda + features[i];
-				}
+				// eligibility vector update (e = e * lambda + f)
+				LinearKernels.get().scale(lambda, eligibility);
+				LinearKernels.get().axpy(1, features, eligibility);
 				
 				state = nextState; 
 				action = epsilonGreedy(state, player);
 				
-				// updates duration 
-				end = new Date(System.currentTimeMillis());
-				duration = end.getTime() - begin.getTime();
+				deadlineController.endStep();
 			}
 			
 		} //end while (timeAvailable)
@@ -403,13 +386,7 @@ public class TDSearch extends AI {
 	 * @return
 	 */
 	protected double linearCombination(double[] features, double[] weights) {
-		assert features.length == weights.length;
-		
-		double value = 0;
-		for(int i = 0; i < features.length; i++) {
-			value += features[i] * weights[i];
-		}
-		return value;
+		return MathHelper.dotProduct(features, weights);
 	}
 	
 	/**
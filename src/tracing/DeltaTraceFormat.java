@@ -0,0 +1,127 @@
+package tracing;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import org.jdom.JDOMException;
+import org.jdom.input.SAXBuilder;
+
+import rts.UnitAction;
+import rts.units.Unit;
+import rts.units.UnitTypeTable;
+import util.XMLWriter;
+
+/**
+ * Layout of delta-encoded traces (written by {@link DeltaTraceSink}, read by {@link DeltaTraceReader}).
+ * The file is gzipped and has:
+ * <pre>
+ * magic "TDST" | version (int)
+ * | unit type table: length (int), UTF-8 bytes of its XML (as in zipped traces; absent in version 1)
+ * | initial map: width, height (ints) | walls: count, cell indexes (ints)
+ * | players: count, (id, resources) (ints)
+ * | frames, each one (the initial units are births of the first frame):
+ *   time (int) | resources: count (byte), (player (byte), resources (int))
+ *   | births: count (int), units | deaths: count (int), ids (longs)
+ *   | changes: count (int), (id (long), flags (byte), [x, y (shorts)] [hp (int)] [resources (int)])
+ *   | actions: count (int), (unit id (long), action)
+ * | {@link #END_OF_TRACE} (int)
+ * </pre>
+ * where a unit is id (long), player (byte), type name (UTF), x, y (shorts), resources, hp (ints)
+ * and an action is type (byte), parameter (int), followed by x, y (ints) for attacks
+ * and the unit type name (UTF) for productions.
+ *
+ * @author artavares
+ *
+ */
+class DeltaTraceFormat {
+
+	static final byte[] MAGIC = {'T', 'D', 'S', 'T'};
+
+	static final int VERSION = 2;
+
+	/**
+	 * The first version with the unit type table in the header
+	 */
+	static final int VERSION_WITH_TYPES = 2;
+
+	/**
+	 * Written in place of the time of a frame after the last one
+	 */
+	static final int END_OF_TRACE = -1;
+
+	/**
+	 * Flags of unit changes
+	 */
+	static final int POSITION = 1, HIT_POINTS = 2, RESOURCES = 4;
+
+	static void writeUnitTypeTable(DataOutputStream out, UnitTypeTable types) throws IOException {
+		StringWriter xml = new StringWriter();
+		XMLWriter writer = new XMLWriter(xml);
+		types.toxml(writer);
+		writer.flush();
+
+		byte[] bytes = xml.toString().getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	static UnitTypeTable readUnitTypeTable(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		try {
+			return UnitTypeTable.fromXML(new SAXBuilder().build(new ByteArrayInputStream(bytes)).getRootElement());
+		} catch (JDOMException e) {
+			throw new IOException("Invalid unit type table in delta trace.", e);
+		}
+	}
+
+	static void writeUnit(DataOutputStream out, Unit unit) throws IOException {
+		out.writeLong(unit.getID());
+		out.writeByte(unit.getPlayer());
+		out.writeUTF(unit.getType().name);
+		out.writeShort(unit.getX());
+		out.writeShort(unit.getY());
+		out.writeInt(unit.getResources());
+		out.writeInt(unit.getHitPoints());
+	}
+
+	static Unit readUnit(DataInputStream in, UnitTypeTable types) throws IOException {
+		long id = in.readLong();
+		int player = in.readByte();
+		String typeName = in.readUTF();
+		int x = in.readShort(), y = in.readShort();
+		int resources = in.readInt();
+		Unit unit = new Unit(id, player, types.getUnitType(typeName), x, y, resources);
+		unit.setHitPoints(in.readInt());
+		return unit;
+	}
+
+	static void writeAction(DataOutputStream out, UnitAction action) throws IOException {
+		out.writeByte(action.getType());
+		out.writeInt(action.getDirection()); // the parameter: direction or duration, depending on the type
+		if (action.getType() == UnitAction.TYPE_ATTACK_LOCATION) {
+			out.writeInt(action.getLocationX());
+			out.writeInt(action.getLocationY());
+		}
+		else if (action.getType() == UnitAction.TYPE_PRODUCE) {
+			out.writeUTF(action.getUnitType().name);
+		}
+	}
+
+	static UnitAction readAction(DataInputStream in, UnitTypeTable types) throws IOException {
+		int type = in.readByte();
+		int parameter = in.readInt();
+		if (type == UnitAction.TYPE_ATTACK_LOCATION) {
+			int x = in.readInt();
+			return new UnitAction(type, x, in.readInt());
+		}
+		else if (type == UnitAction.TYPE_PRODUCE) {
+			return new UnitAction(type, parameter, types.getUnitType(in.readUTF()));
+		}
+		return new UnitAction(type, parameter);
+	}
+}
@@ -0,0 +1,291 @@
+package tracing;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import rts.PhysicalGameState;
+import rts.Player;
+import rts.Trace;
+import rts.TraceEntry;
+import rts.UnitAction;
+import rts.units.Unit;
+import rts.units.UnitTypeTable;
+
+/**
+ * Reads traces written by {@link DeltaTraceSink} and reconstructs the
+ * physical game state of any frame on demand.
+ *
+ * Only the deltas are kept in memory. States are rebuilt by applying the deltas
+ * from the last reconstructed frame (or from the start, when going backwards),
+ * so traversing the frames in order costs one delta per frame.
+ *
+ * The unit type table of the match is read from the trace (traces of version 1 do not
+ * have it, so the one used in the match must be given).
+ *
+ * @author artavares
+ *
+ */
+public class DeltaTraceReader {
+
+	/**
+	 * The changes of a frame w.r.t. the previous one
+	 */
+	private static class Frame {
+		int time;
+		int[] resourcePlayers, resources;
+		List<Unit> births;
+		long[] deaths;
+		long[] changedIDs;
+		int[] changeFlags;
+		int[][] changes; // x, y, hp, resources (only the flagged ones are meaningful)
+		long[] actionUnitIDs;
+		UnitAction[] actions;
+	}
+
+	private UnitTypeTable types;
+
+	/**
+	 * The map without units (they are births of the first frame)
+	 */
+	private PhysicalGameState initialState;
+
+	private List<Frame> frames;
+
+	/**
+	 * The last reconstructed state and its frame index (-1 if none)
+	 */
+	private PhysicalGameState current;
+	private int currentFrame;
+
+	/**
+	 * Reads the trace at the given path, with the unit type table recorded in it
+	 * @param path
+	 * @throws IOException
+	 */
+	public DeltaTraceReader(String path) throws IOException {
+		this(path, null);
+	}
+
+	/**
+	 * Reads the trace at the given path
+	 * @param path
+	 * @param types replaces the unit type table recorded in the trace (null to use the recorded one)
+	 * @throws IOException
+	 */
+	public DeltaTraceReader(String path, UnitTypeTable types) throws IOException {
+		this.types = types;
+		frames = new ArrayList<>();
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(path))))) {
+			byte[] magic = new byte[DeltaTraceFormat.MAGIC.length];
+			in.readFully(magic);
+			if (!Arrays.equals(magic, DeltaTraceFormat.MAGIC)) {
+				throw new IOException("'" + path + "' is not a delta trace.");
+			}
+			int version = in.readInt();
+			if (version < 1 || version > DeltaTraceFormat.VERSION) {
+				throw new IOException(String.format("Unsupported version %d of delta trace '%s'.", version, path));
+			}
+
+			if (version >= DeltaTraceFormat.VERSION_WITH_TYPES) {
+				UnitTypeTable recorded = DeltaTraceFormat.readUnitTypeTable(in);
+				if (this.types == null) {
+					this.types = recorded;
+				}
+			}
+			else if (this.types == null) {
+				throw new IOException(String.format(
+					"Delta trace '%s' does not record its unit type table, the one used in the match must be given.", path
+				));
+			}
+
+			readMap(in);
+			for (int time = in.readInt(); time != DeltaTraceFormat.END_OF_TRACE; time = in.readInt()) {
+				frames.add(readFrame(in, time));
+			}
+		}
+		currentFrame = -1;
+	}
+
+	private void readMap(DataInputStream in) throws IOException {
+		int width = in.readInt(), height = in.readInt();
+		initialState = new PhysicalGameState(width, height);
+
+		int numWalls = in.readInt();
+		for (int i = 0; i < numWalls; i++) {
+			int cell = in.readInt();
+			initialState.setTerrain(cell % width, cell / width, PhysicalGameState.TERRAIN_WALL);
+		}
+
+		int numPlayers = in.readInt();
+		for (int p = 0; p < numPlayers; p++) {
+			int id = in.readInt();
+			initialState.addPlayer(new Player(id, in.readInt()));
+		}
+	}
+
+	private Frame readFrame(DataInputStream in, int time) throws IOException {
+		Frame frame = new Frame();
+		frame.time = time;
+
+		int numResources = in.readByte();
+		frame.resourcePlayers = new int[numResources];
+		frame.resources = new int[numResources];
+		for (int i = 0; i < numResources; i++) {
+			frame.resourcePlayers[i] = in.readByte();
+			frame.resources[i] = in.readInt();
+		}
+
+		int numBirths = in.readInt();
+		frame.births = new ArrayList<>(numBirths);
+		for (int i = 0; i < numBirths; i++) {
+			frame.births.add(DeltaTraceFormat.readUnit(in, types));
+		}
+
+		frame.deaths = new long[in.readInt()];
+		for (int i = 0; i < frame.deaths.length; i++) {
+			frame.deaths[i] = in.readLong();
+		}
+
+		int numChanges = in.readInt();
+		frame.changedIDs = new long[numChanges];
+		frame.changeFlags = new int[numChanges];
+		frame.changes = new int[numChanges][4];
+		for (int i = 0; i < numChanges; i++) {
+			frame.changedIDs[i] = in.readLong();
+			int flags = frame.changeFlags[i] = in.readByte();
+			if ((flags & DeltaTraceFormat.POSITION) != 0) {
+				frame.changes[i][0] = in.readShort();
+				frame.changes[i][1] = in.readShort();
+			}
+			if ((flags & DeltaTraceFormat.HIT_POINTS) != 0) {
+				frame.changes[i][2] = in.readInt();
+			}
+			if ((flags & DeltaTraceFormat.RESOURCES) != 0) {
+				frame.changes[i][3] = in.readInt();
+			}
+		}
+
+		int numActions = in.readInt();
+		frame.actionUnitIDs = new long[numActions];
+		frame.actions = new UnitAction[numActions];
+		for (int i = 0; i < numActions; i++) {
+			frame.actionUnitIDs[i] = in.readLong();
+			frame.actions[i] = DeltaTraceFormat.readAction(in, types);
+		}
+		return frame;
+	}
+
+	/**
+	 * Returns the unit type table of the trace
+	 * @return
+	 */
+	public UnitTypeTable getUnitTypeTable() {
+		return types;
+	}
+
+	/**
+	 * Returns the number of recorded frames (including the final state)
+	 * @return
+	 */
+	public int getNumFrames() {
+		return frames.size();
+	}
+
+	/**
+	 * Returns the game time of the given frame
+	 * @param frameIndex
+	 * @return
+	 */
+	public int getTime(int frameIndex) {
+		return frames.get(frameIndex).time;
+	}
+
+	/**
+	 * Returns (a copy of) the physical game state at the given frame
+	 * @param frameIndex
+	 * @return
+	 */
+	public PhysicalGameState getPhysicalGameState(int frameIndex) {
+		if (frameIndex < currentFrame || current == null) {
+			current = initialState.clone();
+			currentFrame = -1;
+		}
+		while (currentFrame < frameIndex) {
+			apply(frames.get(++currentFrame), current);
+		}
+		return current.clone();
+	}
+
+	/**
+	 * Builds a regular (full-state) trace, e.g. to visualize or to convert it to the zip format
+	 * @return
+	 */
+	public Trace toTrace() {
+		Trace trace = new Trace(types);
+		PhysicalGameState pgs = initialState.clone();
+		for (Frame frame : frames) {
+			apply(frame, pgs);
+
+			PhysicalGameState snapshot = pgs.clone();
+			TraceEntry entry = new TraceEntry(snapshot, frame.time);
+			for (int i = 0; i < frame.actions.length; i++) {
+				entry.addUnitAction(snapshot.getUnit(frame.actionUnitIDs[i]), frame.actions[i]);
+			}
+			trace.addEntry(entry);
+		}
+		return trace;
+	}
+
+	/**
+	 * Applies the changes of a frame to the given state
+	 * @param frame
+	 * @param pgs
+	 */
+	private void apply(Frame frame, PhysicalGameState pgs) {
+		for (int i = 0; i < frame.resourcePlayers.length; i++) {
+			pgs.getPlayer(frame.resourcePlayers[i]).setResources(frame.resources[i]);
+		}
+		for (long id : frame.deaths) {
+			pgs.removeUnit(pgs.getUnit(id));
+		}
+		for (Unit unit : frame.births) {
+			pgs.addUnit(unit.clone());
+		}
+		for (int i = 0; i < frame.changedIDs.length; i++) {
+			Unit unit = pgs.getUnit(frame.changedIDs[i]);
+			int flags = frame.changeFlags[i];
+			int[] change = frame.changes[i];
+			if ((flags & DeltaTraceFormat.POSITION) != 0) {
+				unit.setX(change[0]);
+				unit.setY(change[1]);
+			}
+			if ((flags & DeltaTraceFormat.HIT_POINTS) != 0) {
+				unit.setHitPoints(change[2]);
+			}
+			if ((flags & DeltaTraceFormat.RESOURCES) != 0) {
+				unit.setResources(change[3]);
+			}
+		}
+	}
+
+	/**
+	 * Converts a delta trace into a zipped microRTS trace (e.g. for the trace visualizer),
+	 * with the unit type table recorded in the trace
+	 * @param args 0 is the delta trace, 1 is the output .zip
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.err.println("Usage: DeltaTraceReader input.dtrace output.zip");
+			System.exit(1);
+		}
+		new DeltaTraceReader(args[0]).toTrace().toZip(args[1]);
+	}
+}
@@ -0,0 +1,257 @@
+package tracing;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.logging.log4j.LogManager;
+
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.Player;
+import rts.PlayerAction;
+import rts.UnitAction;
+import rts.units.Unit;
+import rts.units.UnitTypeTable;
+import util.Pair;
+
+/**
+ * Writes a compact trace: the initial map once and then, for each frame,
+ * only what changed (unit moves, hit points, births, deaths, player resources)
+ * and the issued actions (see {@link DeltaTraceFormat} for the layout).
+ *
+ * No game state is cloned: the sink keeps only the last known position,
+ * hit points and resources of each unit. States are reconstructed by {@link DeltaTraceReader}.
+ *
+ * @author artavares
+ *
+ */
+public class DeltaTraceSink implements TraceSink {
+
+	private DataOutputStream out;
+
+	private String output;
+
+	private UnitTypeTable types;
+
+	/**
+	 * Last recorded x, y, hit points and resources of each unit, plus the
+	 * number of the last frame where the unit was seen (to detect deaths)
+	 */
+	private Map<Long, int[]> lastUnits;
+
+	private int[] lastResources;
+
+	private int frameNumber;
+
+	private boolean started, ended;
+
+	private List<Unit> births;
+	private List<Long> deaths;
+	private List<Unit> changed;
+	private List<Integer> changeFlags;
+
+	/**
+	 * Creates a sink that writes the trace to the given path
+	 * (.dtrace is appended if missing; missing parent directories are created)
+	 * @param types the unit type table of the match (recorded in the header)
+	 * @param output
+	 * @throws IOException
+	 */
+	public DeltaTraceSink(UnitTypeTable types, String output) throws IOException {
+		this.types = types;
+		this.output = TraceSinkFactory.outputPath(output, TraceSinkFactory.DELTA_EXTENSION);
+		out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(this.output))));
+		lastUnits = new HashMap<>();
+		births = new ArrayList<>();
+		deaths = new ArrayList<>();
+		changed = new ArrayList<>();
+		changeFlags = new ArrayList<>();
+	}
+
+	@Override
+	public void frame(GameState state, PlayerAction player1Action, PlayerAction player2Action) throws IOException {
+		writeFrame(state);
+
+		int numActions = player1Action.getActions().size() + player2Action.getActions().size();
+		out.writeInt(numActions);
+		for (PlayerAction playerAction : new PlayerAction[] {player1Action, player2Action}) {
+			for (Pair<Unit, UnitAction> unitAction : playerAction.getActions()) {
+				out.writeLong(unitAction.m_a.getID());
+				DeltaTraceFormat.writeAction(out, unitAction.m_b);
+			}
+		}
+	}
+
+	@Override
+	public void end(GameState state) throws IOException {
+		if (ended) return;
+		ended = true;
+
+		try {
+			writeFrame(state);
+			out.writeInt(0); // no actions at the final state
+			out.writeInt(DeltaTraceFormat.END_OF_TRACE);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Closes and deletes the incomplete trace
+	 */
+	@Override
+	public void abort() {
+		if (ended) return;
+		ended = true;
+
+		try {
+			out.close();
+		} catch (IOException e) {
+			LogManager.getRootLogger().error("Error while closing the trace " + output, e);
+		}
+		if (!new File(output).delete()) {
+			LogManager.getRootLogger().warn("Unable to delete the incomplete trace {}", output);
+		}
+	}
+
+	/**
+	 * Writes the time and the changes of the state w.r.t. the previous frame
+	 * (or the whole map, in the first frame)
+	 * @param state
+	 * @throws IOException
+	 */
+	private void writeFrame(GameState state) throws IOException {
+		PhysicalGameState pgs = state.getPhysicalGameState();
+		if (!started) {
+			writeHeader(pgs);
+			started = true;
+		}
+		frameNumber++;
+
+		out.writeInt(state.getTime());
+
+		// player resources
+		int changedPlayers = 0;
+		for (int p = 0; p < lastResources.length; p++) {
+			if (pgs.getPlayer(p).getResources() != lastResources[p]) changedPlayers++;
+		}
+		out.writeByte(changedPlayers);
+		for (int p = 0; p < lastResources.length; p++) {
+			int resources = pgs.getPlayer(p).getResources();
+			if (resources != lastResources[p]) {
+				out.writeByte(p);
+				out.writeInt(resources);
+				lastResources[p] = resources;
+			}
+		}
+
+		// units
+		births.clear();
+		deaths.clear();
+		changed.clear();
+		changeFlags.clear();
+		for (Unit unit : pgs.getUnits()) {
+			int[] last = lastUnits.get(unit.getID());
+			if (last == null) {
+				births.add(unit);
+				lastUnits.put(unit.getID(), new int[] {unit.getX(), unit.getY(), unit.getHitPoints(), unit.getResources(), frameNumber});
+				continue;
+			}
+
+			int flags = 0;
+			if (unit.getX() != last[0] || unit.getY() != last[1]) flags |= DeltaTraceFormat.POSITION;
+			if (unit.getHitPoints() != last[2]) flags |= DeltaTraceFormat.HIT_POINTS;
+			if (unit.getResources() != last[3]) flags |= DeltaTraceFormat.RESOURCES;
+			if (flags != 0) {
+				changed.add(unit);
+				changeFlags.add(flags);
+				last[0] = unit.getX();
+				last[1] = unit.getY();
+				last[2] = unit.getHitPoints();
+				last[3] = unit.getResources();
+			}
+			last[4] = frameNumber;
+		}
+		for (Iterator<Map.Entry<Long, int[]>> it = lastUnits.entrySet().iterator(); it.hasNext(); ) {
+			Map.Entry<Long, int[]> entry = it.next();
+			if (entry.getValue()[4] != frameNumber) {
+				deaths.add(entry.getKey());
+				it.remove();
+			}
+		}
+
+		out.writeInt(births.size());
+		for (Unit unit : births) {
+			DeltaTraceFormat.writeUnit(out, unit);
+		}
+		out.writeInt(deaths.size());
+		for (long id : deaths) {
+			out.writeLong(id);
+		}
+		out.writeInt(changed.size());
+		for (int i = 0; i < changed.size(); i++) {
+			Unit unit = changed.get(i);
+			int flags = changeFlags.get(i);
+			out.writeLong(unit.getID());
+			out.writeByte(flags);
+			if ((flags & DeltaTraceFormat.POSITION) != 0) {
+				out.writeShort(unit.getX());
+				out.writeShort(unit.getY());
+			}
+			if ((flags & DeltaTraceFormat.HIT_POINTS) != 0) {
+				out.writeInt(unit.getHitPoints());
+			}
+			if ((flags & DeltaTraceFormat.RESOURCES) != 0) {
+				out.writeInt(unit.getResources());
+			}
+		}
+	}
+
+	/**
+	 * Writes the map (size, walls and players).
+	 * The initial units are written as births of the first frame.
+	 * @param pgs
+	 * @throws IOException
+	 */
+	private void writeHeader(PhysicalGameState pgs) throws IOException {
+		out.write(DeltaTraceFormat.MAGIC);
+		out.writeInt(DeltaTraceFormat.VERSION);
+		DeltaTraceFormat.writeUnitTypeTable(out, types);
+
+		out.writeInt(pgs.getWidth());
+		out.writeInt(pgs.getHeight());
+
+		List<Integer> walls = new ArrayList<>();
+		for (int y = 0; y < pgs.getHeight(); y++) {
+			for (int x = 0; x < pgs.getWidth(); x++) {
+				if (pgs.getTerrain(x, y) == PhysicalGameState.TERRAIN_WALL) {
+					walls.add(x + y * pgs.getWidth());
+				}
+			}
+		}
+		out.writeInt(walls.size());
+		for (int cell : walls) {
+			out.writeInt(cell);
+		}
+
+		List<Player> players = pgs.getPlayers();
+		out.writeInt(players.size());
+		lastResources = new int[players.size()];
+		for (int p = 0; p < players.size(); p++) {
+			out.writeInt(players.get(p).getID());
+			out.writeInt(players.get(p).getResources());
+			lastResources[p] = players.get(p).getResources();
+		}
+	}
+
+}
@@ -0,0 +1,63 @@
+package tracing;
+
+import rts.GameState;
+import rts.PlayerAction;
+import rts.Trace;
+import rts.TraceEntry;
+import rts.units.UnitTypeTable;
+
+/**
+ * Keeps the whole trace in memory (one physical game state clone per frame)
+ * and writes it as a zipped microRTS trace at the end of the match
+ * 
+ * @author artavares
+ *
+ */
+public class MemoryTraceSink implements TraceSink {
+	
+	private Trace replay;
+	
+	private String output;
+	
+	/**
+	 * Creates a sink that writes the trace to the given path 
+	 * (.zip is appended if missing; missing parent directories are created)
+	 * @param types
+	 * @param output
+	 */
+	public MemoryTraceSink(UnitTypeTable types, String output) {
+		replay = new Trace(types);
+		this.output = TraceSinkFactory.outputPath(output, "zip");
+	}
+
+	@Override
+	public void frame(GameState state, PlayerAction player1Action, PlayerAction player2Action) {
+		// creates a new trace entry, fills the actions and stores it
+		TraceEntry thisFrame = new TraceEntry(state.getPhysicalGameState().clone(), state.getTime());
+		if (!player1Action.isEmpty()){
+			thisFrame.addPlayerAction(player1Action.clone());
+		}
+		if (!player2Action.isEmpty()) {
+			thisFrame.addPlayerAction(player2Action.clone());
+		}
+		replay.addEntry(thisFrame);
+	}
+
+	@Override
+	public void end(GameState state) {
+		//traces the final state
+		replay.addEntry(new TraceEntry(state.getPhysicalGameState().clone(), state.getTime()));
+		
+		// writes the zipped trace file (much smaller)
+		replay.toZip(output);
+	}
+	
+	/**
+	 * Returns the trace recorded so far
+	 * @return
+	 */
+	public Trace getTrace() {
+		return replay;
+	}
+
+}
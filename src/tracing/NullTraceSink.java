@@ -0,0 +1,35 @@
+package tracing;
+
+import rts.GameState;
+import rts.PlayerAction;
+
+/**
+ * A sink that discards the trace (used when no trace output is requested)
+ * 
+ * @author artavares
+ *
+ */
+public class NullTraceSink implements TraceSink {
+	
+	/**
+	 * The sink is stateless, so a single instance suffices
+	 */
+	public static final NullTraceSink INSTANCE = new NullTraceSink();
+	
+	private NullTraceSink() {
+	}
+
+	@Override
+	public void frame(GameState state, PlayerAction player1Action, PlayerAction player2Action) {
+	}
+
+	@Override
+	public void end(GameState state) {
+	}
+	
+	@Override
+	public boolean isEnabled() {
+		return false;
+	}
+
+}
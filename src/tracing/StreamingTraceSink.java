@@ -0,0 +1,192 @@
+package tracing;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.logging.log4j.LogManager;
+
+import rts.GameState;
+import rts.PlayerAction;
+import rts.Trace;
+import rts.TraceEntry;
+import rts.units.UnitTypeTable;
+import util.XMLWriter;
+
+/**
+ * Writes the trace to a zip file as the match progresses,
+ * in the same format of {@link Trace#toZip(String)} (a game.xml entry),
+ * so that it can be read with {@link Trace#fromZip(String)}.
+ *
+ * Frames are copied in the match thread and written by a background thread.
+ * At most {@link #queueCapacity} frames wait to be written (the match thread
+ * blocks if the writer falls behind), so memory does not grow with the match length.
+ *
+ * @author artavares
+ *
+ */
+public class StreamingTraceSink implements TraceSink {
+
+	public static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+	/**
+	 * Signals the writer that there are no more frames
+	 */
+	private static final TraceEntry END_OF_TRACE = new TraceEntry(null, -1);
+
+	private BlockingQueue<TraceEntry> queue;
+
+	private int queueCapacity;
+
+	private Thread writer;
+
+	/**
+	 * The error that stopped the writer, if any (reported by {@link #end(GameState)})
+	 */
+	private volatile Exception writeError;
+
+	private String output;
+
+	private UnitTypeTable types;
+
+	private boolean ended;
+
+	/**
+	 * Creates a sink that writes the trace to the given path
+	 * (.zip is appended if missing; missing parent directories are created)
+	 * @param types
+	 * @param output
+	 */
+	public StreamingTraceSink(UnitTypeTable types, String output) {
+		this(types, output, DEFAULT_QUEUE_CAPACITY);
+	}
+
+	/**
+	 * Creates a sink with the given maximum number of frames waiting to be written
+	 * @param types
+	 * @param output
+	 * @param queueCapacity
+	 */
+	public StreamingTraceSink(UnitTypeTable types, String output, int queueCapacity) {
+		this.types = types;
+		this.output = TraceSinkFactory.outputPath(output, "zip");
+		this.queueCapacity = queueCapacity;
+		queue = new ArrayBlockingQueue<>(queueCapacity);
+
+		writer = new Thread(this::write, "trace-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	@Override
+	public void frame(GameState state, PlayerAction player1Action, PlayerAction player2Action) throws IOException {
+		TraceEntry thisFrame = new TraceEntry(state.getPhysicalGameState().clone(), state.getTime());
+		if (!player1Action.isEmpty()){
+			thisFrame.addPlayerAction(player1Action.clone());
+		}
+		if (!player2Action.isEmpty()) {
+			thisFrame.addPlayerAction(player2Action.clone());
+		}
+		enqueue(thisFrame);
+	}
+
+	@Override
+	public void end(GameState state) throws IOException {
+		if (ended) return;
+		ended = true;
+
+		enqueue(new TraceEntry(state.getPhysicalGameState().clone(), state.getTime()));
+		enqueue(END_OF_TRACE);
+
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while finishing the trace " + output, e);
+		}
+
+		if (writeError != null) {
+			throw new IOException("Error while writing the trace " + output, writeError);
+		}
+	}
+
+	/**
+	 * Stops the writer and deletes the incomplete trace
+	 */
+	@Override
+	public void abort() {
+		if (ended) return;
+		ended = true;
+
+		// the writer is waiting for frames, so it finishes after the ones in the queue
+		try {
+			enqueue(END_OF_TRACE);
+			writer.join();
+		} catch (IOException | InterruptedException e) {
+			writer.interrupt();
+			Thread.currentThread().interrupt();
+		}
+		if (!new File(output).delete()) {
+			LogManager.getRootLogger().warn("Unable to delete the incomplete trace {}", output);
+		}
+	}
+
+	/**
+	 * Returns the maximum number of frames waiting to be written
+	 * @return
+	 */
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	private void enqueue(TraceEntry entry) throws IOException {
+		try {
+			queue.put(entry);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while recording the trace " + output, e);
+		}
+	}
+
+	/**
+	 * Writes the frames as they arrive (runs in the writer thread).
+	 * The envelope is the same written by {@link Trace#toxml(XMLWriter)}.
+	 */
+	private void write() {
+		try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(output)))) {
+			zip.putNextEntry(new ZipEntry("game.xml"));
+			XMLWriter xml = new XMLWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8));
+
+			xml.tag(Trace.class.getName());
+			types.toxml(xml);
+			xml.tag("entries");
+
+			for (TraceEntry entry = queue.take(); entry != END_OF_TRACE; entry = queue.take()) {
+				entry.toxml(xml);
+			}
+
+			xml.tag("/entries");
+			xml.tag("/" + Trace.class.getName());
+			xml.flush();
+			zip.closeEntry();
+		} catch (Exception e) {
+			writeError = e;
+			LogManager.getRootLogger().error("Error while writing the trace " + output, e);
+
+			// keeps consuming frames so that the match is not blocked
+			try {
+				while (queue.take() != END_OF_TRACE);
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+}
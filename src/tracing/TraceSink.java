@@ -0,0 +1,54 @@
+package tracing;
+
+import java.io.IOException;
+
+import rts.GameState;
+import rts.PlayerAction;
+
+/**
+ * Receives the frames of a match to record its trace (replay).
+ * 
+ * A sink receives the state and the players' actions of every frame 
+ * (before the actions are issued) and then the final state.
+ * Sinks must not keep references to the received objects, which keep changing 
+ * during the match: whatever must be recorded has to be copied.
+ * 
+ * @author artavares
+ *
+ */
+public interface TraceSink {
+	
+	/**
+	 * Records a frame: the state and the actions the players are about to issue
+	 * @param state
+	 * @param player1Action
+	 * @param player2Action
+	 * @throws IOException
+	 */
+	public void frame(GameState state, PlayerAction player1Action, PlayerAction player2Action) throws IOException;
+	
+	/**
+	 * Records the final state of the match and finishes the trace 
+	 * (e.g. writes and closes the output)
+	 * @param state
+	 * @throws IOException
+	 */
+	public void end(GameState state) throws IOException;
+	
+	/**
+	 * Discards the trace of a match that did not finish (e.g. an AI failed), 
+	 * releasing what the sink holds (threads, open files). 
+	 * Does nothing after {@link #end(GameState)}.
+	 */
+	public default void abort() {
+	}
+	
+	/**
+	 * Returns whether this sink records anything 
+	 * (callers can skip the preparation of frames otherwise)
+	 * @return
+	 */
+	public default boolean isEnabled() {
+		return true;
+	}
+}
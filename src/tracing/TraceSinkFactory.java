@@ -0,0 +1,76 @@
+package tracing;
+
+import java.io.File;
+import java.io.IOException;
+
+import rts.units.UnitTypeTable;
+
+public class TraceSinkFactory {
+	
+	/**
+	 * The sink used when no other is specified
+	 */
+	public static final String DEFAULT_SINK = "stream";
+	
+	/**
+	 * Extension of the files written by {@link DeltaTraceSink}
+	 */
+	public static final String DELTA_EXTENSION = "dtrace";
+	
+	/**
+	 * Returns a sink of the given type that writes to the given path, 
+	 * or a {@link NullTraceSink} if the path is null
+	 * @param sinkName
+	 * @param types
+	 * @param output
+	 * @return
+	 * @throws IOException
+	 */
+	public static TraceSink getTraceSink(String sinkName, UnitTypeTable types, String output) throws IOException {
+		if (output == null) {
+			return NullTraceSink.INSTANCE;
+		}
+		
+		if (sinkName.equalsIgnoreCase("memory")) {
+			return new MemoryTraceSink(types, output);
+		}
+		else if (sinkName.equalsIgnoreCase("stream")) {
+			return new StreamingTraceSink(types, output);
+		}
+		else if (sinkName.equalsIgnoreCase("delta")) {
+			return new DeltaTraceSink(types, output);
+		}
+		else {
+			throw new IllegalArgumentException("Trace sink '" + sinkName + "' not found.");
+		}
+	}
+	
+	/**
+	 * Returns the extension of the trace files written by the given sink
+	 * @param sinkName
+	 * @return
+	 */
+	public static String extension(String sinkName) {
+		return sinkName.equalsIgnoreCase("delta") ? "trace." + DELTA_EXTENSION : "trace.zip";
+	}
+	
+	/**
+	 * Ensures that the given path ends with the extension and that its parent directories exist
+	 * @param output
+	 * @param extension (without the dot)
+	 * @return
+	 */
+	static String outputPath(String output, String extension) {
+		// creates missing parent directories if needed
+		File f = new File(output);
+		if (f.getParentFile() != null) {
+			f.getParentFile().mkdirs();
+		}
+		
+		// ensures that the output ends with the extension
+		if (! output.endsWith("." + extension)) {
+			output += "." + extension;
+		}
+		return output;
+	}
+}
@@ -0,0 +1,134 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The choices of an agent in a match (one per frame), run-length encoded:
+ * an agent keeps its choice during the decision interval (and often beyond it),
+ * so each run of equal consecutive choices is stored as an (action, length) pair.
+ * Memory grows with the number of choice changes instead of the number of frames.
+ *
+ * Actions are indexes (e.g. in the learner's action list); names are assigned when reading.
+ *
+ * @author artavares
+ *
+ */
+public class ChoiceLog {
+
+	private int[] actions;
+	
+	private int[] runLengths;
+	
+	private int numRuns;
+	
+	private int numFrames;
+	
+	public ChoiceLog() {
+		actions = new int[16];
+		runLengths = new int[16];
+	}
+	
+	/**
+	 * Records the choice of the next frame
+	 * @param action
+	 */
+	public void record(int action) {
+		addRun(action, 1);
+	}
+	
+	/**
+	 * Appends a run of 'length' frames with the same choice 
+	 * (it extends the last run if the action is the same)
+	 * @param action
+	 * @param length
+	 */
+	public void addRun(int action, int length) {
+		if (numRuns > 0 && actions[numRuns - 1] == action) {
+			runLengths[numRuns - 1] += length;
+		}
+		else {
+			if (numRuns == actions.length) {
+				actions = Arrays.copyOf(actions, 2 * numRuns);
+				runLengths = Arrays.copyOf(runLengths, 2 * numRuns);
+			}
+			actions[numRuns] = action;
+			runLengths[numRuns] = length;
+			numRuns++;
+		}
+		numFrames += length;
+	}
+	
+	/**
+	 * Returns the number of recorded frames
+	 * @return
+	 */
+	public int getNumFrames() {
+		return numFrames;
+	}
+	
+	/**
+	 * Returns the number of runs of equal consecutive choices
+	 * @return
+	 */
+	public int getNumRuns() {
+		return numRuns;
+	}
+	
+	/**
+	 * Returns the action of the given run
+	 * @param run
+	 * @return
+	 */
+	public int getAction(int run) {
+		return actions[run];
+	}
+	
+	/**
+	 * Returns the number of frames of the given run
+	 * @param run
+	 * @return
+	 */
+	public int getRunLength(int run) {
+		return runLengths[run];
+	}
+	
+	/**
+	 * Returns the action chosen at the given frame
+	 * @param frame
+	 * @return
+	 */
+	public int actionAt(int frame) {
+		if (frame < 0 || frame >= numFrames) {
+			throw new IndexOutOfBoundsException("Frame " + frame + " of " + numFrames);
+		}
+		int run = 0;
+		for (int start = runLengths[0]; start <= frame; start += runLengths[++run]);
+		return actions[run];
+	}
+	
+	/**
+	 * Returns the name of the choice of each frame 
+	 * @param actionNames indexed by action (the name of a negative action is null)
+	 * @return
+	 */
+	public List<String> toNames(List<String> actionNames) {
+		List<String> names = new ArrayList<>(numFrames);
+		for (int run = 0; run < numRuns; run++) {
+			String name = actions[run] < 0 ? null : actionNames.get(actions[run]);
+			for (int i = 0; i < runLengths[run]; i++) {
+				names.add(name);
+			}
+		}
+		return names;
+	}
+	
+	/**
+	 * Removes all choices
+	 */
+	public void clear() {
+		numRuns = 0;
+		numFrames = 0;
+	}
+}
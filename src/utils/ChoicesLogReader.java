@@ -0,0 +1,183 @@
+package utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads choices logs written by {@link ChoicesLogWriter}. The layout is (big-endian):
+ * <pre>
+ * magic "TDSC" | version (int) | number of actions (int) | action names (modified UTF-8, as DataOutput.writeUTF)
+ * | matches, each one: match number (int), number of frames (int), number of runs (int), 
+ *   runs: (action (short), length (int))
+ * </pre>
+ * The index file has one (match number (int), offset of the match (long)) pair per match.
+ * Without an index (e.g. if it was lost), the matches are found by scanning the log.
+ * 
+ * analysis/choices.py reads the same format.
+ *
+ * @author artavares
+ *
+ */
+public class ChoicesLogReader {
+
+	static final byte[] MAGIC = {'T', 'D', 'S', 'C'};
+	
+	static final int VERSION = 1;
+
+	private ByteBuffer buffer;
+	
+	private List<String> actionNames;
+	
+	/**
+	 * Offset of each match, by match number (in file order)
+	 */
+	private Map<Integer, Integer> offsets;
+	
+	/**
+	 * Reads the choices log at the given path (and its index, if present)
+	 * @param path
+	 * @throws IOException
+	 */
+	public ChoicesLogReader(String path) throws IOException {
+		buffer = ByteBuffer.wrap(Files.readAllBytes(Paths.get(path)));
+		
+		byte[] magic = new byte[MAGIC.length];
+		buffer.get(magic);
+		if (!Arrays.equals(magic, MAGIC)) {
+			throw new IOException("'" + path + "' is not a choices log.");
+		}
+		int version = buffer.getInt();
+		if (version != VERSION) {
+			throw new IOException(String.format("Unsupported version %d of choices log '%s'.", version, path));
+		}
+		int numActions = buffer.getInt();
+		actionNames = new ArrayList<>(numActions);
+		for (int i = 0; i < numActions; i++) {
+			actionNames.add(readUTF());
+		}
+		
+		offsets = new LinkedHashMap<>();
+		File indexFile = new File(path + "." + ChoicesLogWriter.INDEX_EXTENSION);
+		if (indexFile.exists()) {
+			ByteBuffer index = ByteBuffer.wrap(Files.readAllBytes(indexFile.toPath()));
+			while (index.remaining() >= Integer.BYTES + Long.BYTES) {
+				int matchNumber = index.getInt();
+				long offset = index.getLong();
+				// ignores entries of matches that did not (fully) reach the log (e.g. the process crashed)
+				if (fits(offset)) {
+					offsets.put(matchNumber, (int) offset);
+				}
+			}
+		}
+		else {
+			for (int offset = buffer.position(); fits(offset); ) {
+				int matchNumber = buffer.getInt(offset);
+				int numRuns = buffer.getInt(offset + 2 * Integer.BYTES);
+				offsets.put(matchNumber, offset);
+				offset += 3 * Integer.BYTES + numRuns * (Short.BYTES + Integer.BYTES);
+			}
+		}
+	}
+	
+	/**
+	 * Returns whether a whole match record starts at the given offset of the log
+	 * @param offset
+	 * @return
+	 */
+	private boolean fits(long offset) {
+		long header = 3 * Integer.BYTES;
+		if (offset < 0 || offset + header > buffer.limit()) {
+			return false;
+		}
+		int numRuns = buffer.getInt((int) offset + 2 * Integer.BYTES);
+		return numRuns >= 0 && offset + header + (long) numRuns * (Short.BYTES + Integer.BYTES) <= buffer.limit();
+	}
+	
+	/**
+	 * Returns the action names, indexed by action
+	 * @return
+	 */
+	public List<String> getActionNames() {
+		return actionNames;
+	}
+	
+	/**
+	 * Returns the numbers of the recorded matches, in the order they were written
+	 * @return
+	 */
+	public List<Integer> getMatchNumbers() {
+		return new ArrayList<>(offsets.keySet());
+	}
+	
+	/**
+	 * Returns the choices of the given match
+	 * @param matchNumber
+	 * @return
+	 */
+	public ChoiceLog getChoices(int matchNumber) {
+		Integer offset = offsets.get(matchNumber);
+		if (offset == null) {
+			throw new IllegalArgumentException("Match '" + matchNumber + "' not found.");
+		}
+		ByteBuffer match = buffer.duplicate();
+		match.position(offset + 2 * Integer.BYTES); // skips the match and frame numbers 
+		int numRuns = match.getInt();
+		ChoiceLog choices = new ChoiceLog();
+		for (int run = 0; run < numRuns; run++) {
+			int action = match.getShort();
+			choices.addRun(action, match.getInt());
+		}
+		return choices;
+	}
+	
+	/**
+	 * Writes the choices in the former text format ("Match m:" followed by "\tframe: choice" lines)
+	 * @param out
+	 */
+	public void print(PrintStream out) {
+		out.println("#frame: choice");
+		for (int matchNumber : offsets.keySet()) {
+			out.println("Match " + matchNumber + ": ");
+			int frame = 0;
+			for (String choice : getChoices(matchNumber).toNames(actionNames)) {
+				out.println("\t" + frame++ + ": " + choice);
+			}
+		}
+	}
+	
+	/**
+	 * Reads a string written with DataOutput.writeUTF at the buffer's position
+	 * @return
+	 * @throws IOException 
+	 */
+	private String readUTF() throws IOException {
+		int start = buffer.position();
+		int length = Short.BYTES + (buffer.getShort(start) & 0xFFFF);
+		buffer.position(start + length);
+		return new DataInputStream(new ByteArrayInputStream(buffer.array(), start, length)).readUTF();
+	}
+	
+	/**
+	 * Prints a choices log as text
+	 * @param args 0 is the choices log
+	 * @throws IOException
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: ChoicesLogReader file.choices.bin");
+			System.exit(1);
+		}
+		new ChoicesLogReader(args[0]).print(System.out);
+	}
+}
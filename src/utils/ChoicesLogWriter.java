@@ -0,0 +1,185 @@
+package utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+
+/**
+ * Appends the choices of each match to a binary choices log (see {@link ChoicesLogReader} for the layout)
+ * and the offset of each match to an index file (the log path with {@link #INDEX_EXTENSION}).
+ *
+ * Like {@link ResultsWriter}, matches are buffered and only reach the files when {@link #flush()} 
+ * is called (the data is forced to the storage device before the index), 
+ * when the buffer fills up or when the JVM shuts down.
+ *
+ * @author artavares
+ *
+ */
+public class ChoicesLogWriter {
+
+	public static final String EXTENSION = "choices.bin";
+	
+	public static final String INDEX_EXTENSION = "idx";
+	
+	/**
+	 * Number of buffered bytes above which matches are written and forced to the files (as in {@link #flush()})
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * The open writers, flushed if the JVM shuts down
+	 */
+	private static final Set<ChoicesLogWriter> openWriters = ConcurrentHashMap.newKeySet();
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			for (ChoicesLogWriter writer : openWriters) {
+				try {
+					writer.flush();
+				} catch (IOException e) {
+					LogManager.getRootLogger().error("Error while flushing choices to " + writer.path, e);
+				}
+			}
+		}, "choices-flusher"));
+	}
+
+	private String path;
+
+	private FileChannel data, index;
+	
+	/**
+	 * Offset of the next match in the data file (including the buffered matches)
+	 */
+	private long offset;
+
+	private ByteArrayOutputStream dataBuffer, indexBuffer;
+	
+	private DataOutputStream dataOut, indexOut;
+
+	/**
+	 * Opens (or creates) the choices log at the given path. 
+	 * A new log starts with the action names; matches are appended to an existing log 
+	 * only if it has the same action names.
+	 * @param path
+	 * @param actionNames indexed by action
+	 * @throws IOException
+	 */
+	public ChoicesLogWriter(String path, List<String> actionNames) throws IOException {
+		this.path = path;
+		dataBuffer = new ByteArrayOutputStream();
+		indexBuffer = new ByteArrayOutputStream();
+		dataOut = new DataOutputStream(dataBuffer);
+		indexOut = new DataOutputStream(indexBuffer);
+
+		File f = new File(path);
+		if (f.getParentFile() != null) {
+			f.getParentFile().mkdirs();
+		}
+		
+		if (f.exists() && f.length() > 0) {
+			List<String> existing = new ChoicesLogReader(path).getActionNames();
+			if (!existing.equals(actionNames)) {
+				throw new IOException(String.format(
+					"Choices log '%s' has actions %s, but %s were given.", path, existing, actionNames
+				));
+			}
+		}
+		
+		data = FileChannel.open(f.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		index = FileChannel.open(
+			new File(path + "." + INDEX_EXTENSION).toPath(), 
+			StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND
+		);
+		
+		offset = data.size();
+		if (offset == 0) {
+			dataOut.write(ChoicesLogReader.MAGIC);
+			dataOut.writeInt(ChoicesLogReader.VERSION);
+			dataOut.writeInt(actionNames.size());
+			for (String name : actionNames) {
+				dataOut.writeUTF(name);
+			}
+			offset = dataOut.size();
+		}
+		openWriters.add(this);
+	}
+	
+	/**
+	 * Buffers the choices of a match
+	 * @param matchNumber
+	 * @param choices
+	 * @throws IOException
+	 */
+	public synchronized void write(int matchNumber, ChoiceLog choices) throws IOException {
+		indexOut.writeInt(matchNumber);
+		indexOut.writeLong(offset);
+		
+		int start = dataOut.size();
+		dataOut.writeInt(matchNumber);
+		dataOut.writeInt(choices.getNumFrames());
+		dataOut.writeInt(choices.getNumRuns());
+		for (int run = 0; run < choices.getNumRuns(); run++) {
+			dataOut.writeShort(choices.getAction(run));
+			dataOut.writeInt(choices.getRunLength(run));
+		}
+		offset += dataOut.size() - start;
+		
+		if (dataBuffer.size() >= DEFAULT_BUFFER_SIZE) {
+			flush();
+		}
+	}
+	
+	/**
+	 * Writes the buffered matches and forces them to the storage device
+	 * @throws IOException
+	 */
+	public synchronized void flush() throws IOException {
+		if (!data.isOpen()) return;
+		// the data is forced before the index is written, so that the index never points past the data
+		write(data, dataBuffer);
+		data.force(false);
+		write(index, indexBuffer);
+		index.force(false);
+	}
+	
+	/**
+	 * Flushes and closes the files
+	 * @throws IOException
+	 */
+	public synchronized void close() throws IOException {
+		openWriters.remove(this);
+		try {
+			flush();
+		}
+		finally {
+			data.close();
+			index.close();
+		}
+	}
+
+	/**
+	 * Returns the path of the choices log
+	 * @return
+	 */
+	public String getPath() {
+		return path;
+	}
+	
+	private static void write(FileChannel channel, ByteArrayOutputStream buffer) throws IOException {
+		if (buffer.size() == 0) return;
+		ByteBuffer bytes = ByteBuffer.wrap(buffer.toByteArray());
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+		buffer.reset();
+	}
+}
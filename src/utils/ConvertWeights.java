@@ -0,0 +1,52 @@
+package utils;
+
+import java.util.Properties;
+
+import config.ConfigManager;
+import config.Parameters;
+import features.FeatureExtractor;
+import features.FeatureExtractorFactory;
+import rts.units.UnitTypeTable;
+
+/**
+ * Converts weight files written with Java serialization 
+ * (e.g. old weights_p-mM.bin checkpoints) into the binary format of {@link WeightFile}
+ */
+public class ConvertWeights {
+
+	/**
+	 * @param args 0 is the input weights file, 1 is the output file and 
+	 * 2 (optional) is the config file of the experiment, to record the feature 
+	 * extractor in the output header (old files do not have this information)
+	 * @throws Exception
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.err.println("Usage: ConvertWeights input.bin output.bin [config.properties]");
+			System.exit(1);
+		}
+		
+		WeightFile weights = WeightFile.read(args[0]);
+		
+		if (args.length > 2) {
+			Properties config = ConfigManager.loadConfig(args[2]);
+			Parameters.ensureDefaults(config);
+			
+			// creates this object just to pass to the feature extractor constructor
+			UnitTypeTable types = new UnitTypeTable(UnitTypeTable.VERSION_ORIGINAL_FINETUNED, UnitTypeTable.MOVE_CONFLICT_RESOLUTION_CANCEL_RANDOM);
+			FeatureExtractor extractor = FeatureExtractorFactory.getFeatureExtractor(config.getProperty("features"), types, 0);
+			
+			if (extractor.getNumFeatures() != weights.getNumFeatures()) {
+				System.err.println(String.format(
+					"Weights have %d features but '%s' has %d.", 
+					weights.getNumFeatures(), config.getProperty("features"), extractor.getNumFeatures()
+				));
+				System.exit(1);
+			}
+			weights = new WeightFile(extractor, weights.getActions(), weights.getNumFeatures(), weights.getMatrix());
+		}
+		
+		weights.write(args[1]);
+	}
+
+}
@@ -1,6 +1,8 @@
 package utils;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 import org.apache.logging.log4j.LogManager;
@@ -28,6 +30,26 @@ public class FileNameUtil {
 		return filename;
 	}
 	
+	/**
+	 * Returns the names that 'count' successive calls to {@link #nextAvailableFileName(String, String)}
+	 * would return if each call created its file. Useful to assign file names before
+	 * the files are written concurrently.
+	 * @param prefix
+	 * @param extension
+	 * @param count
+	 * @return
+	 */
+	public static List<String> nextAvailableFileNames(String prefix, String extension, int count){
+		List<String> filenames = new ArrayList<>(count);
+		for (int num = 1; filenames.size() < count; num++) {
+			String filename = String.format("%s_%d.%s", prefix, num, extension);
+			if (!new File(filename).exists()) {
+				filenames.add(filename);
+			}
+		}
+		return filenames;
+	}
+	
 	/*public static String getExperimentDirWithRepNumber(Properties config) {
 		String fullDirName = getExperimentDir(config);
        
@@ -0,0 +1,198 @@
+package utils;
+
+/**
+ * The vector operations of the linear learners (dot products, axpy, scaling
+ * and the fused weight/eligibility update of TD(lambda)).
+ *
+ * The implementation is selected once, at startup, via the system property
+ * {@link #PROPERTY} ({@link #UNROLLED} by default, or {@link #SCALAR}), so that
+ * the calls through {@link #get()} are monomorphic and inlined by the JIT.
+ *
+ * The implementations differ only in the dot product: {@link #UNROLLED} keeps four
+ * partial sums, which breaks the dependency between consecutive additions
+ * (the JIT does not vectorize a strictly ordered floating-point reduction),
+ * but sums in a different order than {@link #SCALAR}, so results may differ in the last bits.
+ * The element-wise operations are plain loops that the JIT already vectorizes.
+ *
+ * @author artavares
+ *
+ */
+public abstract class LinearKernels {
+
+	/**
+	 * System property that selects the implementation
+	 */
+	public static final String PROPERTY = "tdsearch.kernels";
+
+	/**
+	 * Names of the implementations
+	 */
+	public static final String SCALAR = "scalar", UNROLLED = "unrolled";
+
+	private static final LinearKernels INSTANCE = forName(System.getProperty(PROPERTY, UNROLLED));
+
+	/**
+	 * Returns the implementation selected at startup
+	 * @return
+	 */
+	public static LinearKernels get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Returns the implementation with the given name ({@link #SCALAR} or {@link #UNROLLED})
+	 * @param name
+	 * @return
+	 */
+	public static LinearKernels forName(String name) {
+		if (SCALAR.equals(name)) {
+			return new Scalar();
+		}
+		if (UNROLLED.equals(name)) {
+			return new Unrolled();
+		}
+		throw new IllegalArgumentException("Kernels '" + name + "' not found.");
+	}
+
+	/**
+	 * Returns the name of this implementation
+	 * @return
+	 */
+	public abstract String getName();
+
+	/**
+	 * Returns sum(x[i] * y[yOffset + i]) for i = 0, ..., length - 1
+	 * @param x
+	 * @param y
+	 * @param yOffset
+	 * @param length
+	 * @return
+	 */
+	public abstract double dot(double[] x, double[] y, int yOffset, int length);
+
+	/**
+	 * Single-precision version of {@link #dot(double[], double[], int, int)}
+	 * (the products are accumulated in double)
+	 * @param x
+	 * @param y
+	 * @param yOffset
+	 * @param length
+	 * @return
+	 */
+	public abstract double dot(double[] x, float[] y, int yOffset, int length);
+
+	/**
+	 * Computes y = y + a * x
+	 * @param a
+	 * @param x
+	 * @param y
+	 */
+	public void axpy(double a, double[] x, double[] y) {
+		assert x.length == y.length;
+
+		for (int i = 0; i < y.length; i++) {
+			y[i] = y[i] + a * x[i];
+		}
+	}
+
+	/**
+	 * Computes x = a * x
+	 * @param a
+	 * @param x
+	 */
+	public void scale(double a, double[] x) {
+		for (int i = 0; i < x.length; i++) {
+			x[i] = x[i] * a;
+		}
+	}
+
+	/**
+	 * The TD(lambda) update of a weight vector and its eligibility traces, in a single pass:
+	 * w = w + step * e, then e = e * gamma * lambda
+	 * @param w
+	 * @param e
+	 * @param step the learning rate times the td error
+	 * @param gamma
+	 * @param lambda
+	 */
+	public void updateAndDecay(double[] w, double[] e, double step, double gamma, double lambda) {
+		assert w.length == e.length;
+
+		for (int i = 0; i < w.length; i++) {
+			w[i] = w[i] + step * e[i];
+			e[i] = e[i] * gamma * lambda;
+		}
+	}
+
+	/**
+	 * Sums the products in order, as the learners always did
+	 */
+	static final class Scalar extends LinearKernels {
+
+		@Override
+		public String getName() {
+			return SCALAR;
+		}
+
+		@Override
+		public double dot(double[] x, double[] y, int yOffset, int length) {
+			double value = 0;
+			for (int i = 0; i < length; i++) {
+				value += x[i] * y[yOffset + i];
+			}
+			return value;
+		}
+
+		@Override
+		public double dot(double[] x, float[] y, int yOffset, int length) {
+			double value = 0;
+			for (int i = 0; i < length; i++) {
+				value += x[i] * y[yOffset + i];
+			}
+			return value;
+		}
+	}
+
+	/**
+	 * Keeps four partial sums of the products (vectors shorter than four are summed in order)
+	 */
+	static final class Unrolled extends LinearKernels {
+
+		@Override
+		public String getName() {
+			return UNROLLED;
+		}
+
+		@Override
+		public double dot(double[] x, double[] y, int yOffset, int length) {
+			double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+			int i = 0;
+			for (int end = length - 3; i < end; i += 4) {
+				s0 += x[i] * y[yOffset + i];
+				s1 += x[i + 1] * y[yOffset + i + 1];
+				s2 += x[i + 2] * y[yOffset + i + 2];
+				s3 += x[i + 3] * y[yOffset + i + 3];
+			}
+			for (; i < length; i++) {
+				s0 += x[i] * y[yOffset + i];
+			}
+			return (s0 + s1) + (s2 + s3);
+		}
+
+		@Override
+		public double dot(double[] x, float[] y, int yOffset, int length) {
+			double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+			int i = 0;
+			for (int end = length - 3; i < end; i += 4) {
+				s0 += x[i] * y[yOffset + i];
+				s1 += x[i + 1] * y[yOffset + i + 1];
+				s2 += x[i + 2] * y[yOffset + i + 2];
+				s3 += x[i + 3] * y[yOffset + i + 3];
+			}
+			for (; i < length; i++) {
+				s0 += x[i] * y[yOffset + i];
+			}
+			return (s0 + s1) + (s2 + s3);
+		}
+	}
+}
@@ -10,10 +10,36 @@ public class MathHelper {
 	public static double dotProduct(double[] vector1, double[] vector2) {
 		assert vector1.length == vector2.length;
 		
-		double value = 0;
-		for(int i = 0; i < vector1.length; i++) {
-			value += vector1[i] * vector2[i];
-		}
-		return value;
+		return LinearKernels.get().dot(vector1, vector2, 0, vector1.length);
+	}
+	
+	/**
+	 * Dot product between a vector and the row of a flattened matrix that starts at the given offset 
+	 * (i.e. sum(vector[i] * matrix[offset + i]) for i = 0, ..., length of the vector)
+	 * @param vector
+	 * @param matrix
+	 * @param offset
+	 * @return
+	 */
+	public static double dotProduct(double[] vector, double[] matrix, int offset) {
+		assert offset + vector.length <= matrix.length;
+		
+		return LinearKernels.get().dot(vector, matrix, offset, vector.length);
+	}
+	
+	/**
+	 * Dot product between a vector and the row of a flattened single-precision matrix 
+	 * that starts at the given offset (see {@link #dotProduct(double[], double[], int)}).
+	 * The products are accumulated in double, so the only rounding w.r.t. the double 
+	 * version comes from the stored weights
+	 * @param vector
+	 * @param matrix
+	 * @param offset
+	 * @return
+	 */
+	public static double dotProduct(double[] vector, float[] matrix, int offset) {
+		assert offset + vector.length <= matrix.length;
+		
+		return LinearKernels.get().dot(vector, matrix, offset, vector.length);
 	}
 }
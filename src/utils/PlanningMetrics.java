@@ -0,0 +1,359 @@
+package utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.LogManager;
+
+/**
+ * Throughput counters and latency histograms of planning (e.g. episodes and simulated
+ * steps per call to getAction, time to extract features or to forward the state).
+ *
+ * The planners of an agent (and the copies used by parallel or background planning)
+ * share one instance: the counters are {@link LongAdder}s, so recording is cheap and
+ * thread-safe. Latencies are kept in histograms with power-of-two buckets (in nanoseconds),
+ * from which means and approximate quantiles are derived.
+ *
+ * The metrics can be written as a CSV row (see {@link #csvHeader()}) and
+ * watched live via JMX (see {@link #register(String)}).
+ *
+ * @author artavares
+ *
+ */
+public class PlanningMetrics implements PlanningMetricsMBean {
+
+	/**
+	 * The counted events
+	 */
+	public enum Counter {
+		/** calls to the planning procedure (one per getAction) */
+		PLANNING_CALLS,
+		/** planning episodes that reached their end */
+		EPISODES,
+		/** decisions of the planner (each one followed by simulated steps) */
+		DECISIONS,
+		/** game frames advanced by the forward model */
+		FRAMES,
+		/** TD updates of the weights */
+		WEIGHT_UPDATES,
+		/** actions of abstractions found in the action cache */
+		ACTION_CACHE_HITS
+	}
+
+	/**
+	 * The timed operations
+	 */
+	public enum Timer {
+		/** a planning call (whole budget) */
+		PLANNING,
+		/** feature extraction (cache misses only) */
+		FEATURES,
+		/** the action of an abstraction for a state (action cache misses only) */
+		ABSTRACTION,
+		/** cloning a game state */
+		CLONE,
+		/** advancing the state to the next decision point */
+		FORWARD,
+		/** a TD update of the weights and eligibility traces */
+		TD_UPDATE
+	}
+
+	/**
+	 * Latencies in buckets of powers of two: bucket b has the values in [2^(b-1), 2^b)
+	 * (bucket 0 has the zeros)
+	 */
+	static class Histogram {
+		static final int BUCKETS = 64;
+
+		final LongAdder[] buckets = new LongAdder[BUCKETS];
+		final LongAdder sum = new LongAdder();
+
+		Histogram() {
+			for (int b = 0; b < BUCKETS; b++) {
+				buckets[b] = new LongAdder();
+			}
+		}
+
+		void record(long nanos) {
+			buckets[nanos <= 0 ? 0 : Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos))].increment();
+			sum.add(Math.max(0, nanos));
+		}
+
+		long count() {
+			long count = 0;
+			for (LongAdder bucket : buckets) {
+				count += bucket.sum();
+			}
+			return count;
+		}
+
+		double mean() {
+			long count = count();
+			return count == 0 ? 0 : sum.sum() / (double) count;
+		}
+
+		/**
+		 * Returns the upper bound of the bucket of the given quantile (0 if empty)
+		 */
+		long quantile(double q) {
+			long[] counts = new long[BUCKETS];
+			long count = 0;
+			for (int b = 0; b < BUCKETS; b++) {
+				counts[b] = buckets[b].sum();
+				count += counts[b];
+			}
+			if (count == 0) return 0;
+
+			long rank = (long) Math.ceil(q * count), cumulative = 0;
+			for (int b = 0; b < BUCKETS; b++) {
+				cumulative += counts[b];
+				if (cumulative >= rank && counts[b] > 0) {
+					return b == 0 ? 0 : 1L << Math.min(62, b);
+				}
+			}
+			return 1L << 62;
+		}
+
+		void reset() {
+			for (LongAdder bucket : buckets) {
+				bucket.reset();
+			}
+			sum.reset();
+		}
+	}
+
+	private final LongAdder[] counters;
+
+	private final Histogram[] histograms;
+
+	private ObjectName registeredName;
+
+	public PlanningMetrics() {
+		counters = new LongAdder[Counter.values().length];
+		for (int c = 0; c < counters.length; c++) {
+			counters[c] = new LongAdder();
+		}
+		histograms = new Histogram[Timer.values().length];
+		for (int t = 0; t < histograms.length; t++) {
+			histograms[t] = new Histogram();
+		}
+	}
+
+	/**
+	 * Returns the current time to start timing an operation, or 0 if there are no metrics
+	 * (so that call sites do not need to check)
+	 * @param metrics can be null
+	 * @return
+	 */
+	public static long start(PlanningMetrics metrics) {
+		return metrics == null ? 0 : System.nanoTime();
+	}
+
+	/**
+	 * Records the time elapsed since {@link #start(PlanningMetrics)} (does nothing if there are no metrics)
+	 * @param metrics can be null
+	 * @param timer
+	 * @param start
+	 */
+	public static void stop(PlanningMetrics metrics, Timer timer, long start) {
+		if (metrics != null) {
+			metrics.record(timer, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Adds one to a counter
+	 * @param counter
+	 */
+	public void increment(Counter counter) {
+		counters[counter.ordinal()].increment();
+	}
+
+	/**
+	 * Adds to a counter
+	 * @param counter
+	 * @param amount
+	 */
+	public void add(Counter counter, long amount) {
+		counters[counter.ordinal()].add(amount);
+	}
+
+	/**
+	 * Records the duration of an operation
+	 * @param timer
+	 * @param nanos
+	 */
+	public void record(Timer timer, long nanos) {
+		histograms[timer.ordinal()].record(nanos);
+	}
+
+	/**
+	 * Returns the value of a counter
+	 * @param counter
+	 * @return
+	 */
+	public long get(Counter counter) {
+		return counters[counter.ordinal()].sum();
+	}
+
+	/**
+	 * Returns the number of timed operations
+	 * @param timer
+	 * @return
+	 */
+	public long count(Timer timer) {
+		return histograms[timer.ordinal()].count();
+	}
+
+	/**
+	 * Returns the mean duration of an operation (ns)
+	 * @param timer
+	 * @return
+	 */
+	public double mean(Timer timer) {
+		return histograms[timer.ordinal()].mean();
+	}
+
+	/**
+	 * Returns an upper bound (a power of two, in ns) of the given quantile of the duration of an operation
+	 * @param timer
+	 * @param q in [0, 1]
+	 * @return
+	 */
+	public long quantile(Timer timer, double q) {
+		return histograms[timer.ordinal()].quantile(q);
+	}
+
+	/**
+	 * Returns the header of the CSV columns written by {@link #toCsv()}
+	 * @return
+	 */
+	public static String csvHeader() {
+		StringBuilder header = new StringBuilder();
+		for (Counter counter : Counter.values()) {
+			header.append(counter.name().toLowerCase()).append(',');
+		}
+		for (Timer timer : Timer.values()) {
+			String name = timer.name().toLowerCase();
+			header.append(String.format("%s_count,%s_mean_ns,%s_p50_ns,%s_p99_ns,", name, name, name, name));
+		}
+		header.setLength(header.length() - 1);
+		return header.toString();
+	}
+
+	/**
+	 * Returns the counters and the count, mean, median and 99th percentile of each timer as CSV
+	 * @return
+	 */
+	public String toCsv() {
+		StringBuilder row = new StringBuilder();
+		for (Counter counter : Counter.values()) {
+			row.append(get(counter)).append(',');
+		}
+		for (Timer timer : Timer.values()) {
+			row.append(String.format("%d,%.0f,%d,%d,", count(timer), mean(timer), quantile(timer, .5), quantile(timer, .99)));
+		}
+		row.setLength(row.length() - 1);
+		return row.toString();
+	}
+
+	@Override
+	public void reset() {
+		for (LongAdder counter : counters) {
+			counter.reset();
+		}
+		for (Histogram histogram : histograms) {
+			histogram.reset();
+		}
+	}
+
+	/**
+	 * Registers these metrics in the platform MBean server as tdsearch:type=PlanningMetrics,name={name}
+	 * (replacing previously registered metrics with that name), logging instead of throwing errors
+	 * @param name
+	 */
+	public void register(String name) {
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName objectName = new ObjectName("tdsearch:type=PlanningMetrics,name=" + ObjectName.quote(name));
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			server.registerMBean(this, objectName);
+			registeredName = objectName;
+		} catch (JMException e) {
+			LogManager.getRootLogger().error("Unable to register planning metrics '" + name + "' in JMX", e);
+		}
+	}
+
+	/**
+	 * Removes these metrics from the MBean server, if registered
+	 */
+	public void unregister() {
+		if (registeredName == null) return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+		} catch (JMException e) {
+			LogManager.getRootLogger().error("Unable to unregister planning metrics " + registeredName, e);
+		}
+		registeredName = null;
+	}
+
+	@Override
+	public long getPlanningCalls() {
+		return get(Counter.PLANNING_CALLS);
+	}
+
+	@Override
+	public long getEpisodes() {
+		return get(Counter.EPISODES);
+	}
+
+	@Override
+	public long getDecisions() {
+		return get(Counter.DECISIONS);
+	}
+
+	@Override
+	public long getFramesForwarded() {
+		return get(Counter.FRAMES);
+	}
+
+	@Override
+	public long getWeightUpdates() {
+		return get(Counter.WEIGHT_UPDATES);
+	}
+
+	@Override
+	public long getActionCacheHits() {
+		return get(Counter.ACTION_CACHE_HITS);
+	}
+
+	@Override
+	public double getEpisodesPerCall() {
+		long calls = getPlanningCalls();
+		return calls == 0 ? 0 : getEpisodes() / (double) calls;
+	}
+
+	@Override
+	public double getDecisionsPerCall() {
+		long calls = getPlanningCalls();
+		return calls == 0 ? 0 : getDecisions() / (double) calls;
+	}
+
+	@Override
+	public String[] getLatencies() {
+		Timer[] timers = Timer.values();
+		String[] latencies = new String[timers.length];
+		for (int t = 0; t < timers.length; t++) {
+			latencies[t] = String.format("%s: count=%d mean=%.0fns p50<=%dns p99<=%dns",
+				timers[t].name().toLowerCase(), count(timers[t]), mean(timers[t]), quantile(timers[t], .5), quantile(timers[t], .99)
+			);
+		}
+		return latencies;
+	}
+}
@@ -0,0 +1,37 @@
+package utils;
+
+/**
+ * JMX view of {@link PlanningMetrics}
+ *
+ * @author artavares
+ *
+ */
+public interface PlanningMetricsMBean {
+
+	long getPlanningCalls();
+
+	long getEpisodes();
+
+	long getDecisions();
+
+	long getFramesForwarded();
+
+	long getWeightUpdates();
+
+	long getActionCacheHits();
+
+	double getEpisodesPerCall();
+
+	double getDecisionsPerCall();
+
+	/**
+	 * Returns a line per timed operation with its count, mean and quantiles
+	 * @return
+	 */
+	String[] getLatencies();
+
+	/**
+	 * Zeroes the counters and histograms
+	 */
+	void reset();
+}
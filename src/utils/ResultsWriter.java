@@ -0,0 +1,180 @@
+package utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.logging.log4j.LogManager;
+
+/**
+ * Appends rows to a results file (e.g. match summaries and choices) through a
+ * long-lived channel. Rows are kept in memory and only reach the file when
+ * {@link #flush()} is called (e.g. at checkpoints), when the buffer fills up
+ * or when the JVM shuts down, so that short matches do not pay for opening
+ * and closing the file (which is expensive on network file systems).
+ *
+ * Flushing (including when the buffer fills up) also forces the written rows to the 
+ * storage device: rows written before a checkpoint are not lost if the process crashes 
+ * afterwards, which keeps the results consistent with the weights when an experiment is resumed.
+ *
+ * There is at most one open writer per path, obtained with {@link #open(String, String)}.
+ * It is shared by the callers that open the same path (appends are serialized) 
+ * and stays open until each of them calls {@link #close()}.
+ *
+ * @author artavares
+ *
+ */
+public class ResultsWriter {
+
+	/**
+	 * Number of buffered characters above which rows are written and forced to the file (as in {@link #flush()})
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * The open writers, by (absolute) path
+	 */
+	private static final Map<String, ResultsWriter> openWriters = new ConcurrentHashMap<>();
+
+	static {
+		// writes whatever is buffered if the run is interrupted (e.g. killed by the cluster scheduler)
+		Runtime.getRuntime().addShutdownHook(new Thread(ResultsWriter::flushAll, "results-flusher"));
+	}
+
+	private String path;
+
+	private FileChannel channel;
+
+	private StringBuilder buffer;
+
+	private int bufferSize;
+
+	/**
+	 * Number of {@link #open(String, String)} calls not yet closed (guarded by openWriters)
+	 */
+	private int references;
+
+	/**
+	 * Returns the open writer of the given path or opens one, creating the file
+	 * (and missing parent directories) with the given header line if it does not exist.
+	 * Each call must be matched by a call to {@link #close()}.
+	 * @param path
+	 * @param header written (followed by a \n) if the file is new or empty
+	 * @return
+	 * @throws IOException
+	 */
+	public static ResultsWriter open(String path, String header) throws IOException {
+		String key = new File(path).getAbsolutePath();
+		synchronized (openWriters) {
+			ResultsWriter writer = openWriters.get(key);
+			if (writer == null) {
+				writer = new ResultsWriter(path, header, DEFAULT_BUFFER_SIZE);
+				openWriters.put(key, writer);
+			}
+			writer.references++;
+			return writer;
+		}
+	}
+
+	/**
+	 * Flushes all open writers, logging (instead of throwing) the errors
+	 */
+	public static void flushAll() {
+		for (ResultsWriter writer : new ArrayList<>(openWriters.values())) {
+			try {
+				writer.flush();
+			} catch (IOException e) {
+				LogManager.getRootLogger().error("Error while flushing results to " + writer.path, e);
+			}
+		}
+	}
+
+	private ResultsWriter(String path, String header, int bufferSize) throws IOException {
+		this.path = path;
+		this.bufferSize = bufferSize;
+		buffer = new StringBuilder();
+
+		File f = new File(path);
+		if (f.getParentFile() != null) {
+			f.getParentFile().mkdirs();
+		}
+		channel = FileChannel.open(f.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+
+		if (channel.size() == 0 && header != null) {
+			buffer.append(header).append('\n');
+			flush();
+		}
+	}
+
+	/**
+	 * Buffers a row (a \n is appended). The row may span multiple lines.
+	 * The buffer is flushed when it fills up.
+	 * @param row
+	 * @throws IOException
+	 */
+	public synchronized void writeRow(CharSequence row) throws IOException {
+		buffer.append(row).append('\n');
+		if (buffer.length() >= bufferSize) {
+			flush();
+		}
+	}
+
+	/**
+	 * Writes the buffered rows and forces them to the storage device
+	 * @throws IOException
+	 */
+	public synchronized void flush() throws IOException {
+		if (!channel.isOpen()) return;
+		writeBuffer();
+		channel.force(false);
+	}
+
+	/**
+	 * Flushes the file and releases this caller's reference to the writer.
+	 * The file is closed when every caller that opened it has closed it; 
+	 * the next {@link #open(String, String)} of the same path then returns a new writer.
+	 * @throws IOException
+	 */
+	public void close() throws IOException {
+		synchronized (openWriters) {
+			if (references > 1) {
+				references--;
+				flush();
+				return;
+			}
+			references = 0;
+			openWriters.remove(new File(path).getAbsolutePath(), this);
+		}
+		synchronized (this) {
+			try {
+				flush();
+			}
+			finally {
+				channel.close();
+			}
+		}
+	}
+
+	/**
+	 * Returns the path of the results file
+	 * @return
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	private void writeBuffer() throws IOException {
+		if (buffer.length() == 0) return;
+		ByteBuffer bytes = StandardCharsets.UTF_8.encode(buffer.toString());
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+		buffer.setLength(0);
+	}
+}
@@ -0,0 +1,399 @@
+package utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import features.FeatureExtractor;
+
+/**
+ * Reads and writes weight matrices in a compact binary format:
+ * <pre>
+ * magic "TDSW" | version (int) | dtype (int)
+ * | feature extractor name (string) | hash of the feature names (int)
+ * | number of actions (int) | action names (strings) | number of features (int)
+ * | numActions x numFeatures matrix, row-major
+ * </pre>
+ * All numbers are little-endian and strings are an int length followed by UTF-8 bytes.
+ *
+ * Files written by the former Java serialization (of a Map&lt;String, double[]&gt;
+ * or of a double[]) are recognized by their magic number and can still be read.
+ *
+ * @author artavares
+ *
+ */
+public class WeightFile {
+
+	public static final byte[] MAGIC = {'T', 'D', 'S', 'W'};
+
+	public static final int VERSION = 1;
+
+	/**
+	 * Data types of the matrix
+	 */
+	public static final int FLOAT64 = 0, FLOAT32 = 1;
+
+	/**
+	 * Name of the single 'action' of state-value weights (a single vector)
+	 */
+	public static final String STATE_VALUE = "v";
+
+	/**
+	 * First bytes of a Java serialization stream
+	 */
+	private static final int JAVA_SERIALIZATION_MAGIC = 0xACED;
+
+	private String featureExtractorName;
+
+	private int featureNamesHash;
+
+	private List<String> actions;
+
+	private int numFeatures;
+
+	private int dtype;
+
+	/**
+	 * numActions x numFeatures, row-major
+	 */
+	private double[] matrix;
+
+	/**
+	 * Whether this was read from a file in the former (Java serialization) format
+	 */
+	private boolean legacy;
+
+	private WeightFile() {
+	}
+
+	/**
+	 * Creates a weight file for the given matrix (which is not copied), stored as {@link #FLOAT64}
+	 * @param featureExtractorName
+	 * @param featureNamesHash
+	 * @param actions
+	 * @param numFeatures
+	 * @param matrix numActions x numFeatures, row-major
+	 */
+	public WeightFile(String featureExtractorName, int featureNamesHash, List<String> actions, int numFeatures, double[] matrix) {
+		if (matrix.length != actions.size() * numFeatures) {
+			throw new IllegalArgumentException(String.format(
+				"Matrix of length %d does not match %d actions x %d features.",
+				matrix.length, actions.size(), numFeatures
+			));
+		}
+		this.featureExtractorName = featureExtractorName == null ? "" : featureExtractorName;
+		this.featureNamesHash = featureNamesHash;
+		this.actions = Collections.unmodifiableList(new ArrayList<>(actions));
+		this.numFeatures = numFeatures;
+		this.matrix = matrix;
+		this.dtype = FLOAT64;
+	}
+
+	/**
+	 * Creates a weight file for the given matrix (not copied),
+	 * identifying the feature extractor that generates its features
+	 * @param extractor
+	 * @param actions
+	 * @param numFeatures
+	 * @param matrix
+	 */
+	public WeightFile(FeatureExtractor extractor, List<String> actions, int numFeatures, double[] matrix) {
+		this(extractor.getClass().getSimpleName(), hashFeatureNames(extractor.featureNames()), actions, numFeatures, matrix);
+	}
+
+	/**
+	 * Creates a weight file from a map from action name to weight vector (values are copied)
+	 * @param extractor can be null if unknown
+	 * @param weights
+	 * @return
+	 */
+	public static WeightFile fromMap(FeatureExtractor extractor, Map<String, double[]> weights) {
+		List<String> actions = new ArrayList<>(weights.keySet());
+		int numFeatures = actions.isEmpty() ? 0 : weights.get(actions.get(0)).length;
+		double[] matrix = new double[actions.size() * numFeatures];
+		for (int a = 0; a < actions.size(); a++) {
+			System.arraycopy(weights.get(actions.get(a)), 0, matrix, a * numFeatures, numFeatures);
+		}
+		if (extractor == null) {
+			return new WeightFile("", 0, actions, numFeatures, matrix);
+		}
+		return new WeightFile(extractor, actions, numFeatures, matrix);
+	}
+
+	/**
+	 * Creates a weight file with a single vector of state-value weights (not copied)
+	 * @param extractor
+	 * @param weights
+	 * @return
+	 */
+	public static WeightFile stateValue(FeatureExtractor extractor, double[] weights) {
+		return new WeightFile(extractor, Arrays.asList(STATE_VALUE), weights.length, weights);
+	}
+
+	/**
+	 * Returns a hash of the feature names, to detect weights written for other features
+	 * @param featureNames
+	 * @return
+	 */
+	public static int hashFeatureNames(List<String> featureNames) {
+		return String.join(",", featureNames).hashCode();
+	}
+
+	/**
+	 * Writes the weights to the given path
+	 * @param path
+	 * @throws IOException
+	 */
+	public void write(String path) throws IOException {
+		byte[] extractorBytes = featureExtractorName.getBytes(StandardCharsets.UTF_8);
+		List<byte[]> actionBytes = new ArrayList<>(actions.size());
+		int headerSize = MAGIC.length + 4 * 6 + extractorBytes.length;
+		for (String action : actions) {
+			byte[] bytes = action.getBytes(StandardCharsets.UTF_8);
+			actionBytes.add(bytes);
+			headerSize += 4 + bytes.length;
+		}
+		int valueSize = dtype == FLOAT32 ? Float.BYTES : Double.BYTES;
+
+		ByteBuffer buffer = ByteBuffer.allocate(headerSize + matrix.length * valueSize).order(ByteOrder.LITTLE_ENDIAN);
+		buffer.put(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(dtype);
+		buffer.putInt(extractorBytes.length).put(extractorBytes);
+		buffer.putInt(featureNamesHash);
+		buffer.putInt(actions.size());
+		for (byte[] bytes : actionBytes) {
+			buffer.putInt(bytes.length).put(bytes);
+		}
+		buffer.putInt(numFeatures);
+
+		if (dtype == FLOAT32) {
+			for (double value : matrix) {
+				buffer.putFloat((float) value);
+			}
+		}
+		else {
+			buffer.asDoubleBuffer().put(matrix);
+			buffer.position(buffer.limit());
+		}
+		buffer.flip();
+
+		try (FileChannel channel = FileChannel.open(Paths.get(path),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Reads weights from the given path, in either the binary or the former (Java serialization) format
+	 * @param path
+	 * @return
+	 * @throws IOException
+	 */
+	public static WeightFile read(String path) throws IOException {
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+			buffer = ByteBuffer.allocate((int) channel.size());
+			while (buffer.hasRemaining() && channel.read(buffer) >= 0);
+			buffer.flip();
+		}
+
+		if (isLegacy(buffer)) {
+			return readLegacy(buffer.array());
+		}
+
+		WeightFile file = readHeader(buffer, path);
+		file.matrix = new double[file.actions.size() * file.numFeatures];
+		if (file.dtype == FLOAT32) {
+			for (int i = 0; i < file.matrix.length; i++) {
+				file.matrix[i] = buffer.getFloat();
+			}
+		}
+		else {
+			buffer.asDoubleBuffer().get(file.matrix);
+		}
+		return file;
+	}
+
+	/**
+	 * Returns whether the given contents of a weight file (from its start)
+	 * are in the former (Java serialization) format
+	 * @param buffer
+	 * @return
+	 */
+	public static boolean isLegacy(ByteBuffer buffer) {
+		return buffer.limit() >= 2 && ((buffer.get(0) & 0xFF) << 8 | (buffer.get(1) & 0xFF)) == JAVA_SERIALIZATION_MAGIC;
+	}
+
+	/**
+	 * Reads the header of a binary weight file from the buffer (positioned at the start of the file),
+	 * which is left little-endian and positioned at the start of the matrix.
+	 * The returned object has all information but the matrix (which is null).
+	 * @param buffer
+	 * @param path the file name, for error messages
+	 * @return
+	 * @throws IOException
+	 */
+	public static WeightFile readHeader(ByteBuffer buffer, String path) throws IOException {
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		byte[] magic = new byte[MAGIC.length];
+		if (buffer.remaining() >= MAGIC.length) {
+			buffer.get(magic);
+		}
+		if (!Arrays.equals(MAGIC, magic)) {
+			throw new IOException("'" + path + "' is not a weight file.");
+		}
+		int version = buffer.getInt();
+		if (version != VERSION) {
+			throw new IOException(String.format("Unsupported version %d of weight file '%s'.", version, path));
+		}
+		
+		WeightFile file = new WeightFile();
+		file.dtype = buffer.getInt();
+		if (file.dtype != FLOAT64 && file.dtype != FLOAT32) {
+			throw new IOException(String.format("Unknown data type %d in weight file '%s'.", file.dtype, path));
+		}
+		file.featureExtractorName = getString(buffer);
+		file.featureNamesHash = buffer.getInt();
+		int numActions = buffer.getInt();
+		List<String> actions = new ArrayList<>(numActions);
+		for (int a = 0; a < numActions; a++) {
+			actions.add(getString(buffer));
+		}
+		file.actions = Collections.unmodifiableList(actions);
+		file.numFeatures = buffer.getInt();
+		
+		int valueSize = file.dtype == FLOAT32 ? Float.BYTES : Double.BYTES;
+		if (buffer.remaining() < numActions * file.numFeatures * valueSize) {
+			throw new IOException("Weight file '" + path + "' is truncated.");
+		}
+		return file;
+	}
+
+	/**
+	 * Reads a Map&lt;String, double[]&gt; or a double[] written with Java serialization
+	 * @param contents
+	 * @return
+	 * @throws IOException
+	 */
+	private static WeightFile readLegacy(byte[] contents) throws IOException {
+		Object object;
+		try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(contents))) {
+			object = ois.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Error while attempting to load weights.", e);
+		}
+
+		WeightFile file;
+		if (object instanceof double[]) {
+			double[] vector = (double[]) object;
+			file = new WeightFile("", 0, Arrays.asList(STATE_VALUE), vector.length, vector);
+		}
+		else if (object instanceof Map) {
+			Map<String, double[]> weights = new LinkedHashMap<>();
+			for (Map.Entry<?, ?> entry : ((Map<?, ?>) object).entrySet()) {
+				weights.put((String) entry.getKey(), (double[]) entry.getValue());
+			}
+			file = fromMap(null, weights);
+		}
+		else {
+			throw new IOException("Unexpected weights of type " + object.getClass().getName());
+		}
+		file.legacy = true;
+		return file;
+	}
+
+	private static String getString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Returns whether the weights were written for the features of the given extractor.
+	 * Weights in the former format carry no feature information and are assumed to match.
+	 * @param extractor
+	 * @return
+	 */
+	public boolean matches(FeatureExtractor extractor) {
+		return legacy || featureNamesHash == hashFeatureNames(extractor.featureNames());
+	}
+
+	/**
+	 * Returns a map from action name to a copy of its weight vector, in file order
+	 * @return
+	 */
+	public Map<String, double[]> toMap() {
+		Map<String, double[]> map = new LinkedHashMap<>();
+		for (int a = 0; a < actions.size(); a++) {
+			map.put(actions.get(a), row(a));
+		}
+		return map;
+	}
+
+	/**
+	 * Returns a copy of the weight vector of the given action
+	 * @param action the action index
+	 * @return
+	 */
+	public double[] row(int action) {
+		return Arrays.copyOfRange(matrix, action * numFeatures, (action + 1) * numFeatures);
+	}
+
+	/**
+	 * Returns the weights (not a copy): numActions x numFeatures, row-major
+	 * @return
+	 */
+	public double[] getMatrix() {
+		return matrix;
+	}
+
+	public List<String> getActions() {
+		return actions;
+	}
+
+	public int getNumFeatures() {
+		return numFeatures;
+	}
+
+	public String getFeatureExtractorName() {
+		return featureExtractorName;
+	}
+
+	public int getFeatureNamesHash() {
+		return featureNamesHash;
+	}
+
+	public boolean isLegacy() {
+		return legacy;
+	}
+
+	public int getDtype() {
+		return dtype;
+	}
+
+	/**
+	 * Sets the data type of the matrix in the written file ({@link #FLOAT64} or {@link #FLOAT32})
+	 * @param dtype
+	 */
+	public void setDtype(int dtype) {
+		if (dtype != FLOAT64 && dtype != FLOAT32) {
+			throw new IllegalArgumentException("Unknown data type " + dtype);
+		}
+		this.dtype = dtype;
+	}
+}
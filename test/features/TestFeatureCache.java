@@ -0,0 +1,45 @@
+package features;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.units.UnitTypeTable;
+
+class TestFeatureCache {
+
+	@Test
+	void testHitsAndMisses() throws Exception {
+		UnitTypeTable types = new UnitTypeTable(UnitTypeTable.VERSION_ORIGINAL_FINETUNED, UnitTypeTable.MOVE_CONFLICT_RESOLUTION_CANCEL_BOTH);
+		PhysicalGameState map = PhysicalGameState.load("maps/8x8/basesWorkers8x8.xml", types);
+
+		GameState state = new GameState(map, types);
+		GameState clone = state.clone();
+
+		MaterialAdvantage extractor = new MaterialAdvantage(types, 3000);
+		FeatureCache cache = new FeatureCache(extractor, extractor.getNumFeatures());
+
+		// first lookup extracts, the second one is answered from the cache
+		double[] features = cache.get(state, 0);
+		assertArrayEquals(extractor.extractFeatures(state, 0), features);
+		assertEquals(features, cache.get(state, 0));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+
+		// a different player or state object requires a new extraction
+		assertArrayEquals(extractor.extractFeatures(state, 1), cache.get(state, 1));
+		assertArrayEquals(extractor.extractFeatures(clone, 0), cache.get(clone, 0));
+		assertEquals(1, cache.getHits());
+		assertEquals(3, cache.getMisses());
+
+		// after invalidation, everything is extracted again
+		cache.invalidate();
+		cache.get(state, 0);
+		assertEquals(1, cache.getHits());
+		assertEquals(4, cache.getMisses());
+	}
+
+}
@@ -2,6 +2,8 @@ package features;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -119,4 +121,33 @@ class TestQuadrantModel {
 		
 	}
 
+	@Test
+	void testConfigurableGrid() throws Exception {
+		UnitTypeTable types = new UnitTypeTable(UnitTypeTable.VERSION_ORIGINAL_FINETUNED, UnitTypeTable.MOVE_CONFLICT_RESOLUTION_CANCEL_BOTH); 
+		GameState state = new GameState(PhysicalGameState.load("maps/8x8/basesWorkers8x8.xml", types), types);
+		
+		QuadrantModel extractor = (QuadrantModel) FeatureExtractorFactory.getFeatureExtractor("quadrantmodel4x2", types, 3000);
+		assertEquals(4, extractor.getQuadrantsX());
+		assertEquals(2, extractor.getQuadrantsY());
+		
+		// 4 global features + 8 quadrants * (2*6 unit counts + 2 avg healths)
+		assertEquals(4 + 8 * 14, extractor.getNumFeatures());
+		assertEquals(extractor.getNumFeatures(), extractor.featureNames().size());
+		
+		// each unit is counted in the quadrant with its tile (quadrants are 2x4 tiles on 8x8)
+		double[] features = extractor.extractFeatures(state, 0);
+		List<String> names = extractor.featureNames();
+		for (Unit u : state.getPhysicalGameState().getUnits()) {
+			if (u.getType().isResource) continue;
+			String name = String.format("unit_count-%d-%d-%d-%s", u.getX() / 2, u.getY() / 4, u.getPlayer(), u.getType().name);
+			assertEquals(1.0 / 8, features[names.indexOf(name)], 1E-9);
+		}
+		
+		// geometry is shared among models with the same grid
+		assertSame(QuadrantGeometry.of(8, 8, 4, 2), QuadrantGeometry.of(8, 8, 4, 2));
+		
+		assertThrows(IllegalArgumentException.class, () -> new QuadrantModel(types, 3000, 1, 3));
+		assertThrows(IllegalArgumentException.class, () -> new QuadrantModel(types, 3000, 3, 9));
+	}
+
 }
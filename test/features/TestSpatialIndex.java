@@ -0,0 +1,81 @@
+package features;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.Player;
+import rts.units.Unit;
+import rts.units.UnitType;
+import rts.units.UnitTypeTable;
+
+class TestSpatialIndex {
+	
+	private UnitTypeTable types = new UnitTypeTable(UnitTypeTable.VERSION_ORIGINAL_FINETUNED, UnitTypeTable.MOVE_CONFLICT_RESOLUTION_CANCEL_BOTH);
+
+	/**
+	 * Compares the distances with those of all pairs of units, 
+	 * in states small enough for brute force and crowded enough for the distance transform
+	 */
+	@Test
+	void testSameDistancesAsAllPairs() {
+		Random random = new Random(1);
+		MaterialAdvantageDistancesHP extractor = new MaterialAdvantageDistancesHP(types, 3000);
+		UnitDistance unitDistance = new UnitDistance(types, 3000);
+		
+		for (int size : new int[] {8, 16, 64}) {
+			for (int numUnits : new int[] {0, 1, 5, 40, 300}) {
+				GameState state = randomState(random, size, numUnits);
+				
+				assertEquals(pairwise(state, 0, 1, true, false, false), extractor.shortestManhattanDistanceToEnemyUnit(state));
+				assertEquals(pairwise(state, 0, 1, true, false, true), extractor.largestManhattanDistanceToEnemyUnit(state));
+				for (int player = 0; player < 2; player++) {
+					assertEquals(pairwise(state, player, 1 - player, true, true, false), extractor.shortestManhattanDistanceFromUnitToBase(state, player, 1 - player));
+				}
+				assertEquals(pairwise(state, 0, 1, false, false, false), unitDistance.shortestDistanceBetweenEnemies(state));
+			}
+		}
+	}
+	
+	/**
+	 * The distance between all pairs of units (the former implementation)
+	 * @param mobile whether the first group has mobile units only (otherwise, any non-resource unit)
+	 * @param bases whether the second group has bases only (otherwise, the same kind of units of the first)
+	 * @param largest returns the largest distance instead of the shortest
+	 */
+	private int pairwise(GameState state, int player, int enemy, boolean mobile, boolean bases, boolean largest) {
+		PhysicalGameState pgs = state.getPhysicalGameState();
+		int result = largest ? 0 : pgs.getWidth() + pgs.getHeight();
+		for (Unit u : pgs.getUnits()) {
+			for (Unit v : pgs.getUnits()) {
+				if (u.getPlayer() != player || v.getPlayer() != enemy) continue;
+				if (mobile ? !u.getType().canMove : u.getType().isResource) continue;
+				if (bases ? !v.getType().isStockpile : (mobile ? !v.getType().canMove : v.getType().isResource)) continue;
+				
+				int distance = Math.abs(u.getX() - v.getX()) + Math.abs(u.getY() - v.getY());
+				result = largest ? Math.max(result, distance) : Math.min(result, distance);
+			}
+		}
+		return result;
+	}
+
+	private GameState randomState(Random random, int size, int numUnits) {
+		PhysicalGameState pgs = new PhysicalGameState(size, size);
+		pgs.addPlayer(new Player(0, 5));
+		pgs.addPlayer(new Player(1, 5));
+		UnitType[] unitTypes = {
+			types.getUnitType("Worker"), types.getUnitType("Light"), types.getUnitType("Base"), 
+			types.getUnitType("Barracks"), types.getUnitType("Resource")
+		};
+		for (int i = 0; i < numUnits; i++) {
+			UnitType type = unitTypes[random.nextInt(unitTypes.length)];
+			int player = type.isResource ? -1 : random.nextInt(2);
+			pgs.addUnit(new Unit(i, player, type, random.nextInt(size), random.nextInt(size), 0));
+		}
+		return new GameState(pgs, types);
+	}
+}
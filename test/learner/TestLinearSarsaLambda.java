@@ -2,9 +2,10 @@ package learner;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.IOException;
-import java.lang.reflect.Field;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
@@ -20,6 +21,7 @@ import rts.GameState;
 import rts.PhysicalGameState;
 import rts.units.Unit;
 import rts.units.UnitTypeTable;
+import utils.WeightFile;
 
 class TestLinearSarsaLambda {
 
@@ -65,6 +67,53 @@ class TestLinearSarsaLambda {
 		// if code reaches here without throwing an exception, we're good to go
 	}
 	
+	@Test
+	void testSinglePrecision() throws IOException {
+		Properties config = new Properties();
+		config.put("max_cycles", "200");
+		config.put("rewards", "winlossdraw");
+		config.put("features", "materialdistancehp");
+		config.put("portfolio", "WR,LR,HR,RR"); 
+		config.put("td.alpha.initial", "0.15");
+		config.put("td.epsilon.initial", "0.1");
+		config.put("td.gamma", "0.99");
+		config.put("td.lambda", "0.15");
+		
+		assertEquals(LinearSarsaLambda.PRECISION_FLOAT64, new LinearSarsaLambda(types, config).getPrecision());
+		
+		config.put("learner.precision", "float32");
+		learner = new LinearSarsaLambda(types, config);
+		assertEquals(LinearSarsaLambda.PRECISION_FLOAT32, learner.getPrecision());
+		
+		Map<String, double[]> testWeights = new HashMap<>(); 
+		testWeights.put("action1", new double[] {0.1, 2});
+		testWeights.put("action2", new double[] {4, -1.0 / 3});
+		learner.setWeights(testWeights);
+		
+		// weights are rounded to float, but the q-values are close to the double ones
+		assertEquals((float) 0.1, learner.getWeights().get("action1")[0]);
+		assertEquals(0.1 + 1, learner.qValue(new double[] {1, 0.5}, "action1"), 1e-6);
+		assertEquals(4 - 1.0 / 3, learner.qValue(new double[] {1, 1}, "action2"), 1e-6);
+		
+		// checkpoints are written in single precision and read back exactly
+		learner.save("testweights.bin");
+		assertEquals(WeightFile.FLOAT32, WeightFile.read("testweights.bin").getDtype());
+		
+		LinearSarsaLambda anotherLearner = learner.cloneExceptWeightsAndEligibility();
+		anotherLearner.load("testweights.bin");
+		for (String action : testWeights.keySet()) {
+			assertArrayEquals(learner.getWeights().get(action), anotherLearner.getWeights().get(action));
+		}
+		
+		// copies and shared clones keep the precision
+		assertEquals(LinearSarsaLambda.PRECISION_FLOAT32, learner.cloneExceptEligibility().getPrecision());
+		LinearSarsaLambda sharing = learner.cloneSharingWeights();
+		assertTrue(sharing.sharesWeightsWith(learner));
+		
+		config.put("learner.precision", "float16");
+		assertThrows(IllegalArgumentException.class, () -> new LinearSarsaLambda(types, config));
+	}
+	
 	@Test
 	void testQValue() throws IllegalArgumentException, IllegalAccessException, NoSuchFieldException, SecurityException {
 		@SuppressWarnings("serial")
@@ -147,11 +196,11 @@ class TestLinearSarsaLambda {
 		// tests if eligibility has changed (increased by the feature vector & decayed by gamma*lambda)
 		assertArrayEquals(
 			new double[] {1*gamma*lambda, 0.5*gamma*lambda}, 
-			eligibility.get("action1")
+			learner.getEligibility().get("action1")
 		);
 		assertArrayEquals(
 			new double[] {0, 0}, 
-			eligibility.get("action2")
+			learner.getEligibility().get("action2")
 		);
 		
 		
@@ -159,13 +208,13 @@ class TestLinearSarsaLambda {
 		double[] newWeightA1 = new double[] {0.3 + alpha*tdError, 0.1 + alpha*tdError*0.5};
 		assertArrayEquals(
 			newWeightA1, // update rule: w_i = w_i + alpha*error*e_i
-			testWeights.get("action1")
+			learner.getWeights().get("action1")
 		);
 		
 		// checks the weight vector for action2 (expected to be unchanged)
 		assertArrayEquals(
 			new double[] {0.7, 0.2}, 
-			testWeights.get("action2")
+			learner.getWeights().get("action2")
 		);
 		
 		// checks the q value
@@ -252,11 +301,11 @@ class TestLinearSarsaLambda {
 		double[] oldEligAction1 = oldEligibility.get("action1");
 		assertArrayEquals(
 			new double[] {oldEligAction1[0] * gamma*lambda, oldEligAction1[1]*gamma*lambda}, //the initial was lambda*gamma and it decays by lambda*gamma 
-			eligibility.get("action1")
+			learner.getEligibility().get("action1")
 		);
 		assertArrayEquals( // (increased by the feature vector & decayed by gamma*lambda) for action2
 			new double[] {0, 1 * gamma * lambda}, 
-			eligibility.get("action2")
+			learner.getEligibility().get("action2")
 		);
 		
 		
@@ -268,14 +317,14 @@ class TestLinearSarsaLambda {
 		double[] newWeightA1 = new double[] {1 + alpha*tdError*oldEligAction1[0], 2}; //the second component should not change
 		assertArrayEquals(
 			newWeightA1, 
-			testWeights.get("action1")
+			learner.getWeights().get("action1")
 		);
 		
 		// checks the weight vector for action2 it was w=[4, -1]; only the second component will be affected (action2 in s1)
 		double[] newWeightA2 = new double[] {4, -1 + alpha*tdError};
 		assertArrayEquals(
 			newWeightA2, 
-			testWeights.get("action2")
+			learner.getWeights().get("action2")
 		);
 		
 		// ---- checks the q-values
@@ -323,8 +372,8 @@ class TestLinearSarsaLambda {
 		}};
 		setLearnerWeights(testWeights);
 		
-		assertEquals("action2", learner.greedyChoice(s0, 0, testWeights));
-		assertEquals("action1", learner.greedyChoice(s1, 0, testWeights));
+		assertEquals("action2", learner.greedyChoice(s0, 0));
+		assertEquals("action1", learner.greedyChoice(s1, 0));
 	}
 	
 	@Test
@@ -405,11 +454,11 @@ class TestLinearSarsaLambda {
 		// tests eligibility of the two actions (unchanged for a1, changed for a2)
 		assertArrayEquals(
 			new double[] {0, 0, 0},  
-			eligibility.get("action1")
+			learner.getEligibility().get("action1")
 		);
 		assertArrayEquals(
 			new double[] {1 * gamma*lambda, 0, 0},  
-			eligibility.get("action2")
+			learner.getEligibility().get("action2")
 		);
 		
 		// tests q-values of the two actions
@@ -439,11 +488,11 @@ class TestLinearSarsaLambda {
 		// tests eligibility of the two actions:
 		assertArrayEquals(
 			new double[] {0, gamma*lambda, 0},  
-			eligibility.get("action1")
+			learner.getEligibility().get("action1")
 		);
 		assertArrayEquals(
 			new double[] {gamma*lambda * gamma*lambda, 0, 0}, //the initial was lambda*gamma and it decays by lambda*gamma 
-			eligibility.get("action2")
+			learner.getEligibility().get("action2")
 		);
 		
 		// tests q-values of the two actions
@@ -524,11 +573,11 @@ class TestLinearSarsaLambda {
 		// tests eligibility of the two actions (increased+decayed for a1, decayed for a2)
 		assertArrayEquals(
 			new double[] {(0.03+1) * gamma*lambda, 0.1 * gamma*lambda},  
-			eligibility.get("action1")
+			learner.getEligibility().get("action1")
 		);
 		assertArrayEquals(
 			new double[] {0.2 * gamma*lambda, 0},  
-			eligibility.get("action2")
+			learner.getEligibility().get("action2")
 		);
 		
 		double tdError = 1 - 5; //reward - q(s0,a1)
@@ -551,6 +600,7 @@ class TestLinearSarsaLambda {
 		
 		// changes some of the weights and verifies the change
 		testWeights.get("action1")[0] = -1000;
+		setLearnerWeights(testWeights);
 		assertEquals(-1000, learner.qValue(new double[] {1, 0} , "action1"));
 		
 		// loads the previously saved weights
@@ -651,28 +701,70 @@ class TestLinearSarsaLambda {
 		
 	}
 	
+	@Test
+	void testMergeWeights() {
+		Map<String, double[]> testWeights = new HashMap<>(); 
+		testWeights.put("action1", new double[] {1, 2});
+		testWeights.put("action2", new double[] {4, -1});
+		setLearnerWeights(testWeights);
+		
+		double[] reference = learner.snapshotWeights(null);
+		
+		// two copies that change the weights differently
+		LinearSarsaLambda copy1 = learner.cloneExceptEligibility();
+		LinearSarsaLambda copy2 = learner.cloneExceptEligibility();
+		Map<String, double[]> changed = new HashMap<>(); 
+		changed.put("action1", new double[] {2, 2});
+		copy1.copyWeights(changed);
+		changed.put("action1", new double[] {1, 4});
+		copy2.copyWeights(changed);
+		
+		// averages the changes: each copy contributes half of its delta
+		learner.mergeWeights(copy1, reference, 0.5);
+		learner.mergeWeights(copy2, reference, 0.5);
+		assertArrayEquals(new double[] {1.5, 3}, learner.getWeights().get("action1"));
+		assertArrayEquals(new double[] {4, -1}, learner.getWeights().get("action2"));
+	}
+	
+	@Test
+	void testCloneSharingWeights() throws Exception {
+		Map<String, double[]> testWeights = new HashMap<>(); 
+		testWeights.put("action1", new double[] {0.3, 0.1});
+		testWeights.put("action2", new double[] {0.7, 0.2});
+		setLearnerWeights(testWeights);
+		
+		LinearSarsaLambda sharing = learner.cloneSharingWeights();
+		assertTrue(sharing.sharesWeightsWith(learner));
+		
+		// an update by the clone is seen by the original learner...
+		GameState state = new GameState(new PhysicalGameState(8, 8), types);
+		sharing.tdLambdaUpdateRule(state, 0, "action1", 1);
+		assertArrayEquals(new double[] {0.3 + alpha, 0.1 + alpha * 0.5}, learner.getWeights().get("action1"));
+		
+		// ...but the eligibility traces are not shared
+		assertArrayEquals(new double[] {0, 0}, learner.getEligibility().get("action1"));
+	}
+	
 	/**
 	 * Sets the weights of our learner object
 	 * @param weights
-	 * @throws NoSuchFieldException
-	 * @throws IllegalAccessException
 	 */
-	private void setLearnerWeights(Map<String, double[]> weights) throws NoSuchFieldException, IllegalAccessException {
+	private void setLearnerWeights(Map<String, double[]> weights) {
 		
-		// opens the visibility of weights, sets them and tests the Q-value
-		Field field = LinearSarsaLambda.class.getDeclaredField("weights");
-		field.setAccessible(true);
-		field.set(learner, weights);
-		assertEquals(learner.getWeights(), weights);
+		// sets the weights and tests whether the learner has the same values
+		learner.setWeights(weights);
+		for (String action : weights.keySet()) {
+			assertArrayEquals(weights.get(action), learner.getWeights().get(action));
+		}
 	}
 	
-	private void setLearnerEligibility(Map<String, double[]> elig) throws NoSuchFieldException, IllegalAccessException {
+	private void setLearnerEligibility(Map<String, double[]> elig) {
 		
-		// opens the visibility of weights, sets them and tests the Q-value
-		Field field = LinearSarsaLambda.class.getDeclaredField("eligibility");
-		field.setAccessible(true);
-		field.set(learner, elig);
-		//assertEquals(learner.getEligibility(), elig);
+		// sets the eligibility traces and tests whether the learner has the same values
+		learner.setEligibility(elig);
+		for (String action : elig.keySet()) {
+			assertArrayEquals(elig.get(action), learner.getEligibility().get(action));
+		}
 	}
 
 }
@@ -0,0 +1,68 @@
+package learner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import learning.LinearSarsaLambda;
+import learning.MappedPolicy;
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.units.UnitTypeTable;
+import utils.WeightFile;
+
+class TestMappedPolicy {
+
+	@Test
+	void testSameChoicesAsLearner() throws Exception {
+		UnitTypeTable types = new UnitTypeTable(UnitTypeTable.VERSION_ORIGINAL_FINETUNED, UnitTypeTable.MOVE_CONFLICT_RESOLUTION_CANCEL_BOTH);
+		GameState state = new GameState(PhysicalGameState.load("maps/8x8/basesWorkers8x8.xml", types), types);
+		MockupFeatureExtractor extractor = new MockupFeatureExtractor(new double[] {1.0, 0.5, -2});
+		
+		// a greedy learner with random weights
+		LinearSarsaLambda learner = new LinearSarsaLambda(
+			types, new MockupRewardModel(0, 0), extractor, Arrays.asList("WR,LR,HR,RR".split(",")), 0, 0, 1, 0, 1
+		);
+		File path = File.createTempFile("weights", ".bin");
+		path.deleteOnExit();
+		learner.save(path.getPath());
+		
+		MappedPolicy policy = new MappedPolicy(extractor, path.getPath());
+		assertEquals(learner.getActions(), policy.getActions());
+		assertEquals(learner.act(state, 0), policy.act(state, 0));
+		assertEquals(learner.stateValue(state, 0), policy.stateValue(state, 0));
+		for (String action : learner.getActions()) {
+			assertEquals(learner.qValue(state, 0, action), policy.qValue(state, 0, action));
+		}
+		
+		// the same with a float32 file
+		WeightFile file = WeightFile.fromMap(extractor, learner.getWeights());
+		file.setDtype(WeightFile.FLOAT32);
+		file.write(path.getPath());
+		policy.load(path.getPath());
+		for (String action : learner.getActions()) {
+			assertEquals(learner.qValue(state, 0, action), policy.qValue(state, 0, action), 1e-6);
+		}
+	}
+	
+	@Test
+	void testFeatureMismatch() throws Exception {
+		UnitTypeTable types = new UnitTypeTable(UnitTypeTable.VERSION_ORIGINAL_FINETUNED, UnitTypeTable.MOVE_CONFLICT_RESOLUTION_CANCEL_BOTH);
+		MockupFeatureExtractor extractor = new MockupFeatureExtractor(new double[] {1.0, 0.5, -2});
+		LinearSarsaLambda learner = new LinearSarsaLambda(
+			types, new MockupRewardModel(0, 0), extractor, Arrays.asList("WR,LR".split(",")), 0, 0, 1, 0, 1
+		);
+		File path = File.createTempFile("weights", ".bin");
+		path.deleteOnExit();
+		learner.save(path.getPath());
+		
+		// weights of another feature extractor are an error, not something to ignore
+		MockupFeatureExtractor other = new MockupFeatureExtractor(new double[] {1.0, 0.5});
+		assertThrows(IllegalArgumentException.class, () -> new MappedPolicy(other, path.getPath()));
+	}
+
+}
@@ -0,0 +1,37 @@
+package learner;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+import learning.SparseEligibilityTraces;
+
+class TestSparseEligibilityTraces {
+
+	@Test
+	void testUpdateCutAndClear() {
+		SparseEligibilityTraces traces = new SparseEligibilityTraces(6, 0.1);
+		double[] weights = new double[6];
+		
+		// adds to the second row of a 2x3 matrix; zeros are not activated
+		traces.add(3, new double[] {1, 0, 0.15}, 3);
+		assertEquals(2, traces.numActive());
+		
+		// w = w + 2 * e; e = e * 0.5 (0.15 decays to 0.075 and is cut)
+		traces.updateWeights(weights, 2, 1, 0.5);
+		assertArrayEquals(new double[] {0, 0, 0, 2, 0, 0.3}, weights);
+		assertArrayEquals(new double[] {0, 0, 0, 0.5, 0, 0}, traces.copyOfRange(0, 6));
+		assertEquals(1, traces.numActive());
+		
+		// cut traces no longer change the weights
+		traces.updateWeights(weights, 2, 1, 0.5);
+		assertArrayEquals(new double[] {0, 0, 0, 3, 0, 0.3}, weights);
+		
+		traces.set(0, 1);
+		traces.clear();
+		assertEquals(0, traces.numActive());
+		assertArrayEquals(new double[6], traces.copyOfRange(0, 6));
+	}
+
+}
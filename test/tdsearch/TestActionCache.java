@@ -0,0 +1,112 @@
+package tdsearch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.PlayerAction;
+import rts.UnitAction;
+import rts.units.Unit;
+import rts.units.UnitTypeTable;
+
+class TestActionCache {
+
+	UnitTypeTable types;
+	GameState state;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		types = new UnitTypeTable(UnitTypeTable.VERSION_ORIGINAL_FINETUNED, UnitTypeTable.MOVE_CONFLICT_RESOLUTION_CANCEL_BOTH);
+		state = new GameState(PhysicalGameState.load("maps/8x8/basesWorkers8x8.xml", types), types);
+	}
+
+	private PlayerAction moveAction(int player) {
+		PlayerAction action = new PlayerAction();
+		for (Unit unit : state.getUnits()) {
+			if (unit.getPlayer() == player && unit.getType().canMove) {
+				action.addUnitAction(unit, new UnitAction(UnitAction.TYPE_MOVE, 1));
+			}
+		}
+		return action;
+	}
+
+	@Test
+	void testFingerprint() {
+		long original = ActionCache.fingerprint(state);
+
+		// equal states have equal fingerprints
+		assertEquals(original, ActionCache.fingerprint(state.clone()));
+
+		// moving, damaging or enriching a unit changes it
+		GameState changed = state.clone();
+		Unit worker = changed.getUnits().stream().filter(u -> u.getType().canMove).findFirst().get();
+		worker.setX(worker.getX() + 1);
+		assertNotEquals(original, ActionCache.fingerprint(changed));
+
+		changed = state.clone();
+		worker = changed.getUnits().stream().filter(u -> u.getType().canMove).findFirst().get();
+		worker.setHitPoints(worker.getHitPoints() - 1);
+		assertNotEquals(original, ActionCache.fingerprint(changed));
+
+		changed = state.clone();
+		changed.getPlayer(0).setResources(changed.getPlayer(0).getResources() + 1);
+		assertNotEquals(original, ActionCache.fingerprint(changed));
+	}
+
+	@Test
+	void testHitsAndMisses() {
+		ActionCache cache = new ActionCache(4);
+		PlayerAction action = moveAction(0);
+
+		ActionCache.Key key = cache.key("WR", 0, state);
+		assertNull(cache.get(key));
+		cache.put(key, action);
+
+		// the same script, player and (equal) state hits, returning a copy
+		PlayerAction cached = cache.get(cache.key("WR", 0, state.clone()));
+		assertNotNull(cached);
+		assertNotSame(action, cached);
+		assertEquals(action.getActions().size(), cached.getActions().size());
+
+		// another script or player misses
+		assertNull(cache.get(cache.key("LR", 0, state)));
+		assertNull(cache.get(cache.key("WR", 1, state)));
+
+		assertEquals(1, cache.getHits());
+		assertEquals(3, cache.getMisses());
+
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertNull(cache.get(key));
+	}
+
+	@Test
+	void testEvictsLeastRecentlyUsed() {
+		ActionCache cache = new ActionCache(2);
+		PlayerAction action = moveAction(0);
+
+		ActionCache.Key wr = cache.key("WR", 0, state), lr = cache.key("LR", 0, state), hr = cache.key("HR", 0, state);
+		cache.put(wr, action);
+		cache.put(lr, action);
+		cache.get(wr); // LR becomes the least recently used
+		cache.put(hr, action);
+
+		assertEquals(2, cache.size());
+		assertNotNull(cache.get(wr));
+		assertNull(cache.get(lr));
+		assertNotNull(cache.get(hr));
+	}
+
+	@Test
+	void testInvalidCapacity() {
+		assertThrows(IllegalArgumentException.class, () -> new ActionCache(0));
+	}
+}
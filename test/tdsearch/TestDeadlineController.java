@@ -0,0 +1,69 @@
+package tdsearch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+class TestDeadlineController {
+
+	private static final long MILLIS = 1000000L;
+
+	@Test
+	void testWithoutSteps() {
+		DeadlineController controller = new DeadlineController();
+		assertEquals(0, controller.predictedStep());
+
+		controller.setDeadline(System.nanoTime() + 100 * MILLIS);
+		assertTrue(controller.fitsStep());
+
+		controller.setDeadline(System.nanoTime() - 1);
+		assertFalse(controller.fitsStep());
+		assertFalse(controller.startStep());
+	}
+
+	@Test
+	void testLearnsStepCost() throws InterruptedException {
+		DeadlineController controller = new DeadlineController();
+		controller.setDeadline(System.nanoTime() + 10000 * MILLIS);
+		for (int i = 0; i < 5; i++) {
+			assertTrue(controller.startStep());
+			Thread.sleep(5);
+			controller.endStep();
+		}
+		assertEquals(5, controller.getSteps());
+		assertEquals(0, controller.getOverruns());
+		assertTrue(controller.getMeanStep() >= 5 * MILLIS);
+		assertTrue(controller.predictedStep() >= controller.getMeanStep());
+
+		// a step does not fit a deadline closer than its mean cost
+		controller.setDeadline(System.nanoTime() + 2 * MILLIS);
+		assertFalse(controller.fitsStep());
+		assertFalse(controller.startStep());
+
+		// the reserve of a deadline is at least the predicted step
+		long before = System.nanoTime();
+		long deadline = controller.deadlineFor(1000 * MILLIS, 0);
+		assertTrue(deadline <= System.nanoTime() + 1000 * MILLIS - controller.predictedStep());
+		assertTrue(deadline >= before + 1000 * MILLIS - controller.predictedStep());
+	}
+
+	@Test
+	void testOverrunWidensMargin() throws InterruptedException {
+		DeadlineController controller = new DeadlineController();
+		controller.setDeadline(System.nanoTime() + MILLIS);
+		assertTrue(controller.startStep());
+		Thread.sleep(5);
+		controller.endStep();
+
+		assertEquals(1, controller.getOverruns());
+		assertEquals(2 * DeadlineController.DEFAULT_SIGMAS, controller.getSigmas());
+	}
+
+	@Test
+	void testInvalidSmoothing() {
+		assertThrows(IllegalArgumentException.class, () -> new DeadlineController(0, 3));
+	}
+}
@@ -0,0 +1,97 @@
+package tracing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.File;
+
+import org.junit.jupiter.api.Test;
+
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.PlayerAction;
+import rts.UnitAction;
+import rts.units.Unit;
+import rts.units.UnitType;
+import rts.units.UnitTypeTable;
+
+class TestDeltaTraceSink {
+
+	@Test
+	void testReconstructsStates() throws Exception {
+		UnitTypeTable types = new UnitTypeTable(UnitTypeTable.VERSION_ORIGINAL_FINETUNED, UnitTypeTable.MOVE_CONFLICT_RESOLUTION_CANCEL_BOTH);
+		GameState state = new GameState(PhysicalGameState.load("maps/8x8/basesWorkers8x8.xml", types), types);
+		PhysicalGameState pgs = state.getPhysicalGameState();
+		
+		File output = File.createTempFile("trace", "." + TraceSinkFactory.DELTA_EXTENSION);
+		output.deleteOnExit();
+		DeltaTraceSink sink = new DeltaTraceSink(types, output.getPath());
+		
+		// frame 0: the initial state, with a move action
+		Unit worker = null;
+		for (Unit u : pgs.getUnits()) {
+			if (u.getType().name.equals("Worker")) worker = u;
+		}
+		PlayerAction action = new PlayerAction();
+		action.addUnitAction(worker, new UnitAction(UnitAction.TYPE_MOVE, 1));
+		sink.frame(state, action, new PlayerAction());
+		PhysicalGameState initial = pgs.clone();
+		
+		// frame 1: the worker moves and is hit, a player gets resources and a unit is born
+		worker.setX(worker.getX() + 1);
+		worker.setHitPoints(worker.getHitPoints() - 1);
+		pgs.getPlayer(1).setResources(pgs.getPlayer(1).getResources() + 3);
+		Unit newborn = new Unit(1000, 0, types.getUnitType("Light"), 0, 0, 0);
+		pgs.addUnit(newborn);
+		sink.frame(state, new PlayerAction(), new PlayerAction());
+		PhysicalGameState second = pgs.clone();
+		
+		// final state: the worker dies
+		pgs.removeUnit(worker);
+		sink.end(state);
+		
+		DeltaTraceReader reader = new DeltaTraceReader(output.getPath(), types);
+		assertEquals(3, reader.getNumFrames());
+		assertSameState(pgs, reader.getPhysicalGameState(2));
+		assertSameState(initial, reader.getPhysicalGameState(0)); // going backwards
+		assertSameState(second, reader.getPhysicalGameState(1));
+		assertNull(reader.getPhysicalGameState(2).getUnit(worker.getID()));
+	}
+
+	@Test
+	void testRecordsUnitTypeTable() throws Exception {
+		UnitTypeTable types = new UnitTypeTable(UnitTypeTable.VERSION_ORIGINAL_FINETUNED, UnitTypeTable.MOVE_CONFLICT_RESOLUTION_CANCEL_BOTH);
+		GameState state = new GameState(PhysicalGameState.load("maps/8x8/basesWorkers8x8.xml", types), types);
+		
+		File output = File.createTempFile("trace", "." + TraceSinkFactory.DELTA_EXTENSION);
+		output.deleteOnExit();
+		DeltaTraceSink sink = new DeltaTraceSink(types, output.getPath());
+		sink.frame(state, new PlayerAction(), new PlayerAction());
+		sink.end(state);
+		
+		// no table given: the recorded one is used
+		DeltaTraceReader reader = new DeltaTraceReader(output.getPath());
+		assertEquals(types.getUnitTypes().size(), reader.getUnitTypeTable().getUnitTypes().size());
+		for (UnitType type : types.getUnitTypes()) {
+			assertEquals(type.name, reader.getUnitTypeTable().getUnitType(type.ID).name);
+		}
+		assertSameState(state.getPhysicalGameState(), reader.getPhysicalGameState(0));
+	}
+
+	private static void assertSameState(PhysicalGameState expected, PhysicalGameState actual) {
+		assertEquals(expected.getWidth(), actual.getWidth());
+		assertEquals(expected.getUnits().size(), actual.getUnits().size());
+		for (int p = 0; p < expected.getPlayers().size(); p++) {
+			assertEquals(expected.getPlayer(p).getResources(), actual.getPlayer(p).getResources());
+		}
+		for (Unit u : expected.getUnits()) {
+			Unit read = actual.getUnit(u.getID());
+			assertEquals(u.getType().name, read.getType().name);
+			assertEquals(u.getPlayer(), read.getPlayer());
+			assertEquals(u.getX(), read.getX());
+			assertEquals(u.getY(), read.getY());
+			assertEquals(u.getHitPoints(), read.getHitPoints());
+			assertEquals(u.getResources(), read.getResources());
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package tracing;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.junit.jupiter.api.Test;
+
+import rts.GameState;
+import rts.PhysicalGameState;
+import rts.PlayerAction;
+import rts.Trace;
+import rts.UnitAction;
+import rts.units.Unit;
+import rts.units.UnitTypeTable;
+import util.XMLWriter;
+
+class TestStreamingTraceSink {
+
+	@Test
+	void testWritesTraceEnvelope() throws Exception {
+		UnitTypeTable types = new UnitTypeTable(UnitTypeTable.VERSION_ORIGINAL_FINETUNED, UnitTypeTable.MOVE_CONFLICT_RESOLUTION_CANCEL_BOTH);
+		GameState state = new GameState(PhysicalGameState.load("maps/8x8/basesWorkers8x8.xml", types), types);
+		
+		File output = File.createTempFile("trace", ".zip");
+		output.deleteOnExit();
+		
+		// a queue smaller than the number of frames makes the match thread wait for the writer
+		StreamingTraceSink sink = new StreamingTraceSink(types, output.getPath(), 2);
+		for (int frame = 0; frame < 10; frame++) {
+			sink.frame(state, new PlayerAction(), new PlayerAction());
+		}
+		sink.end(state);
+		
+		try (ZipInputStream zip = new ZipInputStream(new FileInputStream(output))) {
+			ZipEntry entry = zip.getNextEntry();
+			assertEquals("game.xml", entry.getName());
+			
+			String xml = read(zip).trim();
+			assertTrue(xml.startsWith("<rts.Trace>"));
+			assertTrue(xml.contains("<entries>"));
+			assertTrue(xml.endsWith("</rts.Trace>"));
+		}
+	}
+
+	@Test
+	void testSameTraceAsInMemory() throws Exception {
+		UnitTypeTable types = new UnitTypeTable(UnitTypeTable.VERSION_ORIGINAL_FINETUNED, UnitTypeTable.MOVE_CONFLICT_RESOLUTION_CANCEL_BOTH);
+		GameState state = new GameState(PhysicalGameState.load("maps/8x8/basesWorkers8x8.xml", types), types);
+		
+		File streamed = File.createTempFile("trace", ".zip"), inMemory = File.createTempFile("trace", ".zip");
+		streamed.deleteOnExit();
+		inMemory.deleteOnExit();
+		StreamingTraceSink streamingSink = new StreamingTraceSink(types, streamed.getPath(), 2);
+		MemoryTraceSink memorySink = new MemoryTraceSink(types, inMemory.getPath());
+		
+		// the workers keep moving, so that frames have actions and different states
+		for (int frame = 0; frame < 10; frame++) {
+			PlayerAction player1Action = new PlayerAction();
+			for (Unit unit : state.getUnits()) {
+				if (unit.getPlayer() == 0 && unit.getType().canMove && state.getActionAssignment(unit) == null) {
+					player1Action.addUnitAction(unit, new UnitAction(UnitAction.TYPE_MOVE, UnitAction.DIRECTION_RIGHT));
+				}
+			}
+			streamingSink.frame(state, player1Action, new PlayerAction());
+			memorySink.frame(state, player1Action, new PlayerAction());
+			state.issueSafe(player1Action);
+			state.cycle();
+		}
+		streamingSink.end(state);
+		memorySink.end(state);
+		
+		Trace expected = memorySink.getTrace(), read = Trace.fromZip(streamed.getPath());
+		assertEquals(expected.getEntries().size(), read.getEntries().size());
+		for (int i = 0; i < expected.getEntries().size(); i++) {
+			assertEquals(expected.getEntries().get(i).getTime(), read.getEntries().get(i).getTime());
+			assertEquals(expected.getEntries().get(i).getActions().size(), read.getEntries().get(i).getActions().size());
+		}
+		assertEquals(toXml(expected), toXml(read));
+	}
+	
+	@Test
+	void testAbortDeletesTrace() throws Exception {
+		UnitTypeTable types = new UnitTypeTable(UnitTypeTable.VERSION_ORIGINAL_FINETUNED, UnitTypeTable.MOVE_CONFLICT_RESOLUTION_CANCEL_BOTH);
+		GameState state = new GameState(PhysicalGameState.load("maps/8x8/basesWorkers8x8.xml", types), types);
+		
+		File output = File.createTempFile("trace", ".zip");
+		output.deleteOnExit();
+		StreamingTraceSink sink = new StreamingTraceSink(types, output.getPath(), 2);
+		for (int frame = 0; frame < 5; frame++) {
+			sink.frame(state, new PlayerAction(), new PlayerAction());
+		}
+		sink.abort();
+		
+		assertFalse(output.exists());
+		sink.end(state); // does nothing after abort
+	}
+
+	private static String toXml(Trace trace) throws Exception {
+		StringWriter xml = new StringWriter();
+		XMLWriter writer = new XMLWriter(xml);
+		trace.toxml(writer);
+		writer.flush();
+		return xml.toString();
+	}
+
+	private static String read(InputStream in) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+			bytes.write(buffer, 0, n);
+		}
+		return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+	}
+}
@@ -0,0 +1,121 @@
+package utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class TestChoicesLog {
+
+	private static final List<String> NAMES = Arrays.asList("WorkerRush", "LightRush", "BuildBarracks");
+
+	@Test
+	void testRunLengthEncoding() {
+		ChoiceLog log = new ChoiceLog();
+		for (int action : new int[] {0, 0, 0, 2, 2, 0, 1}) {
+			log.record(action);
+		}
+		assertEquals(7, log.getNumFrames());
+		assertEquals(4, log.getNumRuns());
+		assertEquals(3, log.getRunLength(0));
+		assertEquals(2, log.actionAt(4));
+		assertEquals(0, log.actionAt(5));
+		assertEquals(
+			Arrays.asList("WorkerRush", "WorkerRush", "WorkerRush", "BuildBarracks", "BuildBarracks", "WorkerRush", "LightRush"), 
+			log.toNames(NAMES)
+		);
+	}
+
+	@Test
+	void testWriteAndRead() throws Exception {
+		File file = File.createTempFile("player", "." + ChoicesLogWriter.EXTENSION);
+		File index = new File(file.getPath() + "." + ChoicesLogWriter.INDEX_EXTENSION);
+		file.delete();
+		file.deleteOnExit();
+		index.deleteOnExit();
+		
+		ChoiceLog first = new ChoiceLog(), second = new ChoiceLog();
+		first.addRun(1, 100);
+		first.addRun(0, 20);
+		second.addRun(2, 5);
+		
+		ChoicesLogWriter writer = new ChoicesLogWriter(file.getPath(), NAMES);
+		writer.write(7, first);
+		writer.close();
+		
+		// appends to the existing log
+		writer = new ChoicesLogWriter(file.getPath(), NAMES);
+		writer.write(8, second);
+		writer.close();
+		
+		assertMatches(new ChoicesLogReader(file.getPath()), first, second);
+		
+		// without the index, the matches are found by scanning the log
+		index.delete();
+		assertMatches(new ChoicesLogReader(file.getPath()), first, second);
+		
+		// actions must be the same to append
+		assertThrows(IOException.class, () -> new ChoicesLogWriter(file.getPath(), Arrays.asList("WorkerRush")));
+	}
+
+	@Test
+	void testIgnoresCutMatch() throws Exception {
+		File file = File.createTempFile("player", "." + ChoicesLogWriter.EXTENSION);
+		File index = new File(file.getPath() + "." + ChoicesLogWriter.INDEX_EXTENSION);
+		file.delete();
+		file.deleteOnExit();
+		index.deleteOnExit();
+		
+		ChoiceLog first = new ChoiceLog(), second = new ChoiceLog();
+		first.addRun(1, 100);
+		second.addRun(2, 5);
+		second.addRun(0, 3);
+		
+		ChoicesLogWriter writer = new ChoicesLogWriter(file.getPath(), NAMES);
+		writer.write(7, first);
+		writer.write(8, second);
+		writer.close();
+		
+		// the last match is cut (e.g. the process crashed while writing it)
+		try (RandomAccessFile data = new RandomAccessFile(file, "rw")) {
+			data.setLength(data.length() - 3);
+		}
+		
+		ChoicesLogReader reader = new ChoicesLogReader(file.getPath());
+		assertEquals(Arrays.asList(7), reader.getMatchNumbers());
+		assertEquals(first.toNames(NAMES), reader.getChoices(7).toNames(NAMES));
+		
+		index.delete();
+		assertEquals(Arrays.asList(7), new ChoicesLogReader(file.getPath()).getMatchNumbers());
+	}
+
+	private static void assertMatches(ChoicesLogReader reader, ChoiceLog first, ChoiceLog second) {
+		assertEquals(NAMES, reader.getActionNames());
+		assertEquals(Arrays.asList(7, 8), reader.getMatchNumbers());
+		assertEquals(first.toNames(NAMES), reader.getChoices(7).toNames(NAMES));
+		assertEquals(second.toNames(NAMES), reader.getChoices(8).toNames(NAMES));
+	}
+	
+	@Test
+	void testBufferedUntilFlush() throws Exception {
+		File file = Files.createTempDirectory("choices").resolve("p0." + ChoicesLogWriter.EXTENSION).toFile();
+		file.deleteOnExit();
+		
+		ChoiceLog choices = new ChoiceLog();
+		choices.record(0);
+		ChoicesLogWriter writer = new ChoicesLogWriter(file.getPath(), NAMES);
+		writer.write(0, choices);
+		assertEquals(0, file.length());
+		
+		writer.flush();
+		assertEquals(Arrays.asList(0), new ChoicesLogReader(file.getPath()).getMatchNumbers());
+		writer.close();
+	}
+}
@@ -0,0 +1,73 @@
+package utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class TestLinearKernels {
+
+	private static double[] randomVector(Random random, int length) {
+		double[] vector = new double[length];
+		for (int i = 0; i < length; i++) {
+			vector[i] = random.nextDouble() * 2 - 1;
+		}
+		return vector;
+	}
+
+	@Test
+	void testDotProducts() {
+		Random random = new Random(0);
+		LinearKernels scalar = LinearKernels.forName(LinearKernels.SCALAR);
+		LinearKernels unrolled = LinearKernels.forName(LinearKernels.UNROLLED);
+
+		for (int length = 0; length <= 13; length++) {
+			double[] x = randomVector(random, length);
+			double[] matrix = randomVector(random, length + 5);
+			float[] floatMatrix = new float[matrix.length];
+			for (int i = 0; i < matrix.length; i++) {
+				floatMatrix[i] = (float) matrix[i];
+			}
+
+			// the products summed in order, at an offset
+			double expected = 0, expectedFloat = 0;
+			for (int i = 0; i < length; i++) {
+				expected += x[i] * matrix[3 + i];
+				expectedFloat += x[i] * floatMatrix[3 + i];
+			}
+
+			assertEquals(expected, scalar.dot(x, matrix, 3, length));
+			assertEquals(expectedFloat, scalar.dot(x, floatMatrix, 3, length));
+
+			// the unrolled version only differs in the summation order
+			assertEquals(expected, unrolled.dot(x, matrix, 3, length), 1e-12);
+			assertEquals(expectedFloat, unrolled.dot(x, floatMatrix, 3, length), 1e-12);
+		}
+	}
+
+	@Test
+	void testElementWise() {
+		LinearKernels kernels = LinearKernels.get();
+
+		double[] y = {1, 2, 3};
+		kernels.axpy(0.5, new double[] {2, 4, -2}, y);
+		assertArrayEquals(new double[] {2, 4, 2}, y);
+
+		kernels.scale(-2, y);
+		assertArrayEquals(new double[] {-4, -8, -4}, y);
+
+		// w = w + step * e, then e = e * gamma * lambda
+		double[] w = {1, 1}, e = {2, -4};
+		kernels.updateAndDecay(w, e, 0.25, 0.5, 0.5);
+		assertArrayEquals(new double[] {1.5, 0}, w);
+		assertArrayEquals(new double[] {0.5, -1}, e);
+	}
+
+	@Test
+	void testUnknownKernels() {
+		assertThrows(IllegalArgumentException.class, () -> LinearKernels.forName("avx512"));
+	}
+}
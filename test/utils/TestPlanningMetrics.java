@@ -0,0 +1,80 @@
+package utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+import utils.PlanningMetrics.Counter;
+import utils.PlanningMetrics.Timer;
+
+class TestPlanningMetrics {
+
+	@Test
+	void testCountersAndHistograms() {
+		PlanningMetrics metrics = new PlanningMetrics();
+		metrics.increment(Counter.PLANNING_CALLS);
+		metrics.increment(Counter.PLANNING_CALLS);
+		metrics.add(Counter.FRAMES, 30);
+		metrics.increment(Counter.EPISODES);
+
+		assertEquals(2, metrics.get(Counter.PLANNING_CALLS));
+		assertEquals(30, metrics.get(Counter.FRAMES));
+		assertEquals(0.5, metrics.getEpisodesPerCall());
+
+		// 99 short operations and a long one
+		for (int i = 0; i < 99; i++) {
+			metrics.record(Timer.FORWARD, 1000);
+		}
+		metrics.record(Timer.FORWARD, 1000000);
+
+		assertEquals(100, metrics.count(Timer.FORWARD));
+		assertEquals((99 * 1000 + 1000000) / 100.0, metrics.mean(Timer.FORWARD));
+		assertEquals(1024, metrics.quantile(Timer.FORWARD, .5)); // upper bound of the bucket of 1000ns
+		assertEquals(1024, metrics.quantile(Timer.FORWARD, .99));
+		assertEquals(1 << 20, metrics.quantile(Timer.FORWARD, 1));
+		assertEquals(0, metrics.quantile(Timer.CLONE, .5));
+
+		metrics.reset();
+		assertEquals(0, metrics.get(Counter.FRAMES));
+		assertEquals(0, metrics.count(Timer.FORWARD));
+	}
+
+	@Test
+	void testCsv() {
+		PlanningMetrics metrics = new PlanningMetrics();
+		metrics.add(Counter.DECISIONS, 7);
+		metrics.record(Timer.PLANNING, 100);
+
+		String[] header = PlanningMetrics.csvHeader().split(",");
+		String[] row = metrics.toCsv().split(",");
+		assertEquals(header.length, row.length);
+		assertEquals(Counter.values().length + 4 * Timer.values().length, row.length);
+
+		assertEquals("decisions", header[Counter.DECISIONS.ordinal()]);
+		assertEquals("7", row[Counter.DECISIONS.ordinal()]);
+		assertEquals("planning_count", header[Counter.values().length]);
+		assertEquals("1", row[Counter.values().length]);
+	}
+
+	@Test
+	void testJmx() throws Exception {
+		PlanningMetrics metrics = new PlanningMetrics();
+		metrics.add(Counter.EPISODES, 3);
+		metrics.register("test");
+
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName("tdsearch:type=PlanningMetrics,name=" + ObjectName.quote("test"));
+		assertTrue(server.isRegistered(name));
+		assertEquals(3L, server.getAttribute(name, "Episodes"));
+
+		metrics.unregister();
+		assertFalse(server.isRegistered(name));
+	}
+}
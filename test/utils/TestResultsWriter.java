@@ -0,0 +1,70 @@
+package utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class TestResultsWriter {
+
+	@Test
+	void testBuffersUntilFlush() throws Exception {
+		File file = new File(Files.createTempDirectory("results").toFile(), "sub/summary.csv");
+		file.deleteOnExit();
+		
+		ResultsWriter writer = ResultsWriter.open(file.getPath(), "#header");
+		assertSame(writer, ResultsWriter.open(file.getPath(), "#header"));
+		
+		writer.writeRow("1,2");
+		assertEquals(Arrays.asList("#header"), Files.readAllLines(file.toPath()));
+		
+		writer.flush();
+		assertEquals(Arrays.asList("#header", "1,2"), Files.readAllLines(file.toPath()));
+		writer.close();
+		writer.close(); // it was opened twice
+	}
+
+	@Test
+	void testAppendsAfterReopening() throws Exception {
+		File file = File.createTempFile("summary", ".csv");
+		file.deleteOnExit();
+		
+		ResultsWriter writer = ResultsWriter.open(file.getPath(), "#header");
+		writer.writeRow("a");
+		writer.close();
+		
+		// the header is not repeated
+		writer = ResultsWriter.open(file.getPath(), "#header");
+		writer.writeRow("b\nc");
+		writer.close();
+		
+		assertEquals(Arrays.asList("#header", "a", "b", "c"), Files.readAllLines(file.toPath()));
+	}
+
+	@Test
+	void testSharedUntilClosedByAll() throws Exception {
+		File file = File.createTempFile("summary", ".csv");
+		file.deleteOnExit();
+		
+		ResultsWriter first = ResultsWriter.open(file.getPath(), "#header");
+		ResultsWriter second = ResultsWriter.open(file.getPath(), "#header");
+		first.writeRow("a");
+		first.close();
+		
+		// the other caller keeps writing to the same file
+		second.writeRow("b");
+		assertSame(second, ResultsWriter.open(file.getPath(), "#header"));
+		second.close();
+		second.close();
+		
+		assertEquals(Arrays.asList("#header", "a", "b"), Files.readAllLines(file.toPath()));
+		ResultsWriter reopened = ResultsWriter.open(file.getPath(), "#header");
+		assertNotSame(second, reopened);
+		reopened.close();
+	}
+}
@@ -0,0 +1,54 @@
+package utils;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+class TestWeightFile {
+
+	@Test
+	void testWriteAndRead() throws IOException {
+		File path = File.createTempFile("weights", ".bin");
+		path.deleteOnExit();
+		
+		double[] matrix = {1, -0.5, 0.25, 1e-9, 3, -7};
+		WeightFile file = new WeightFile("MaterialAdvantage", 42, Arrays.asList("WR", "LR"), 3, matrix);
+		file.write(path.getPath());
+		
+		WeightFile read = WeightFile.read(path.getPath());
+		assertFalse(read.isLegacy());
+		assertEquals("MaterialAdvantage", read.getFeatureExtractorName());
+		assertEquals(42, read.getFeatureNamesHash());
+		assertEquals(Arrays.asList("WR", "LR"), read.getActions());
+		assertEquals(WeightFile.FLOAT64, read.getDtype());
+		assertArrayEquals(matrix, read.getMatrix());
+		assertArrayEquals(new double[] {1e-9, 3, -7}, read.toMap().get("LR"));
+		
+		// float32 loses precision but keeps the layout
+		file.setDtype(WeightFile.FLOAT32);
+		file.write(path.getPath());
+		read = WeightFile.read(path.getPath());
+		assertEquals(WeightFile.FLOAT32, read.getDtype());
+		assertEquals(path.length(), 4 + 6*4 + "MaterialAdvantage".length() + 2*(4+2) + matrix.length*4);
+		for (int i = 0; i < matrix.length; i++) {
+			assertEquals((float) matrix[i], read.getMatrix()[i]);
+		}
+	}
+	
+	@Test
+	void testReadLegacy() throws IOException {
+		// written with ObjectOutputStream
+		WeightFile read = WeightFile.read("test/learner/weights_0-m1.bin");
+		assertTrue(read.isLegacy());
+		assertEquals(24, read.getNumFeatures());
+		assertEquals(read.getActions().size() * 24, read.getMatrix().length);
+	}
+
+}
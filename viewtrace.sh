@@ -2,6 +2,14 @@
 
 classpath=.:bin:lib/*
 
+# delta traces (.dtrace) are converted to a regular zipped trace before visualization
+if [[ "$1" == *.dtrace ]]; then
+	converted="${1%.dtrace}.zip"
+	echo "Converting delta trace $1 to $converted..."
+	java -classpath $classpath -Djava.library.path=lib/ tracing.DeltaTraceReader "$1" "$converted" || exit 1
+	set -- "$converted" "${@:2}"
+fi
+
 echo "Launching TraceVisualizationTest..."
 
 java -classpath $classpath -Djava.library.path=lib/ tests.TraceVisualizationTest "$@" 